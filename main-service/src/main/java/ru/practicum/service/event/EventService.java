@@ -29,7 +29,6 @@ public interface EventService {
                                         Boolean onlyAvailable, SortValue sort,
                                         Integer from, Integer size, HttpServletRequest request);
 
-    @Transactional
     EventFullDto getEvent(Long eventId, HttpServletRequest request);
 
     List<EventFullDto> getEventsByAdmin(List<Long> users, List<EventState> states, List<Long> categories,
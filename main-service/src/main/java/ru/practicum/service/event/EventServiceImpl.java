@@ -12,8 +12,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.HitDto;
+import ru.practicum.HitReporter;
 import ru.practicum.StatsClient;
-import ru.practicum.ViewStatsDto;
 import ru.practicum.dto.event.*;
 import ru.practicum.dto.location.LocationDto;
 import ru.practicum.enums.*;
@@ -31,7 +31,10 @@ import ru.practicum.repository.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -49,6 +52,7 @@ public class EventServiceImpl implements EventService {
     private final ParticipationRequestRepository requestRepository;
     private final EntityManager entityManager;
     private final StatsClient statsClient;
+    private final HitReporter hitReporter;
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     @Override
@@ -208,7 +212,13 @@ public class EventServiceImpl implements EventService {
         return EventMapper.toFullEventDto(eventRepository.save(event));
     }
 
+    /**
+     * Выполняется вне транзакции, как и {@link #getEvent} и {@link #searchPublicEvents}:
+     * соединение из пула берется только на время запросов к БД и не держится,
+     * пока идет запрос к сервису статистики.
+     */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public List<EventShortDto> getEventsByUser(String text, List<Long> categories, Boolean paid,
                                                LocalDateTime rangeStart, LocalDateTime rangeEnd,
                                                Boolean onlyAvailable, SortValue sort,
@@ -249,18 +259,8 @@ public class EventServiceImpl implements EventService {
 
         query.where(predicates.toArray(new Predicate[0]));
 
-        if (sort == SortValue.VIEWS) {
-            query.orderBy(cb.desc(eventRoot.get("views")));
-        } else {
-            query.orderBy(cb.desc(eventRoot.get("eventDate")));
-        }
-
-        List<Event> events = entityManager.createQuery(query)
-                .setFirstResult(from)
-                .setMaxResults(size)
-                .getResultList();
-
-        sendHitAsync(request.getRequestURI(), request.getRemoteAddr());
+        List<Event> events = findPublishedPage(query, eventRoot, sort, from, size);
+        reportHit(request);
 
         List<EventShortDto> shortDtos = EventMapper.toEventShortDtoList(events);
 
@@ -274,25 +274,14 @@ public class EventServiceImpl implements EventService {
     }
 
     @Override
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public EventFullDto getEvent(Long eventId, HttpServletRequest request) {
         Event event = eventRepository.findByIdAndState(eventId, EventState.PUBLISHED)
                 .orElseThrow(() -> new NotFoundException("Опубликованное событие с ID=" + eventId + " не найдено."));
 
-        List<ViewStatsDto> stats = statsClient.getStats(
-                event.getPublishedOn() != null ? event.getPublishedOn() : event.getCreatedOn(),
-                LocalDateTime.now(),
-                List.of(request.getRequestURI()),
-                true
-        );
-
-        if (!stats.isEmpty()) {
-            event.setViews(stats.get(0).getHits());
-        } else {
-            event.setViews(0L);
-        }
+        setViews(List.of(event));
 
-        sendHitAsync(request.getRequestURI(), request.getRemoteAddr());
+        reportHit(request);
 
         long confirmedRequests = requestRepository.countByEventIdAndStatus(eventId, RequestStatus.CONFIRMED);
 
@@ -344,6 +333,7 @@ public class EventServiceImpl implements EventService {
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public List<EventShortDto> searchPublicEvents(String text, List<Long> categories, Boolean paid,
                                                   LocalDateTime rangeStart, LocalDateTime rangeEnd,
                                                   Boolean onlyAvailable, SortValue sort,
@@ -384,18 +374,8 @@ public class EventServiceImpl implements EventService {
 
         query.where(predicates.toArray(new Predicate[0]));
 
-        if (sort == SortValue.VIEWS) {
-            query.orderBy(cb.desc(eventRoot.get("views")));
-        } else {
-            query.orderBy(cb.desc(eventRoot.get("eventDate")));
-        }
-
-        List<Event> events = entityManager.createQuery(query)
-                .setFirstResult(from)
-                .setMaxResults(size)
-                .getResultList();
-
-        sendHitAsync(request.getRequestURI(), request.getRemoteAddr());
+        List<Event> events = findPublishedPage(query, eventRoot, sort, from, size);
+        reportHit(request);
 
         List<EventShortDto> shortDtos = EventMapper.toEventShortDtoList(events);
 
@@ -422,28 +402,31 @@ public class EventServiceImpl implements EventService {
         eventRepository.incrementViews(eventId);
     }
 
-    private List<Event> findEventsWithPredicates(List<Predicate> predicates, SortValue sort, int from, int size) {
-        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<Event> query = builder.createQuery(Event.class);
-        Root<Event> root = query.from(Event.class);
-
-        root.fetch("initiator", JoinType.LEFT);
-        root.fetch("category", JoinType.LEFT);
-
-        query.where(predicates.toArray(new Predicate[0]));
-
-        if (sort != null) {
-            if (sort == SortValue.VIEWS) {
-                query.orderBy(builder.desc(root.get("views")));
-            } else {
-                query.orderBy(builder.asc(root.get("eventDate")));
-            }
-        }
-
-        return entityManager.createQuery(query)
-                .setFirstResult(from)
-                .setMaxResults(size)
-                .getResultList();
+    /**
+     * Страница опубликованных событий с проставленным числом просмотров. Просмотры
+     * хранятся только в сервисе статистики, поэтому с {@link SortValue#VIEWS} из БД
+     * загружаются все события, подходящие под {@code query}, им проставляются просмотры
+     * одним вызовом {@link StatsClient#getViews}, а страница вырезается после сортировки
+     * в памяти; события с равным числом просмотров идут по убыванию даты. Поэтому цена
+     * такого запроса растет с числом подходящих событий, а не с размером страницы. Без
+     * сортировки по просмотрам страница выбирается в БД.
+     */
+    private List<Event> findPublishedPage(CriteriaQuery<Event> query, Root<Event> eventRoot, SortValue sort,
+                                          int from, int size) {
+        query.orderBy(entityManager.getCriteriaBuilder().desc(eventRoot.get("eventDate")));
+        if (sort != SortValue.VIEWS) {
+            List<Event> events = entityManager.createQuery(query)
+                    .setFirstResult(from)
+                    .setMaxResults(size)
+                    .getResultList();
+            setViews(events);
+            return events;
+        }
+
+        List<Event> events = new ArrayList<>(entityManager.createQuery(query).getResultList());
+        setViews(events);
+        events.sort(Comparator.comparing(Event::getViews).reversed());
+        return events.subList(Math.min(from, events.size()), Math.min(from + size, events.size()));
     }
 
     private Location getLocation(LocationDto locationDto) {
@@ -478,10 +461,22 @@ public class EventServiceImpl implements EventService {
     }
 
 
-    @Async
-    public void sendHitAsync(String uri, String ip) {
-        HitDto hitDto = new HitDto(null, appName, uri, ip, LocalDateTime.now());
-        statsClient.saveHit(hitDto);
+    /**
+     * Проставляет событиям число уникальных просмотров их страниц с момента публикации
+     * одним обращением к сервису статистики на всю страницу.
+     */
+    private void setViews(List<Event> events) {
+        Map<String, LocalDateTime> since = new HashMap<>();
+        for (Event event : events) {
+            since.put("/events/" + event.getId(),
+                    event.getPublishedOn() != null ? event.getPublishedOn() : event.getCreatedOn());
+        }
+        Map<String, Long> views = statsClient.getViews(since, true);
+        events.forEach(event -> event.setViews(views.get("/events/" + event.getId())));
+    }
+
+    private void reportHit(HttpServletRequest request) {
+        hitReporter.report(new HitDto(null, appName, request.getRequestURI(), request.getRemoteAddr(), LocalDateTime.now()));
     }
 
     private Event findEventByIdAndInitiatorId(Long eventId, Long userId) {
@@ -0,0 +1,36 @@
+package ru.practicum.bench;
+
+import ru.practicum.HitBatchDto;
+import ru.practicum.HitDto;
+import ru.practicum.HitFrameCodec;
+
+import java.util.List;
+
+/**
+ * Запуск бенчмарков: {@code mvn -pl stats/stats-bench -am package -DskipTests}, затем
+ * {@code java -jar stats/stats-bench/target/benchmarks.jar [параметры JMH]}, например
+ * {@code StatsQueryBenchmark -p rows=1000000 -rf json -rff before.json}. Данные, число
+ * итераций и форков зафиксированы в классах бенчмарков, поэтому результаты до и после
+ * изменения можно сравнивать. Бенчмарки с PostgreSQL: {@code -p storage=postgres
+ * -jvmArgsAppend -Dspring.datasource.url=jdbc:postgresql://...}, см. {@link EmbeddedStatsServer}.
+ * Перед запуском печатает размеры тел запросов в обоих форматах.
+ */
+public class BenchmarkMain {
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private BenchmarkMain() {
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int batchSize : new int[] {1, 1000}) {
+            List<HitDto> hits = HitIngestBenchmark.hits(batchSize);
+            int json = HitIngestBenchmark.OBJECT_MAPPER.writeValueAsBytes(new HitBatchDto(hits)).length;
+            int frame = HitFrameCodec.encode(hits).length;
+            System.out.printf("batchSize=%d: JSON %d B, frame %d B (%.1f%%)%n",
+                    batchSize, json, frame, 100.0 * frame / json);
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+}
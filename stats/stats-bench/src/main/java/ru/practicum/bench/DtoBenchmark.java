@@ -0,0 +1,86 @@
+package ru.practicum.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.HitDto;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.mapper.HitMapper;
+import ru.practicum.model.Hit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразования на пути одного запроса: {@link HitMapper} между {@link HitDto} и
+ * {@link Hit} (с разбором IP-адреса) и JSON тела {@code POST /hit} и ответа {@code /stats}
+ * из 100 строк {@link ViewStatsDto}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoBenchmark {
+    private static final TypeReference<List<ViewStatsDto>> VIEW_STATS_LIST = new TypeReference<>() {
+    };
+
+    private HitDto hitDto;
+    private Hit hit;
+    private byte[] hitJson;
+    private List<ViewStatsDto> stats;
+    private byte[] statsJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        hitDto = new HitGenerator().next(1).get(0);
+        hit = HitMapper.toHit(hitDto);
+        hitJson = HitIngestBenchmark.OBJECT_MAPPER.writeValueAsBytes(hitDto);
+        stats = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            stats.add(new ViewStatsDto("ewm-main-service", "/events/" + i, 100_000L - i * 997L));
+        }
+        statsJson = HitIngestBenchmark.OBJECT_MAPPER.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public Hit toHit() {
+        return HitMapper.toHit(hitDto);
+    }
+
+    @Benchmark
+    public HitDto toHitDto() {
+        return HitMapper.toHitDto(hit);
+    }
+
+    @Benchmark
+    public byte[] writeHitDto() throws IOException {
+        return HitIngestBenchmark.OBJECT_MAPPER.writeValueAsBytes(hitDto);
+    }
+
+    @Benchmark
+    public HitDto readHitDto() throws IOException {
+        return HitIngestBenchmark.OBJECT_MAPPER.readValue(hitJson, HitDto.class);
+    }
+
+    @Benchmark
+    public byte[] writeViewStats() throws IOException {
+        return HitIngestBenchmark.OBJECT_MAPPER.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> readViewStats() throws IOException {
+        return HitIngestBenchmark.OBJECT_MAPPER.readValue(statsJson, VIEW_STATS_LIST);
+    }
+}
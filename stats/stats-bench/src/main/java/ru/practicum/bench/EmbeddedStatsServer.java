@@ -0,0 +1,80 @@
+package ru.practicum.bench;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.StatsServerApplication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * stats-server внутри процесса бенчмарка: контекст Spring Boot без веб-сервера.
+ *
+ * <p>Хранилище задается параметром {@code storage}:
+ * <ul>
+ *     <li>{@code segment} — файлы сегментов во временном каталоге, который удаляется при
+ *     закрытии; внешних зависимостей нет, поэтому это хранилище по умолчанию;</li>
+ *     <li>{@code postgres} — PostgreSQL из {@code -Dspring.datasource.url}, {@code username}
+ *     и {@code password}, схема создается Liquibase. H2 даже в режиме PostgreSQL не
+ *     выполняет миграции сервера (INET, секционирование, PL/pgSQL), поэтому нужна настоящая БД.</li>
+ * </ul>
+ */
+final class EmbeddedStatsServer implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final Path segmentsDir;
+
+    private EmbeddedStatsServer(ConfigurableApplicationContext context, Path segmentsDir) {
+        this.context = context;
+        this.segmentsDir = segmentsDir;
+    }
+
+    static EmbeddedStatsServer start(String storage) throws IOException {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(StatsServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(Map.of(
+                        "logging.level.root", "WARN",
+                        "logging.level.ru.practicum", "WARN",
+                        "logging.level.liquibase", "WARN",
+                        "logging.level.org.hibernate", "WARN",
+                        "logging.level.org.springframework", "WARN",
+                        "spring.jpa.properties.hibernate.show_sql", "false",
+                        "stats.ingest.mode", "sync",
+                        // время просмотров HitGenerator — 2024 год
+                        "stats.ingest.max-hit-age", "36500d"));
+        Path segmentsDir = null;
+        switch (storage) {
+            case "segment" -> {
+                segmentsDir = Files.createTempDirectory("stats-bench-");
+                builder.profiles("segment").properties("stats.segments.dir=" + segmentsDir);
+            }
+            case "postgres" -> {
+                if (System.getProperty("spring.datasource.url") == null) {
+                    throw new IllegalArgumentException("Для storage=postgres нужен -Dspring.datasource.url");
+                }
+            }
+            default -> throw new IllegalArgumentException("Неизвестное хранилище: " + storage);
+        }
+        return new EmbeddedStatsServer(builder.run(), segmentsDir);
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        if (segmentsDir != null) {
+            try (Stream<Path> files = Files.walk(segmentsDir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.practicum.bench;
+
+import ru.practicum.HitDto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Воспроизводимый поток просмотров, похожих на те, что шлет main-service: одно
+ * приложение, 500 URI событий, IPv4 из 65536 адресов и время с точностью до секунды,
+ * растущее в среднем на полсекунды. Один и тот же генератор всегда выдает одни и те же
+ * просмотры.
+ */
+final class HitGenerator {
+    static final int URIS = 500;
+
+    private final Random random = new Random(42);
+    private LocalDateTime timestamp = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+    List<HitDto> next(int count) {
+        List<HitDto> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            timestamp = timestamp.plusSeconds(random.nextInt(2));
+            hits.add(new HitDto(null, "ewm-main-service", "/events/" + random.nextInt(URIS),
+                    "192.168." + random.nextInt(256) + "." + random.nextInt(256), timestamp));
+        }
+        return hits;
+    }
+
+    LocalDateTime timestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,82 @@
+package ru.practicum.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.HitBatchDto;
+import ru.practicum.HitDto;
+import ru.practicum.HitFrameCodec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование и разбор пачки просмотров: JSON ({@link HitBatchDto} через Jackson,
+ * как в {@code POST /hits/batch}) против кадра {@link HitFrameCodec}.
+ *
+ * <p>Просмотры — из {@link HitGenerator}. Размеры тел в байтах печатает
+ * {@link BenchmarkMain} перед запуском.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitIngestBenchmark {
+    static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    @Param({"1", "1000"})
+    private int batchSize;
+
+    private List<HitDto> hits;
+    private byte[] json;
+    private byte[] frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        hits = hits(batchSize);
+        json = OBJECT_MAPPER.writeValueAsBytes(new HitBatchDto(hits));
+        frame = HitFrameCodec.encode(hits);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return OBJECT_MAPPER.writeValueAsBytes(new HitBatchDto(hits));
+    }
+
+    @Benchmark
+    public byte[] encodeFrame() {
+        return HitFrameCodec.encode(hits);
+    }
+
+    @Benchmark
+    public HitBatchDto decodeJson() throws IOException {
+        return OBJECT_MAPPER.readValue(json, HitBatchDto.class);
+    }
+
+    @Benchmark
+    public List<HitDto> decodeFrame() {
+        return HitFrameCodec.decode(frame);
+    }
+
+    static List<HitDto> hits(int count) {
+        return new HitGenerator().next(count);
+    }
+}
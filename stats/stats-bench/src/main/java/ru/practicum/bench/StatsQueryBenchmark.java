@@ -0,0 +1,135 @@
+package ru.practicum.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.HitDto;
+import ru.practicum.mapper.HitMapper;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.repository.UriDictionary;
+import ru.practicum.storage.HitStorage;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Четыре запроса статистики за диапазон — все просмотры и уникальные IP, по всем URI
+ * и по 10 URI — на {@code rows} просмотрах из {@link HitGenerator}. Диапазон
+ * покрывает середину данных без первой и последней десятой части.
+ *
+ * <p>С {@code storage=postgres} измеряются исходные запросы {@link StatsRepository}
+ * по таблице {@code hits} ({@code getStatsAll}, {@code getStatsAllForUris},
+ * {@code getStatsUniqueIp}, {@code getStatsUniqueIpForUris}); БД должна быть пустой
+ * или содержать ровно {@code rows} просмотров, оставшихся от предыдущего запуска.
+ * С {@code storage=segment} те же вопросы задаются {@link HitStorage#getStats}, то есть
+ * сканированием колонок сегментов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatsQueryBenchmark {
+    private static final int LOAD_CHUNK = 10_000;
+
+    @Param({"segment"})
+    private String storage;
+
+    @Param({"100000", "1000000", "10000000"})
+    private int rows;
+
+    private EmbeddedStatsServer server;
+    private Supplier<List<?>> all;
+    private Supplier<List<?>> allForUris;
+    private Supplier<List<?>> uniqueIp;
+    private Supplier<List<?>> uniqueIpForUris;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = EmbeddedStatsServer.start(storage);
+        HitStorage hitStorage = server.bean(HitStorage.class);
+        HitGenerator generator = new HitGenerator();
+        List<HitDto> head = generator.next(1);
+        LocalDateTime first = head.get(0).getTimeStamp();
+        boolean load = !storage.equals("postgres") || !isLoaded(server.bean(StatsRepository.class));
+        if (load) {
+            hitStorage.copyAll(HitMapper.toHits(head));
+        }
+        for (int done = 1; done < rows; done += LOAD_CHUNK) {
+            List<HitDto> chunk = generator.next(Math.min(LOAD_CHUNK, rows - done));
+            if (load) {
+                hitStorage.copyAll(HitMapper.toHits(chunk));
+            }
+        }
+
+        Duration margin = Duration.between(first, generator.timestamp()).dividedBy(10);
+        LocalDateTime start = first.plus(margin).plusSeconds(7);
+        LocalDateTime end = generator.timestamp().minus(margin).minusSeconds(7);
+        List<String> uris = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            uris.add("/events/" + i * (HitGenerator.URIS / 10));
+        }
+
+        if (storage.equals("postgres")) {
+            StatsRepository statsRepository = server.bean(StatsRepository.class);
+            List<Integer> uriIds = List.copyOf(server.bean(UriDictionary.class).findIds(uris).values());
+            all = () -> statsRepository.getStatsAll(start, end);
+            allForUris = () -> statsRepository.getStatsAllForUris(start, end, uriIds);
+            uniqueIp = () -> statsRepository.getStatsUniqueIp(start, end);
+            uniqueIpForUris = () -> statsRepository.getStatsUniqueIpForUris(start, end, uriIds);
+        } else {
+            all = () -> hitStorage.getStats(start, end, null, false, false);
+            allForUris = () -> hitStorage.getStats(start, end, uris, false, false);
+            uniqueIp = () -> hitStorage.getStats(start, end, null, true, false);
+            uniqueIpForUris = () -> hitStorage.getStats(start, end, uris, true, false);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public List<?> all() {
+        return all.get();
+    }
+
+    @Benchmark
+    public List<?> allForUris() {
+        return allForUris.get();
+    }
+
+    @Benchmark
+    public List<?> uniqueIp() {
+        return uniqueIp.get();
+    }
+
+    @Benchmark
+    public List<?> uniqueIpForUris() {
+        return uniqueIpForUris.get();
+    }
+
+    private boolean isLoaded(StatsRepository statsRepository) {
+        long count = statsRepository.count();
+        if (count != 0 && count != rows) {
+            throw new IllegalStateException("В БД " + count + " просмотров, ожидалось 0 или " + rows);
+        }
+        return count == rows;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.practicum.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.HitDto;
+import ru.practicum.service.StatsService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись одного просмотра через {@code StatsServiceImpl.create} в режиме
+ * {@code stats.ingest.mode=sync}, как при {@code POST /hit}: разбор DTO, запись в
+ * хранилище с агрегатами, окна {@code /stats/top}, счетчики {@code /stats/live} и кеш.
+ * Хранилище — см. {@link EmbeddedStatsServer}; в сегментах каждый просмотр
+ * подтверждается {@code fsync}, поэтому результат зависит от диска.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StatsServiceBenchmark {
+    @Param({"segment"})
+    private String storage;
+
+    private EmbeddedStatsServer server;
+    private StatsService statsService;
+    private List<HitDto> hits;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = EmbeddedStatsServer.start(storage);
+        statsService = server.bean(StatsService.class);
+        hits = new HitGenerator().next(10_000);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public HitDto create() {
+        HitDto hit = hits.get(next);
+        next = (next + 1) % hits.size();
+        return statsService.create(hit);
+    }
+}
@@ -0,0 +1,234 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Отправка просмотров в сервис статистики.
+ *
+ * <p>По умолчанию {@link #report} отправляет просмотр сразу через {@link StatsClient#saveHit}
+ * и возвращается, когда сервис статистики его принял, поэтому просмотр виден в статистике
+ * сразу после запроса. Фоновая отправка включается {@code stats-server.reporter.enabled}.
+ *
+ * <p>В фоновом режиме {@link #report} только кладет просмотр в неблокирующую очередь емкостью
+ * {@code stats-server.reporter.capacity} и сразу возвращается. Поток-флашер отправляет
+ * просмотры пачками через {@link StatsClient#saveHits}, как только набралось
+ * {@code flush-size} просмотров или прошло {@code flush-interval} с предыдущей отправки.
+ * Пачка, которую не удалось отправить, отбрасывается: ожидание повтора задержало бы
+ * и все следующие просмотры.
+ *
+ * <p>Что делать с просмотром, когда очередь заполнена, задает {@code overflow},
+ * см. {@link OverflowPolicy}. Глубина очереди — в метрике {@code stats.client.hits.queued},
+ * отправленные просмотры — в {@code stats.client.hits.sent}, потерянные — в
+ * {@code stats.client.hits.dropped} с причиной в теге {@code reason}. При остановке
+ * приложения очередь дописывается не дольше {@code drain-timeout}.
+ */
+@Slf4j
+@Component
+public class HitReporter {
+    private final StatsClient statsClient;
+    private final boolean enabled;
+    private final Queue<HitDto> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore permits;
+    private final int capacity;
+    private final int flushSize;
+    private final Duration flushInterval;
+    private final OverflowPolicy overflow;
+    private final Duration blockTimeout;
+    private final Duration drainTimeout;
+    private final Counter sent;
+    private final Counter droppedOverflow;
+    private final Counter droppedSampled;
+    private final Counter droppedError;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public HitReporter(StatsClient statsClient,
+                       MeterRegistry meterRegistry,
+                       @Value("${stats-server.reporter.enabled:false}") boolean enabled,
+                       @Value("${stats-server.reporter.capacity:10000}") int capacity,
+                       @Value("${stats-server.reporter.flush-size:500}") int flushSize,
+                       @Value("${stats-server.reporter.flush-interval:1s}") Duration flushInterval,
+                       @Value("${stats-server.reporter.overflow:drop-oldest}") OverflowPolicy overflow,
+                       @Value("${stats-server.reporter.block-timeout:50ms}") Duration blockTimeout,
+                       @Value("${stats-server.reporter.drain-timeout:5s}") Duration drainTimeout) {
+        this.statsClient = statsClient;
+        this.enabled = enabled;
+        this.permits = new Semaphore(capacity);
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.overflow = overflow;
+        this.blockTimeout = blockTimeout;
+        this.drainTimeout = drainTimeout;
+        this.sent = Counter.builder("stats.client.hits.sent")
+                .description("Просмотры, отправленные в сервис статистики")
+                .register(meterRegistry);
+        this.droppedOverflow = dropped(meterRegistry, "overflow");
+        this.droppedSampled = dropped(meterRegistry, "sampled");
+        this.droppedError = dropped(meterRegistry, "error");
+        Gauge.builder("stats.client.hits.queued", this, HitReporter::depth)
+                .description("Просмотры в очереди на отправку")
+                .register(meterRegistry);
+        this.flusher = new Thread(this::runFlusher, "stats-hit-reporter");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            flusher.start();
+        }
+    }
+
+    /**
+     * Ставит просмотр в очередь на отправку. Блокирует вызывающего только с политикой
+     * {@link OverflowPolicy#BLOCK} и не дольше {@code block-timeout}. Без фоновой отправки
+     * отправляет просмотр сразу; ошибка отправки передается вызывающему.
+     */
+    public void report(HitDto hitDto) {
+        if (!enabled) {
+            statsClient.saveHit(hitDto);
+            sent.increment();
+            return;
+        }
+        if (!running || !acquire()) {
+            return;
+        }
+        queue.add(hitDto);
+        if (depth() >= flushSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(drainTimeout.toMillis());
+        int lost = depth();
+        if (lost > 0) {
+            log.warn("Не удалось отправить просмотры при остановке, потеряно: {}", lost);
+            droppedError.increment(lost);
+        }
+    }
+
+    private boolean acquire() {
+        switch (overflow) {
+            case DROP_OLDEST -> {
+                if (permits.tryAcquire()) {
+                    return true;
+                }
+                // разрешение вытесненного просмотра переходит новому; если очередь пуста,
+                // все места заняты отправляемой пачкой и отбрасывается сам новый просмотр
+                droppedOverflow.increment();
+                return queue.poll() != null;
+            }
+            case SAMPLE -> {
+                // за половиной емкости принимается доля просмотров, равная свободной доле остатка
+                int free = permits.availablePermits();
+                if (free < capacity / 2 && ThreadLocalRandom.current().nextInt(capacity / 2) >= free) {
+                    droppedSampled.increment();
+                    return false;
+                }
+                if (!permits.tryAcquire()) {
+                    droppedOverflow.increment();
+                    return false;
+                }
+                return true;
+            }
+            case BLOCK -> {
+                try {
+                    if (permits.tryAcquire(blockTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                droppedOverflow.increment();
+                return false;
+            }
+            default -> throw new IllegalStateException("Неизвестная политика переполнения: " + overflow);
+        }
+    }
+
+    private void runFlusher() {
+        List<HitDto> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            if (running && depth() < flushSize) {
+                LockSupport.parkNanos(this, flushInterval.toNanos());
+            }
+            for (HitDto hitDto = queue.poll(); hitDto != null; hitDto = queue.poll()) {
+                batch.add(hitDto);
+                if (batch.size() == flushSize) {
+                    flush(batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+    }
+
+    private void flush(List<HitDto> batch) {
+        try {
+            statsClient.saveHits(batch);
+            sent.increment(batch.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отправить просмотры в сервис статистики: {} шт.", batch.size(), e);
+            droppedError.increment(batch.size());
+        } finally {
+            permits.release(batch.size());
+            batch.clear();
+        }
+    }
+
+    private int depth() {
+        return capacity - permits.availablePermits();
+    }
+
+    private static Counter dropped(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("stats.client.hits.dropped")
+                .description("Просмотры, не отправленные в сервис статистики")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Поведение {@link #report} при заполненной очереди.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Вытеснить самый старый просмотр из очереди.
+         */
+        DROP_OLDEST,
+        /**
+         * Когда очередь заполнена больше чем наполовину, принимать просмотры с
+         * вероятностью, убывающей до нуля при полной очереди.
+         */
+        SAMPLE,
+        /**
+         * Ждать места не дольше {@code block-timeout}, затем отбросить просмотр.
+         */
+        BLOCK
+    }
+}
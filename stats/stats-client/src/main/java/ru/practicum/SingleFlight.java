@@ -0,0 +1,98 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных одинаковых запросов к сервису статистики (single flight).
+ *
+ * <p>Первый вызов с ключом выполняет запрос в своем потоке, а вызовы с тем же ключом,
+ * пришедшие до его завершения, ждут и получают тот же результат или то же исключение.
+ * Завершившийся запрос сразу забывается: результат не кешируется, следующий вызов
+ * выполнит новый запрос.
+ *
+ * <p>Метрики с тегом {@code operation}: {@code stats.client.singleflight.calls} — вызовы
+ * с тегом {@code result=executed} или {@code merged}, {@code stats.client.singleflight.merged}
+ * — сколько вызовов присоединилось к каждому выполненному запросу. Ключ запроса в теги
+ * не попадает, чтобы число временных рядов не росло с числом URI; ключи запросов,
+ * к которым присоединялись вызовы, пишутся в журнал на уровне DEBUG.
+ */
+@Slf4j
+public final class SingleFlight<K, V> {
+    private final String operation;
+    private final Map<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter merged;
+    private final DistributionSummary mergedPerFlight;
+
+    public SingleFlight(MeterRegistry meterRegistry, String operation) {
+        this.operation = operation;
+        this.executed = calls(meterRegistry, operation, "executed");
+        this.merged = calls(meterRegistry, operation, "merged");
+        this.mergedPerFlight = DistributionSummary.builder("stats.client.singleflight.merged")
+                .description("Вызовы, присоединившиеся к одному запросу")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Выполняет {@code request} или присоединяется к уже выполняемому запросу с ключом {@code key}.
+     */
+    public V execute(K key, Supplier<V> request) {
+        Flight<V> flight = new Flight<>(new CompletableFuture<>(), new AtomicInteger());
+        Flight<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            running.followers().incrementAndGet();
+            merged.increment();
+            return join(running.result());
+        }
+
+        executed.increment();
+        try {
+            V result = request.get();
+            flight.result().complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            flight.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+            int followers = flight.followers().get();
+            mergedPerFlight.record(followers);
+            if (followers > 0) {
+                log.debug("К запросу {} {} присоединилось вызовов: {}", operation, key, followers);
+            }
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Counter calls(MeterRegistry meterRegistry, String operation, String result) {
+        return Counter.builder("stats.client.singleflight.calls")
+                .description("Вызовы запросов к сервису статистики")
+                .tag("operation", operation)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record Flight<V>(CompletableFuture<V> result, AtomicInteger followers) {
+    }
+}
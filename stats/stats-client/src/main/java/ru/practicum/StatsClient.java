@@ -1,41 +1,128 @@
 package ru.practicum;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.AllArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 import org.springframework.http.HttpStatusCode;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 @AllArgsConstructor
 public class StatsClient {
+    private static final DateTimeFormatter STATS_DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final MediaType HIT_FRAME = MediaType.parseMediaType(HitFrameCodec.MEDIA_TYPE);
+
     private final RestClient restClient;
     private final String url;
+    /**
+     * {@link ObjectMapper} приложения: строки NDJSON из {@link #streamStats} читаются с теми же
+     * настройками, что и ответы {@link RestClient}.
+     */
+    private final ObjectMapper objectMapper;
+    /**
+     * Отправлять просмотры в двоичном формате {@link HitFrameCodec} вместо JSON.
+     */
+    private final boolean binaryIngest;
+    /**
+     * Наибольшее число URI в одном запросе {@link #getViews}.
+     */
+    private final int viewsChunkSize;
+    /**
+     * Пул для параллельных запросов {@link #getViews}.
+     */
+    private final ExecutorService viewsExecutor;
+    /**
+     * Кеш {@link #getViews} или {@code null}, если кеш выключен.
+     */
+    private final LoadingCache<ViewsKey, Long> viewsCache;
+    /**
+     * Одновременные одинаковые запросы {@link #getStats} и {@link #getViews}
+     * выполняются один раз, см. {@link SingleFlight}.
+     */
+    private final SingleFlight<StatsKey, List<ViewStatsDto>> statsFlight;
+    private final SingleFlight<ViewsQuery, Map<String, Long>> viewsFlight;
 
     @Autowired
-    public StatsClient(@Value("${stats-server.url}") String serverUrl) {
+    public StatsClient(MeterRegistry meterRegistry,
+                       ObjectMapper objectMapper,
+                       @Value("${stats-server.url}") String serverUrl,
+                       @Value("${stats-server.binary-ingest:false}") boolean binaryIngest,
+                       @Value("${stats-server.views.chunk-size:1000}") int viewsChunkSize,
+                       @Value("${stats-server.views.parallelism:4}") int viewsParallelism,
+                       @Value("${stats-server.views.cache.enabled:false}") boolean viewsCacheEnabled,
+                       @Value("${stats-server.views.cache.max-size:10000}") long viewsCacheMaxSize,
+                       @Value("${stats-server.views.cache.refresh:30s}") Duration viewsCacheRefresh,
+                       @Value("${stats-server.views.cache.ttl:5m}") Duration viewsCacheTtl) {
         log.info("url: " + serverUrl);
         restClient = RestClient.builder()
                 .baseUrl(serverUrl)
                 .build();
         url = serverUrl;
+        this.objectMapper = objectMapper;
+        this.binaryIngest = binaryIngest;
+        this.viewsChunkSize = viewsChunkSize;
+        this.viewsExecutor = Executors.newFixedThreadPool(viewsParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "stats-views");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.statsFlight = new SingleFlight<>(meterRegistry, "stats");
+        this.viewsFlight = new SingleFlight<>(meterRegistry, "views");
+        this.viewsCache = viewsCacheEnabled ?
+                buildViewsCache(meterRegistry, viewsCacheMaxSize, viewsCacheRefresh, viewsCacheTtl) :
+                null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        viewsExecutor.shutdownNow();
     }
 
     public ResponseEntity<Object> saveHit(HitDto hitDto) {
-        return restClient.post()
-                .uri(uriBuilder -> uriBuilder.path("/hit").build())
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(hitDto)
+        RestClient.RequestBodySpec request = restClient.post()
+                .uri(uriBuilder -> uriBuilder.path("/hit").build());
+        if (binaryIngest) {
+            request.contentType(HIT_FRAME).body(HitFrameCodec.encode(List.of(hitDto)));
+        } else {
+            request.contentType(MediaType.APPLICATION_JSON).body(hitDto);
+        }
+        return request
                 .retrieve()
                 .onStatus(HttpStatusCode::isError, (req, res) -> {
                     throw new RuntimeException("StatsService error: " + res.getStatusText());
@@ -43,7 +130,34 @@ public class StatsClient {
                 .toEntity(Object.class);
     }
 
+    public HitBatchResultDto saveHits(List<HitDto> hitDtos) {
+        RestClient.RequestBodySpec request = restClient.post()
+                .uri(uriBuilder -> uriBuilder.path("/hits/batch").build());
+        if (binaryIngest) {
+            request.contentType(HIT_FRAME).body(HitFrameCodec.encode(hitDtos));
+        } else {
+            request.contentType(MediaType.APPLICATION_JSON).body(new HitBatchDto(hitDtos));
+        }
+        return request
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, (req, res) -> {
+                    throw new RuntimeException("StatsService error: " + res.getStatusText());
+                })
+                .body(HitBatchResultDto.class);
+    }
+
+    /**
+     * Получить статистику. Одновременные вызовы с тем же диапазоном, тем же набором URI
+     * (без учета порядка и повторов) и тем же {@code unique} получают результат одного
+     * запроса; список результата общий для них и не изменяется.
+     */
     public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+        List<String> uriSet = uris == null || uris.isEmpty() ? null : List.copyOf(new TreeSet<>(uris));
+        return statsFlight.execute(new StatsKey(start, end, uriSet, Boolean.TRUE.equals(unique)),
+                () -> List.copyOf(fetchStats(start, end, uris, unique)));
+    }
+
+    private List<ViewStatsDto> fetchStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
         String formattedStart = start.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
         String formattedEnd = end.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
 
@@ -65,4 +179,187 @@ public class StatsClient {
 
         return response.getBody();
     }
-}
\ No newline at end of file
+
+    /**
+     * Получить число просмотров сразу для многих URI, у каждого из которых свое начало
+     * периода, например для страницы событий, каждое из которых считается с момента
+     * публикации. Конец периода у всех URI — текущее время.
+     *
+     * <p>URI запрашиваются через {@code POST /stats/since} частями не больше
+     * {@code stats-server.views.chunk-size}; части запрашиваются параллельно, не больше
+     * {@code stats-server.views.parallelism} одновременно. Просмотры одного URI от разных
+     * приложений суммируются. Уникальные просмотры за время раньше границы свертки
+     * на сервере статистики оцениваются по скетчам с погрешностью HyperLogLog.
+     *
+     * <p>С {@code stats-server.views.cache.enabled} число просмотров берется из кеша по
+     * ключу (uri, unique, начало периода), см. {@link #buildViewsCache}.
+     *
+     * @param since начало периода для каждого URI
+     * @return число просмотров для каждого URI из {@code since}, 0 — если просмотров нет
+     */
+    public Map<String, Long> getViews(Map<String, LocalDateTime> since, boolean unique) {
+        if (viewsCache == null) {
+            return loadViews(since, unique);
+        }
+        Set<ViewsKey> keys = since.entrySet().stream()
+                .map(entry -> new ViewsKey(entry.getKey(), unique, entry.getValue()))
+                .collect(Collectors.toSet());
+        Map<String, Long> views = new HashMap<>();
+        viewsCache.getAll(keys).forEach((key, hits) -> views.put(key.uri(), hits));
+        return views;
+    }
+
+    /**
+     * Загружает число просмотров; одновременные вызовы с тем же {@code since} и
+     * {@code unique} получают результат одного запроса.
+     */
+    private Map<String, Long> loadViews(Map<String, LocalDateTime> since, boolean unique) {
+        return viewsFlight.execute(new ViewsQuery(Map.copyOf(since), unique),
+                () -> Map.copyOf(fetchViews(since, unique)));
+    }
+
+    private Map<String, Long> fetchViews(Map<String, LocalDateTime> since, boolean unique) {
+        Map<String, Long> views = new HashMap<>();
+        since.keySet().forEach(uri -> views.put(uri, 0L));
+        if (since.isEmpty()) {
+            return views;
+        }
+
+        LocalDateTime end = LocalDateTime.now();
+        List<UriStartDto> starts = since.entrySet().stream()
+                .map(entry -> new UriStartDto(entry.getKey(), entry.getValue()))
+                .toList();
+        List<CompletableFuture<List<ViewStatsDto>>> chunks = new ArrayList<>();
+        for (int from = 0; from < starts.size(); from += viewsChunkSize) {
+            StatsSinceDto query = new StatsSinceDto(end, unique, true,
+                    starts.subList(from, Math.min(from + viewsChunkSize, starts.size())));
+            // единственная часть запрашивается в вызывающем потоке: так обновление кеша,
+            // которое уже выполняется в пуле, не ждет задачу из того же пула
+            chunks.add(starts.size() <= viewsChunkSize ?
+                    CompletableFuture.completedFuture(getStatsSince(query)) :
+                    CompletableFuture.supplyAsync(() -> getStatsSince(query), viewsExecutor));
+        }
+
+        for (CompletableFuture<List<ViewStatsDto>> chunk : chunks) {
+            for (ViewStatsDto stats : chunk.join()) {
+                views.computeIfPresent(stats.getUri(), (uri, hits) -> hits + stats.getHits());
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Кеш числа просмотров размером не больше {@code maxSize} ключей. Значение старше
+     * {@code refresh} еще отдается из кеша, а первое такое обращение запускает его
+     * обновление в пуле {@link #viewsExecutor}; одновременно по ключу выполняется не
+     * больше одного обновления, поэтому сервис статистики получает не больше одного
+     * запроса по ключу за {@code refresh}. Значение, которое не обновлялось дольше
+     * {@code ttl}, — например, ключ, к которому давно не обращались, — удаляется и при
+     * следующем обращении загружается заново. Попадания и промахи видны в метриках
+     * {@code cache.gets{cache=stats.client.views}}.
+     */
+    private LoadingCache<ViewsKey, Long> buildViewsCache(MeterRegistry meterRegistry, long maxSize, Duration refresh,
+                                                         Duration ttl) {
+        if (refresh.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("Интервал stats-server.views.cache.refresh должен быть меньше ttl: "
+                    + refresh + " >= " + ttl);
+        }
+        LoadingCache<ViewsKey, Long> cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refresh)
+                .expireAfterWrite(ttl)
+                .executor(viewsExecutor)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public Long load(ViewsKey key) {
+                        return loadViews(Map.of(key.uri(), key.start()), key.unique()).get(key.uri());
+                    }
+
+                    @Override
+                    public Map<ViewsKey, Long> loadAll(Set<? extends ViewsKey> keys) {
+                        Map<ViewsKey, Long> loaded = new HashMap<>();
+                        keys.stream()
+                                .collect(Collectors.partitioningBy(ViewsKey::unique))
+                                .forEach((unique, uniqueKeys) -> {
+                                    Map<String, LocalDateTime> since = new HashMap<>();
+                                    uniqueKeys.forEach(key -> since.put(key.uri(), key.start()));
+                                    Map<String, Long> views = loadViews(since, unique);
+                                    uniqueKeys.forEach(key -> loaded.put(key, views.get(key.uri())));
+                                });
+                        return loaded;
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.client.views");
+        return cache;
+    }
+
+    private List<ViewStatsDto> getStatsSince(StatsSinceDto query) {
+        return restClient.post()
+                .uri(uriBuilder -> uriBuilder.path("/stats/since").build())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(query)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, (req, res) -> {
+                    throw new RuntimeException("StatsService error: " + res.getStatusText());
+                })
+                .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {});
+    }
+
+    /**
+     * Получить статистику потоком в формате NDJSON. Строки читаются из ответа по мере
+     * обхода потока, поэтому память клиента не зависит от числа строк. Поток держит
+     * соединение открытым и должен быть закрыт, например в try-with-resources.
+     */
+    public Stream<ViewStatsDto> streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+        ClientHttpResponse response = restClient.get()
+                .uri(uriBuilder -> {
+                    uriBuilder.path("/stats")
+                            .queryParam("start", start.format(STATS_DATE_TIME_FORMATTER))
+                            .queryParam("end", end.format(STATS_DATE_TIME_FORMATTER))
+                            .queryParam("unique", unique);
+
+                    if (uris != null && !uris.isEmpty()) {
+                        uriBuilder.queryParam("uris", String.join(",", uris));
+                    }
+
+                    return uriBuilder.build();
+                })
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange((req, res) -> res, false);
+
+        try {
+            if (response.getStatusCode().isError()) {
+                throw new RuntimeException("StatsService error: " + response.getStatusText());
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+            return reader.lines()
+                    .filter(line -> !line.isBlank())
+                    .map(this::readViewStats)
+                    .onClose(response::close);
+        } catch (IOException e) {
+            response.close();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    private ViewStatsDto readViewStats(String line) {
+        try {
+            return objectMapper.readValue(line, ViewStatsDto.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record ViewsKey(String uri, boolean unique, LocalDateTime start) {
+    }
+
+    private record ViewsQuery(Map<String, LocalDateTime> since, boolean unique) {
+    }
+
+    private record StatsKey(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+    }
+}
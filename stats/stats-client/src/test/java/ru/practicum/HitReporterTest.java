@@ -0,0 +1,180 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitReporterTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 10, 10, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FakeStatsClient statsClient = new FakeStatsClient(meterRegistry);
+
+    @Test
+    void disabledReporterSendsHitImmediately() {
+        HitReporter reporter = reporter(false, 10, 10, Duration.ofMinutes(1), HitReporter.OverflowPolicy.DROP_OLDEST);
+
+        reporter.report(hit("/events/1"));
+
+        assertThat(statsClient.uris()).containsExactly("/events/1");
+        assertThat(sent()).isEqualTo(1);
+
+        statsClient.failing = true;
+        assertThatThrownBy(() -> reporter.report(hit("/events/2"))).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void dropOldestKeepsNewestHits() throws InterruptedException {
+        HitReporter reporter = reporter(true, 3, 10, Duration.ofMinutes(1), HitReporter.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            reporter.report(hit("/events/" + i));
+        }
+
+        assertThat(queued()).isEqualTo(3);
+        assertThat(dropped("overflow")).isEqualTo(2);
+
+        reporter.start();
+        reporter.shutdown();
+
+        assertThat(statsClient.uris()).containsExactly("/events/2", "/events/3", "/events/4");
+        assertThat(sent()).isEqualTo(3);
+        assertThat(queued()).isZero();
+    }
+
+    @Test
+    void blockDropsHitAfterTimeout() {
+        HitReporter reporter = reporter(true, 1, 10, Duration.ofMinutes(1), HitReporter.OverflowPolicy.BLOCK);
+
+        reporter.report(hit("/events/1"));
+        reporter.report(hit("/events/2"));
+
+        assertThat(queued()).isEqualTo(1);
+        assertThat(dropped("overflow")).isEqualTo(1);
+    }
+
+    @Test
+    void sampleAcceptsHitsUntilHalfFullThenThinsThemOut() {
+        HitReporter reporter = reporter(true, 10, 100, Duration.ofMinutes(1), HitReporter.OverflowPolicy.SAMPLE);
+
+        for (int i = 0; i < 100; i++) {
+            reporter.report(hit("/events/" + i));
+        }
+
+        double accepted = queued();
+        assertThat(accepted).isBetween(5.0, 10.0);
+        assertThat(dropped("sampled") + dropped("overflow")).isEqualTo(100 - accepted);
+    }
+
+    @Test
+    void flushesAsSoonAsBatchIsFull() throws InterruptedException {
+        HitReporter reporter = reporter(true, 10, 2, Duration.ofMinutes(1), HitReporter.OverflowPolicy.DROP_OLDEST);
+        reporter.start();
+        try {
+            reporter.report(hit("/events/1"));
+            reporter.report(hit("/events/2"));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (statsClient.uris().size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(statsClient.uris()).containsExactly("/events/1", "/events/2");
+        } finally {
+            reporter.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownDrainsQueue() throws InterruptedException {
+        HitReporter reporter = reporter(true, 100, 100, Duration.ofMinutes(1), HitReporter.OverflowPolicy.DROP_OLDEST);
+        reporter.start();
+        for (int i = 0; i < 10; i++) {
+            reporter.report(hit("/events/" + i));
+        }
+
+        reporter.shutdown();
+
+        assertThat(statsClient.uris()).hasSize(10);
+        assertThat(sent()).isEqualTo(10);
+    }
+
+    @Test
+    void failedBatchIsCountedAsDropped() throws InterruptedException {
+        HitReporter reporter = reporter(true, 10, 10, Duration.ofMinutes(1), HitReporter.OverflowPolicy.DROP_OLDEST);
+        statsClient.failing = true;
+        reporter.start();
+        for (int i = 0; i < 3; i++) {
+            reporter.report(hit("/events/" + i));
+        }
+
+        reporter.shutdown();
+
+        assertThat(dropped("error")).isEqualTo(3);
+        assertThat(sent()).isZero();
+        assertThat(queued()).isZero();
+    }
+
+    private HitReporter reporter(boolean enabled, int capacity, int flushSize, Duration flushInterval,
+                                 HitReporter.OverflowPolicy overflow) {
+        return new HitReporter(statsClient, meterRegistry, enabled, capacity, flushSize, flushInterval, overflow,
+                Duration.ofMillis(10), Duration.ofSeconds(5));
+    }
+
+    private double sent() {
+        return meterRegistry.get("stats.client.hits.sent").counter().count();
+    }
+
+    private double dropped(String reason) {
+        return meterRegistry.get("stats.client.hits.dropped").tag("reason", reason).counter().count();
+    }
+
+    private double queued() {
+        return meterRegistry.get("stats.client.hits.queued").gauge().value();
+    }
+
+    private static HitDto hit(String uri) {
+        return new HitDto(null, "ewm-main-service", uri, "10.0.0.1", T0);
+    }
+
+    private static class FakeStatsClient extends StatsClient {
+        private final List<HitDto> saved = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+
+        FakeStatsClient(SimpleMeterRegistry meterRegistry) {
+            super(meterRegistry, new ObjectMapper(), "http://localhost", false, 1, 1, false, 1,
+                    Duration.ofSeconds(1), Duration.ofSeconds(2));
+        }
+
+        @Override
+        public ResponseEntity<Object> saveHit(HitDto hitDto) {
+            save(List.of(hitDto));
+            return ResponseEntity.ok().build();
+        }
+
+        @Override
+        public HitBatchResultDto saveHits(List<HitDto> hitDtos) {
+            save(hitDtos);
+            return null;
+        }
+
+        private void save(List<HitDto> hitDtos) {
+            if (failing) {
+                throw new RuntimeException("StatsService error: Service Unavailable");
+            }
+            saved.addAll(hitDtos);
+        }
+
+        List<String> uris() {
+            return saved.stream().map(HitDto::getUri).toList();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link StatsClient#getViews} против сервиса статистики на {@link HttpServer}: сервер
+ * отвечает на {@code POST /stats/since} числом просмотров {@link #hits} для каждого URI
+ * запроса и запоминает URI каждого запроса.
+ */
+class StatsClientTest {
+    private static final LocalDateTime PUBLISHED = LocalDateTime.of(2024, 3, 10, 10, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+    private final AtomicLong hits = new AtomicLong(1);
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    private HttpServer server;
+    private StatsClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/stats/since", this::statsSince);
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        if (client != null) {
+            client.shutdown();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void getViewsRequestsUrisInChunksAndSumsApps() {
+        client = client(2, false);
+
+        Map<String, Long> views = client.getViews(Map.of("/events/1", PUBLISHED, "/events/2", PUBLISHED,
+                "/events/3", PUBLISHED, "/events/4", PUBLISHED, "/events/5", PUBLISHED), false);
+
+        assertThat(requests).hasSize(3).allSatisfy(uris -> assertThat(uris).hasSizeBetween(1, 2));
+        assertThat(requests.stream().flatMap(List::stream).toList())
+                .containsExactlyInAnyOrder("/events/1", "/events/2", "/events/3", "/events/4", "/events/5");
+        // сервер отвечает двумя строками на URI — от двух приложений
+        assertThat(views).hasSize(5).containsEntry("/events/1", 2L).containsEntry("/events/5", 2L);
+    }
+
+    @Test
+    void getViewsReturnsZeroForUrisWithoutViews() {
+        client = client(10, false);
+        hits.set(0);
+
+        assertThat(client.getViews(Map.of("/events/1", PUBLISHED), true)).containsEntry("/events/1", 0L);
+    }
+
+    @Test
+    void concurrentIdenticalGetViewsShareOneRequest() throws Exception {
+        client = client(10, false);
+        release = new CountDownLatch(1);
+        Map<String, LocalDateTime> since = Map.of("/events/1", PUBLISHED);
+
+        CompletableFuture<Map<String, Long>> first = CompletableFuture.supplyAsync(() -> client.getViews(since, true));
+        await(() -> requests.size() == 1);
+        CompletableFuture<Map<String, Long>> second = CompletableFuture.supplyAsync(() -> client.getViews(since, true));
+        await(() -> meterRegistry.get("stats.client.singleflight.calls")
+                .tag("operation", "views").tag("result", "merged").counter().count() == 1);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsEntry("/events/1", 2L);
+        assertThat(second.get(5, TimeUnit.SECONDS)).containsEntry("/events/1", 2L);
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    void cachedViewsAreServedAndRefreshedInBackground() throws Exception {
+        client = client(10, true);
+        Map<String, LocalDateTime> since = Map.of("/events/1", PUBLISHED);
+
+        assertThat(client.getViews(since, true)).containsEntry("/events/1", 2L);
+        hits.set(5);
+        assertThat(client.getViews(since, true)).containsEntry("/events/1", 2L);
+        assertThat(requests).hasSize(1);
+
+        Thread.sleep(600);
+        // устаревшее значение отдается сразу, а обновление идет в фоне
+        assertThat(client.getViews(since, true)).containsEntry("/events/1", 2L);
+        await(() -> requests.size() == 2);
+        await(() -> client.getViews(since, true).get("/events/1") == 10L);
+        assertThat(requests).hasSize(2);
+
+        // ключи с другим началом периода загружаются отдельно, одним запросом на всех
+        assertThat(client.getViews(Map.of("/events/1", PUBLISHED.plusDays(1), "/events/2", PUBLISHED), true))
+                .containsEntry("/events/1", 10L)
+                .containsEntry("/events/2", 10L);
+        assertThat(requests).hasSize(3);
+    }
+
+    private StatsClient client(int chunkSize, boolean cacheEnabled) {
+        return new StatsClient(meterRegistry, objectMapper, "http://localhost:" + server.getAddress().getPort(),
+                false, chunkSize, 4, cacheEnabled, 100, Duration.ofMillis(500), Duration.ofMinutes(1));
+    }
+
+    private void statsSince(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode query = objectMapper.readTree(exchange.getRequestBody());
+            List<String> uris = new ArrayList<>();
+            query.get("uris").forEach(uri -> uris.add(uri.get("uri").asText()));
+            requests.add(uris);
+            release.await(5, TimeUnit.SECONDS);
+
+            List<ViewStatsDto> stats = new ArrayList<>();
+            if (hits.get() > 0) {
+                for (String uri : uris) {
+                    stats.add(new ViewStatsDto("ewm-main-service", uri, hits.get()));
+                    stats.add(new ViewStatsDto("ewm-admin-service", uri, hits.get()));
+                }
+            }
+            byte[] body = objectMapper.writeValueAsBytes(stats);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(Check check) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!check.passed()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Условие не выполнилось за 5 секунд");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        boolean passed();
+    }
+}
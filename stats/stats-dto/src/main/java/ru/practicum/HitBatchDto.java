@@ -0,0 +1,21 @@
+package ru.practicum;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HitBatchDto {
+    public static final int MAX_SIZE = 10_000;
+
+    @NotEmpty
+    @Size(max = MAX_SIZE)
+    private List<@Valid HitDto> hits;
+}
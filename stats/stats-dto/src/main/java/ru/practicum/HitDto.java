@@ -2,6 +2,7 @@ package ru.practicum;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,11 +17,15 @@ public class HitDto {
 
     @NotNull
     @NotBlank
+    @Size(max = 100)
     private String app;
 
     @NotNull
     @NotBlank
+    @Size(max = 2000)
     private String uri;
+
+    @NotBlank
     private String ip;
     private LocalDateTime timeStamp;
 }
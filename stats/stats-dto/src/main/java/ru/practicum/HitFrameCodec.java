@@ -0,0 +1,222 @@
+package ru.practicum;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактный двоичный формат пачки просмотров для передачи от stats-client к stats-server,
+ * тип содержимого {@value #MEDIA_TYPE}.
+ *
+ * <p>Формат кадра (целые — varint, big-endian для фиксированных полей):
+ * <pre>
+ * "EWMH", версия (байт)
+ * таблица строк  число строк; для каждой — длина в байтах UTF-8 и байты
+ * число просмотров
+ * просмотр       приложение и URI — номер строки в таблице + 1 (0 — null);
+ *                флаги (байт): {@link #IPV4} — IP записан 4 байтами, иначе номером строки + 1;
+ *                {@link #TIMESTAMP} — время есть: разность секунд с предыдущим
+ *                просмотром (zigzag) и наносекунды
+ * </pre>
+ * Приложения и URI в пачке обычно повторяются и попадают в таблицу строк один раз.
+ * Идентификатор просмотра не передается.
+ */
+public final class HitFrameCodec {
+    public static final String MEDIA_TYPE = "application/x-ewm-hits";
+
+    private static final int MAGIC = 0x45574d48;
+    private static final byte VERSION = 1;
+    private static final int IPV4 = 1;
+    private static final int TIMESTAMP = 2;
+
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private HitFrameCodec() {
+
+    }
+
+    public static byte[] encode(List<HitDto> hits) {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(hits.size() * 16);
+        writeVarint(body, hits.size());
+        long previousSecond = 0;
+        for (HitDto hit : hits) {
+            writeVarint(body, stringRef(hit.getApp(), strings, table));
+            writeVarint(body, stringRef(hit.getUri(), strings, table));
+
+            byte[] ipv4 = parseIpv4(hit.getIp());
+            LocalDateTime timestamp = hit.getTimeStamp();
+            body.write((ipv4 != null ? IPV4 : 0) | (timestamp != null ? TIMESTAMP : 0));
+            if (ipv4 != null) {
+                body.write(ipv4, 0, ipv4.length);
+            } else {
+                writeVarint(body, stringRef(hit.getIp(), strings, table));
+            }
+            if (timestamp != null) {
+                long second = timestamp.toEpochSecond(ZoneOffset.UTC);
+                long delta = second - previousSecond;
+                writeVarint(body, (delta << 1) ^ (delta >> 63));
+                writeVarint(body, timestamp.getNano());
+                previousSecond = second;
+            }
+        }
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(body.size() + table.size() * 24 + 16);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 1).putInt(MAGIC).put(VERSION);
+        frame.write(header.array(), 0, header.capacity());
+        writeVarint(frame, table.size());
+        for (String value : table) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(frame, bytes.length);
+            frame.write(bytes, 0, bytes.length);
+        }
+        frame.writeBytes(body.toByteArray());
+        return frame.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException если кадр поврежден или записан в неизвестной версии
+     */
+    public static List<HitDto> decode(byte[] frame) {
+        ByteBuffer in = ByteBuffer.wrap(frame);
+        try {
+            if (in.getInt() != MAGIC || in.get() != VERSION) {
+                throw new IllegalArgumentException("Неизвестный формат пачки просмотров");
+            }
+            int tableSize = readLength(in);
+            String[] table = new String[tableSize];
+            for (int i = 0; i < tableSize; i++) {
+                int length = readLength(in);
+                table[i] = new String(frame, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+
+            int count = readLength(in);
+            List<HitDto> hits = new ArrayList<>(count);
+            long second = 0;
+            for (int i = 0; i < count; i++) {
+                HitDto hit = new HitDto();
+                hit.setApp(string(table, readVarint(in)));
+                hit.setUri(string(table, readVarint(in)));
+                int flags = in.get();
+                if ((flags & IPV4) != 0) {
+                    hit.setIp((in.get() & 0xff) + "." + (in.get() & 0xff) + "." + (in.get() & 0xff) + "."
+                            + (in.get() & 0xff));
+                } else {
+                    hit.setIp(string(table, readVarint(in)));
+                }
+                if ((flags & TIMESTAMP) != 0) {
+                    long delta = readVarint(in);
+                    second += (delta >>> 1) ^ -(delta & 1);
+                    hit.setTimeStamp(LocalDateTime.ofEpochSecond(second, (int) readVarint(in), ZoneOffset.UTC));
+                }
+                hits.add(hit);
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Лишние байты в конце пачки просмотров");
+            }
+            return hits;
+        } catch (BufferUnderflowException | DateTimeException e) {
+            throw new IllegalArgumentException("Поврежденная пачка просмотров", e);
+        }
+    }
+
+    private static int stringRef(String value, Map<String, Integer> strings, List<String> table) {
+        if (value == null) {
+            return 0;
+        }
+        Integer index = strings.get(value);
+        if (index == null) {
+            index = table.size();
+            strings.put(value, index);
+            table.add(value);
+        }
+        return index + 1;
+    }
+
+    private static String string(String[] table, long ref) {
+        if (ref < 0 || ref > table.length) {
+            throw new IllegalArgumentException("Ссылка на несуществующую строку пачки просмотров: " + ref);
+        }
+        return ref == 0 ? null : table[(int) ref - 1];
+    }
+
+    /**
+     * Длина или число элементов: не больше оставшихся байт кадра, чтобы поврежденный
+     * кадр не заставил выделить лишнюю память.
+     */
+    private static int readLength(ByteBuffer in) {
+        long length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Некорректная длина в пачке просмотров: " + length);
+        }
+        return (int) length;
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Слишком длинное число в пачке просмотров");
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * IPv4 в десятичной записи с точками без ведущих нулей, иначе {@code null}:
+     * такой адрес после декодирования совпадет с исходной строкой.
+     */
+    private static byte[] parseIpv4(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        byte[] address = new byte[4];
+        int octet = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == 1 && value == 0) {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && digits > 0 && octet < 3) {
+                address[octet++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        if (digits == 0 || octet != 3) {
+            return null;
+        }
+        address[3] = (byte) value;
+        return address;
+    }
+}
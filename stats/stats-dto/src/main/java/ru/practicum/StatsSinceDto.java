@@ -0,0 +1,37 @@
+package ru.practicum;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Запрос статистики по URI, у каждого из которых свое начало диапазона, с общим концом.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsSinceDto {
+    public static final int MAX_SIZE = 10_000;
+
+    @NotNull
+    private LocalDateTime end;
+
+    private boolean unique;
+
+    /**
+     * При {@code unique} оценить число уникальных IP по скетчам для URI, начало которых
+     * раньше границы свертки просмотров; без этого флага такой запрос отклоняется.
+     */
+    private boolean approximate;
+
+    @NotEmpty
+    @Size(max = MAX_SIZE)
+    private List<@Valid UriStartDto> uris;
+}
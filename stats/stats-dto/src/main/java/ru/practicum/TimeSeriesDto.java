@@ -0,0 +1,21 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesDto {
+
+    private String app;
+
+    private String uri;
+
+    private Long hits;
+
+    private List<TimeBucketDto> buckets;
+}
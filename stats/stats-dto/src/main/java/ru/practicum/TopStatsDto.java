@@ -0,0 +1,22 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopStatsDto {
+
+    private LocalDateTime start;
+
+    private Long totalHits;
+
+    private Long errorBound;
+
+    private List<ViewStatsDto> stats;
+}
@@ -0,0 +1,22 @@
+package ru.practicum;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UriStartDto {
+    @NotBlank
+    @Size(max = 2000)
+    private String uri;
+
+    @NotNull
+    private LocalDateTime start;
+}
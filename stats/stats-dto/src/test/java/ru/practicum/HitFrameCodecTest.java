@@ -0,0 +1,171 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitFrameCodecTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 10, 10, 0);
+    private static final byte[] HEADER = {'E', 'W', 'M', 'H', 1};
+
+    @Test
+    void roundTripKeepsAllFields() {
+        List<HitDto> hits = List.of(
+                hit("ewm-main-service", "/events/1", "192.168.0.1", T0),
+                hit("ewm-main-service", "/events/2", "0.0.0.0", T0.plusSeconds(5).withNano(123_456_789)),
+                hit("ewm-main-service", "/events/1", "255.255.255.255", T0.minusHours(3)),
+                hit("other-service", "/", "2001:db8::1", T0));
+
+        assertThat(HitFrameCodec.decode(HitFrameCodec.encode(hits))).isEqualTo(hits);
+    }
+
+    @Test
+    void roundTripKeepsNullFields() {
+        List<HitDto> hits = List.of(
+                hit(null, null, null, null),
+                hit("ewm-main-service", null, "10.0.0.1", null),
+                hit(null, "/events", null, T0));
+
+        assertThat(HitFrameCodec.decode(HitFrameCodec.encode(hits))).isEqualTo(hits);
+    }
+
+    @Test
+    void roundTripKeepsNonCanonicalIpv4AsString() {
+        List<HitDto> hits = new ArrayList<>();
+        for (String ip : List.of("010.0.0.1", "1.2.3", "1.2.3.4.5", "256.0.0.1", "1..2.3", "1.2.3.", ".1.2.3",
+                "1.2.3.4 ", "", "::ffff:1.2.3.4", "localhost")) {
+            hits.add(hit("ewm-main-service", "/events", ip, T0));
+        }
+
+        assertThat(HitFrameCodec.decode(HitFrameCodec.encode(hits))).isEqualTo(hits);
+    }
+
+    @Test
+    void roundTripKeepsExtremeTimestamps() {
+        List<HitDto> hits = List.of(
+                hit("app", "/", "10.0.0.1", LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_999)),
+                hit("app", "/", "10.0.0.1", LocalDateTime.MAX),
+                hit("app", "/", "10.0.0.1", LocalDateTime.MIN),
+                hit("app", "/", "10.0.0.1", LocalDateTime.of(1970, 1, 1, 0, 0)),
+                hit("app", "/", "10.0.0.1", LocalDateTime.MIN));
+
+        assertThat(HitFrameCodec.decode(HitFrameCodec.encode(hits))).isEqualTo(hits);
+    }
+
+    @Test
+    void roundTripEmptyBatch() {
+        assertThat(HitFrameCodec.decode(HitFrameCodec.encode(List.of()))).isEmpty();
+    }
+
+    @Test
+    void encodeWritesRepeatedStringsOnce() {
+        String uri = "/events/" + "x".repeat(100);
+        List<HitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            hits.add(hit("ewm-main-service", uri, "10.0.0." + i, T0.plusSeconds(i)));
+        }
+
+        assertThat(HitFrameCodec.encode(hits)).hasSizeLessThan(uri.length() * 2 + hits.size() * 12);
+    }
+
+    @Test
+    void encodeWritesZigzagSecondDeltas() {
+        List<HitDto> hits = List.of(
+                hit("a", "/", "10.0.0.1", LocalDateTime.of(1970, 1, 1, 0, 0, 1)),
+                hit("a", "/", "10.0.0.1", LocalDateTime.of(1970, 1, 1, 0, 0)),
+                hit("a", "/", "10.0.0.1", LocalDateTime.of(1970, 1, 1, 0, 1, 4, 200)));
+
+        assertThat(HitFrameCodec.encode(hits)).containsExactly(frame(
+                2, 1, 'a', 1, '/', 3,
+                1, 2, 3, 10, 0, 0, 1, 2, 0,
+                1, 2, 3, 10, 0, 0, 1, 1, 0,
+                1, 2, 3, 10, 0, 0, 1, 0x80, 0x01, 0xc8, 0x01));
+    }
+
+    @Test
+    void decodeRejectsEveryTruncatedFrame() {
+        byte[] frame = HitFrameCodec.encode(List.of(
+                hit("ewm-main-service", "/events/1", "192.168.0.1", T0),
+                hit("ewm-main-service", "/events/2", "2001:db8::1", T0.plusNanos(999_999_999))));
+
+        for (int length = 0; length < frame.length; length++) {
+            byte[] truncated = Arrays.copyOf(frame, length);
+            assertThatThrownBy(() -> HitFrameCodec.decode(truncated))
+                    .as("кадр из %d байт", length)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void decodeRejectsTrailingBytes() {
+        byte[] frame = HitFrameCodec.encode(List.of(hit("app", "/", "10.0.0.1", T0)));
+
+        assertThatThrownBy(() -> HitFrameCodec.decode(Arrays.copyOf(frame, frame.length + 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void decodeRejectsUnknownMagicAndVersion() {
+        byte[] frame = HitFrameCodec.encode(List.of(hit("app", "/", "10.0.0.1", T0)));
+        byte[] badMagic = frame.clone();
+        badMagic[0] = 'X';
+        byte[] badVersion = frame.clone();
+        badVersion[4] = 2;
+
+        assertThatThrownBy(() -> HitFrameCodec.decode(badMagic)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HitFrameCodec.decode(badVersion)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void decodeRejectsMissingString() {
+        assertThatThrownBy(() -> HitFrameCodec.decode(frame(1, 1, 'a', 1, 2, 0, 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void decodeRejectsLengthBeyondFrame() {
+        assertThatThrownBy(() -> HitFrameCodec.decode(frame(1, 100, 'a', 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HitFrameCodec.decode(frame(0, 0xff, 0xff, 0xff, 0xff, 0x0f)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void decodeRejectsTooLongVarint() {
+        int[] varint = new int[12];
+        Arrays.fill(varint, 0x80);
+
+        assertThatThrownBy(() -> HitFrameCodec.decode(frame(varint)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void decodeRejectsInvalidNanos() {
+        assertThatThrownBy(() -> HitFrameCodec.decode(frame(0, 1, 0, 0, 2, 0, 0, 0x80, 0x94, 0xeb, 0xdc, 0x03)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HitDto hit(String app, String uri, String ip, LocalDateTime timeStamp) {
+        return new HitDto(null, app, uri, ip, timeStamp);
+    }
+
+    /**
+     * Кадр из заголовка текущей версии и перечисленных байт.
+     */
+    private static byte[] frame(int... body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(HEADER);
+        for (int b : body) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+}
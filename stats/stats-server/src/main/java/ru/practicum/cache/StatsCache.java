@@ -0,0 +1,283 @@
+package ru.practicum.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.model.Hit;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Кеш ответов {@code /stats} и {@code /stats/since} по нормализованному запросу.
+ *
+ * <p>Диапазон запроса делится границей {@link #closedBefore()} — текущим временем минус
+ * {@code stats.cache.lateness}, округленным вниз до {@code stats.cache.bucket}. Просмотры
+ * раньше этой границы считаются закрытыми: статистика за них кешируется без срока
+ * жизни, а открытый хвост после границы каждый раз считается заново и складывается
+ * с закрытой частью. Закрытая часть хранится под ключом без конца диапазона и, когда
+ * граница сдвигается, дополняется только просмотрами между старой и новой границей,
+ * поэтому запрос с тем же началом попадает в ту же запись кеша и после сдвига.
+ * Для {@code /stats/since} закрытая часть хранится отдельно по каждому URI.
+ *
+ * <p>Число уникальных IP по частям не складывается, поэтому с {@code unique} кешируются
+ * только диапазоны {@code /stats}, целиком лежащие до границы; открытые диапазоны с
+ * {@code unique} и {@code /stats/since} с {@code unique} считаются каждый раз.
+ *
+ * <p>Если просмотр все же пришел с временем до границы, записи, в диапазон которых он
+ * попадает, удаляются ({@link #invalidate(List)}). Размер кеша ограничен
+ * {@code stats.cache.max-size} записями, попадания и промахи видны в метриках
+ * {@code cache.gets{cache=stats.query}}.
+ */
+@Slf4j
+@Component
+public class StatsCache {
+    private final Cache<Key, Part> cache;
+    private final long bucketSeconds;
+    private final Duration lateness;
+    private final Clock clock;
+    /**
+     * Счетчик инвалидаций: результат, посчитанный до инвалидации, в кеш не кладется.
+     */
+    private long invalidations;
+
+    @Autowired
+    public StatsCache(MeterRegistry meterRegistry,
+                      @Value("${stats.cache.max-size:10000}") long maxSize,
+                      @Value("${stats.cache.bucket:1m}") Duration bucket,
+                      @Value("${stats.cache.lateness:1m}") Duration lateness) {
+        this(meterRegistry, maxSize, bucket, lateness, Clock.systemDefaultZone());
+    }
+
+    StatsCache(MeterRegistry meterRegistry, long maxSize, Duration bucket, Duration lateness, Clock clock) {
+        if (bucket.toSeconds() < 1 || !bucket.equals(Duration.ofSeconds(bucket.toSeconds()))) {
+            throw new IllegalArgumentException("Интервал stats.cache.bucket должен состоять из целых секунд: " + bucket);
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.bucketSeconds = bucket.toSeconds();
+        this.lateness = lateness;
+        this.clock = clock;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.query");
+    }
+
+    /**
+     * Статистика за [start, end]: закрытая часть диапазона — из кеша, открытая —
+     * из {@code loader}.
+     *
+     * @param uris   URI фильтра или {@code null}, если по всем
+     * @param loader подсчет статистики за поддиапазон с теми же параметрами
+     */
+    public List<ViewStatsDto> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                  boolean approximate, Loader loader) {
+        LocalDateTime closed = closedBefore();
+        if (end.isBefore(closed)) {
+            return cached(new Key(start, end, normalize(uris), unique, unique && approximate), loader);
+        }
+        if (unique || !start.isBefore(closed)) {
+            return loader.load(start, end);
+        }
+
+        Key key = new Key(start, null, normalize(uris), false, false);
+        LocalDateTime closedEnd = closed.minus(1, ChronoUnit.MICROS);
+        long generation = generation();
+        Part head = cache.getIfPresent(key);
+        if (head == null || head.end().isAfter(closedEnd)) {
+            head = new Part(closedEnd, List.copyOf(loader.load(start, closedEnd)));
+            put(key, head, generation);
+        } else if (head.end().isBefore(closedEnd)) {
+            head = new Part(closedEnd, merge(head.stats(), loader.load(head.end().plus(1, ChronoUnit.MICROS), closedEnd)));
+            put(key, head, generation);
+        }
+        return merge(head.stats(), loader.load(closed, end));
+    }
+
+    /**
+     * Статистика для каждого URI за [начало URI, end], как у {@code /stats/since}:
+     * закрытая часть — из кеша по каждому URI, недостающие части всех URI — одним
+     * вызовом {@code loader}.
+     *
+     * @param starts начало диапазона для каждого URI
+     * @param loader подсчет статистики для каждого URI за [начало URI, конец]
+     */
+    public List<ViewStatsDto> getSince(Map<String, LocalDateTime> starts, LocalDateTime end, boolean unique,
+                                       SinceLoader loader) {
+        LocalDateTime closed = closedBefore();
+        if (unique || end.isBefore(closed)) {
+            return loader.load(starts, end);
+        }
+
+        LocalDateTime closedEnd = closed.minus(1, ChronoUnit.MICROS);
+        long generation = generation();
+        Map<String, Part> heads = new HashMap<>();
+        Map<String, LocalDateTime> missing = new HashMap<>();
+        Map<String, LocalDateTime> tails = new HashMap<>();
+        starts.forEach((uri, start) -> {
+            tails.put(uri, start.isBefore(closed) ? closed : start);
+            if (!start.isBefore(closed)) {
+                return;
+            }
+            Part head = cache.getIfPresent(new Key(start, null, List.of(uri), false, false));
+            if (head == null || head.end().isAfter(closedEnd)) {
+                heads.put(uri, new Part(closedEnd, List.of()));
+                missing.put(uri, start);
+            } else {
+                heads.put(uri, head);
+                if (head.end().isBefore(closedEnd)) {
+                    missing.put(uri, head.end().plus(1, ChronoUnit.MICROS));
+                }
+            }
+        });
+
+        if (!missing.isEmpty()) {
+            Map<String, List<ViewStatsDto>> loaded = loader.load(missing, closedEnd).stream()
+                    .collect(Collectors.groupingBy(ViewStatsDto::getUri));
+            missing.keySet().forEach(uri -> {
+                Part head = new Part(closedEnd, merge(heads.get(uri).stats(), loaded.getOrDefault(uri, List.of())));
+                heads.put(uri, head);
+                put(new Key(starts.get(uri), null, List.of(uri), false, false), head, generation);
+            });
+        }
+
+        List<ViewStatsDto> head = heads.values().stream()
+                .flatMap(part -> part.stats().stream())
+                .toList();
+        return merge(head, loader.load(tails, end));
+    }
+
+    /**
+     * Удаляет записи, в диапазон которых попадают записанные просмотры. Вызывается
+     * после записи просмотров; просмотры за открытую часть диапазона кеш не затрагивают.
+     */
+    public void invalidate(List<Hit> hits) {
+        LocalDateTime closed = closedBefore();
+        LocalDateTime min = null;
+        LocalDateTime max = null;
+        for (Hit hit : hits) {
+            LocalDateTime timestamp = hit.getTimestamp();
+            if (timestamp.isBefore(closed)) {
+                min = min == null || timestamp.isBefore(min) ? timestamp : min;
+                max = max == null || timestamp.isAfter(max) ? timestamp : max;
+            }
+        }
+        if (min == null) {
+            return;
+        }
+
+        LocalDateTime from = min;
+        LocalDateTime to = max;
+        synchronized (this) {
+            invalidations++;
+            cache.asMap().entrySet().removeIf(entry ->
+                    !entry.getValue().end().isBefore(from) && !entry.getKey().start().isAfter(to));
+        }
+        log.debug("Просмотры за закрытый период [{}, {}], кеш статистики очищен за этот период", from, to);
+    }
+
+    /**
+     * Очищает кеш, например после удаления старых просмотров.
+     */
+    public void invalidateAll() {
+        synchronized (this) {
+            invalidations++;
+            cache.invalidateAll();
+        }
+    }
+
+    private List<ViewStatsDto> cached(Key key, Loader loader) {
+        Part part = cache.getIfPresent(key);
+        if (part != null) {
+            return part.stats();
+        }
+
+        long generation = generation();
+        List<ViewStatsDto> stats = List.copyOf(loader.load(key.start(), key.end()));
+        put(key, new Part(key.end(), stats), generation);
+        return stats;
+    }
+
+    private synchronized long generation() {
+        return invalidations;
+    }
+
+    /**
+     * Кладет запись, если после {@code generation} кеш не очищался. Из двух записей
+     * закрытой части с одним ключом остается доходящая до более поздней границы.
+     */
+    private synchronized void put(Key key, Part part, long generation) {
+        if (generation == invalidations) {
+            cache.asMap().merge(key, part, (current, next) -> current.end().isAfter(next.end()) ? current : next);
+        }
+    }
+
+    private LocalDateTime closedBefore() {
+        long seconds = LocalDateTime.now(clock).minus(lateness).toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(seconds - Math.floorMod(seconds, bucketSeconds), 0, ZoneOffset.UTC);
+    }
+
+    private static List<String> normalize(List<String> uris) {
+        return uris == null ? null : List.copyOf(new TreeSet<>(uris));
+    }
+
+    private static List<ViewStatsDto> merge(List<ViewStatsDto> head, List<ViewStatsDto> tail) {
+        Map<List<String>, ViewStatsDto> merged = new LinkedHashMap<>();
+        for (List<ViewStatsDto> part : List.of(head, tail)) {
+            for (ViewStatsDto stats : part) {
+                merged.merge(List.of(stats.getApp(), stats.getUri()),
+                        new ViewStatsDto(stats.getApp(), stats.getUri(), stats.getHits()),
+                        (left, right) -> new ViewStatsDto(left.getApp(), left.getUri(), left.getHits() + right.getHits()));
+            }
+        }
+        List<ViewStatsDto> stats = new ArrayList<>(merged.values());
+        stats.sort(Comparator.comparingLong(ViewStatsDto::getHits).reversed());
+        return List.copyOf(stats);
+    }
+
+    /**
+     * Подсчет статистики за поддиапазон [start, end] с параметрами исходного запроса.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<ViewStatsDto> load(LocalDateTime start, LocalDateTime end);
+    }
+
+    /**
+     * Подсчет статистики для каждого URI за [начало URI, end].
+     */
+    @FunctionalInterface
+    public interface SinceLoader {
+        List<ViewStatsDto> load(Map<String, LocalDateTime> starts, LocalDateTime end);
+    }
+
+    /**
+     * Ключ записи; у закрытой части открытого диапазона {@code end} равен {@code null}.
+     */
+    private record Key(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                       boolean approximate) {
+    }
+
+    /**
+     * Статистика за [начало ключа, end].
+     */
+    private record Part(LocalDateTime end, List<ViewStatsDto> stats) {
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.compaction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.cache.StatsCache;
+import ru.practicum.repository.CompactionRepository;
+import ru.practicum.repository.RollupRepository.Granularity;
+import ru.practicum.repository.SketchRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Свертка старых просмотров в почасовые агрегаты.
+ *
+ * <p>При запуске сервиса и по расписанию {@code stats.compaction.cron} граница свертки
+ * сдвигается на начало часа, отстоящего от текущего времени на {@code age}, после
+ * чего исходные просмотры раньше границы удаляются пачками по {@code batch-size},
+ * а затем удаляются и их поминутные агрегаты. Количество просмотров и скетч IP-адресов
+ * каждого часа уже хранятся в {@code hits_hour}, которая обновляется при записи, и
+ * {@code hits_hll}, поэтому свертка ничего не пересчитывает. Граница не сдвигается
+ * дальше часов, скетчи которых уже построены ({@link HitSketcher}): иначе IP-адреса
+ * остальных часов были бы потеряны.
+ *
+ * <p>Граница сохраняется до удаления: запросы, начавшиеся после ее сдвига, уже не
+ * читают свернутые просмотры. За время раньше границы {@link ru.practicum.storage.JpaHitStorage}
+ * считает просмотры по часам, начавшимся в диапазоне запроса, а уникальные IP
+ * оценивает по скетчам. Просмотр, пришедший с временем раньше границы уже после
+ * свертки, учитывается в агрегатах, а исходная запись удаляется при следующем запуске.
+ *
+ * <p>Одновременно свертку выполняет только один экземпляр сервиса: остальные
+ * пропускают запуск, не получив advisory-блокировку.
+ */
+@Slf4j
+@Component
+@Profile("!segment")
+@ConditionalOnProperty(name = "stats.compaction.enabled", havingValue = "true")
+public class HitCompaction {
+    private static final long LOCK_ID = 0x636f6d70L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CompactionRepository compactionRepository;
+    private final SketchRepository sketchRepository;
+    private final StatsCache statsCache;
+    private final Duration age;
+    private final int batchSize;
+
+    public HitCompaction(JdbcTemplate jdbcTemplate,
+                         CompactionRepository compactionRepository,
+                         SketchRepository sketchRepository,
+                         StatsCache statsCache,
+                         @Value("${stats.compaction.age:90d}") Duration age,
+                         @Value("${stats.compaction.batch-size:10000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.compactionRepository = compactionRepository;
+        this.sketchRepository = sketchRepository;
+        this.statsCache = statsCache;
+        this.age = age;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${stats.compaction.cron:0 30 3 * * *}")
+    public void compact() {
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                JdbcTemplate session = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+                if (!Boolean.TRUE.equals(session.queryForObject("SELECT pg_try_advisory_lock(?)", Boolean.class, LOCK_ID))) {
+                    log.info("Свертка просмотров уже выполняется другим экземпляром сервиса");
+                    return null;
+                }
+                try {
+                    LocalDateTime boundary = Granularity.HOUR.floor(LocalDateTime.now().minus(age));
+                    LocalDateTime sketchedBefore = sketchRepository.findSketchedBefore().orElse(boundary);
+                    compact(sketchedBefore.isBefore(boundary) ? sketchedBefore : boundary);
+                } finally {
+                    session.queryForObject("SELECT pg_advisory_unlock(?)", Boolean.class, LOCK_ID);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Ошибка свертки просмотров", e);
+        }
+    }
+
+    private void compact(LocalDateTime boundary) {
+        compactionRepository.advance(boundary);
+        statsCache.invalidateAll();
+        LocalDateTime compactedBefore = compactionRepository.findBoundary().orElse(boundary);
+
+        long hits = 0;
+        for (int deleted = batchSize; deleted == batchSize; hits += deleted) {
+            deleted = compactionRepository.deleteHits(compactedBefore, batchSize);
+        }
+        int minutes = compactionRepository.deleteMinutes(compactedBefore);
+        log.info("Просмотры до {} свернуты в почасовые агрегаты, удалено просмотров: {}, минутных корзин: {}",
+                compactedBefore, hits, minutes);
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.compaction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.TimeRange;
+import ru.practicum.repository.RollupRepository.Granularity;
+import ru.practicum.repository.SketchRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Построение почасовых скетчей IP-адресов {@code hits_hll} по исходным просмотрам.
+ *
+ * <p>При запуске сервиса и каждые {@code stats.sketches.interval} задача берет в работу
+ * часы, закончившиеся не позже чем {@code delay} назад, и строит их скетчи одним запросом
+ * на час, см. {@link SketchRepository#build}. Поэтому запись просмотров не блокирует
+ * и не перезаписывает скетч своего часа: в скетчи при записи попадают только
+ * опоздавшие просмотры закончившихся часов. Перед тем как взять часы в работу, задача
+ * ждет завершения идущих транзакций записи ({@code writers-timeout}), так что запись
+ * не берет блокировок и не читает ход построения.
+ *
+ * <p>Пока скетч часа не построен, {@link ru.practicum.storage.JpaHitStorage} оценивает
+ * уникальные IP за этот час по исходным просмотрам. Свертка ({@link HitCompaction})
+ * не сдвигает свою границу дальше построенных скетчей.
+ *
+ * <p>Одновременно скетчи строит только один экземпляр сервиса: остальные
+ * пропускают запуск, не получив advisory-блокировку.
+ */
+@Slf4j
+@Component
+@Profile("!segment")
+public class HitSketcher {
+    private static final long LOCK_ID = 0x736b6368L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SketchRepository sketchRepository;
+    private final Duration delay;
+    private final Duration writersTimeout;
+
+    public HitSketcher(JdbcTemplate jdbcTemplate,
+                       TransactionTemplate transactionTemplate,
+                       SketchRepository sketchRepository,
+                       @Value("${stats.sketches.delay:1m}") Duration delay,
+                       @Value("${stats.sketches.writers-timeout:30s}") Duration writersTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.sketchRepository = sketchRepository;
+        this.delay = delay;
+        this.writersTimeout = writersTimeout;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${stats.sketches.interval:1m}", initialDelayString = "${stats.sketches.interval:1m}")
+    public void sketch() {
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                JdbcTemplate session = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+                if (!Boolean.TRUE.equals(session.queryForObject("SELECT pg_try_advisory_lock(?)", Boolean.class, LOCK_ID))) {
+                    log.debug("Скетчи IP-адресов уже строит другой экземпляр сервиса");
+                    return null;
+                }
+                try {
+                    LocalDateTime now = LocalDateTime.now();
+                    if (!sketchRepository.awaitRunningTransactions(writersTimeout)) {
+                        log.warn("Транзакции записи не завершились за {}, построение скетчей отложено", writersTimeout);
+                        return null;
+                    }
+                    sketch(Granularity.HOUR.floor(now.minus(delay)), Granularity.HOUR.floor(now).minusHours(1));
+                } finally {
+                    session.queryForObject("SELECT pg_advisory_unlock(?)", Boolean.class, LOCK_ID);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Ошибка построения скетчей IP-адресов", e);
+        }
+    }
+
+    /**
+     * Строит скетчи часов раньше {@code before} по одному часу в транзакции, так что
+     * прерванное построение продолжается с первого непостроенного часа.
+     *
+     * @param initial граница, с которой начинается построение, если оно еще не выполнялось
+     */
+    void sketch(LocalDateTime before, LocalDateTime initial) {
+        TimeRange pending = transactionTemplate.execute(status -> sketchRepository.reserve(before, initial));
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        for (LocalDateTime hour = pending.from(); hour.isBefore(pending.to()); hour = hour.plusHours(1)) {
+            LocalDateTime bucket = hour;
+            Integer sketches = transactionTemplate.execute(status -> sketchRepository.build(bucket));
+            log.debug("Построены скетчи IP-адресов за {}: {} шт.", bucket, sketches);
+        }
+        log.info("Построены скетчи IP-адресов с {} до {}", pending.from(), pending.to());
+    }
+}
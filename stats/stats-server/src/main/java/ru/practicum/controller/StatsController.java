@@ -1,16 +1,29 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.HitBatchDto;
+import ru.practicum.HitBatchResultDto;
 import ru.practicum.HitDto;
+import ru.practicum.StatsSinceDto;
+import ru.practicum.TimeSeriesDto;
+import ru.practicum.TopStatsDto;
 import ru.practicum.ViewStatsDto;
 import ru.practicum.service.StatsService;
+import ru.practicum.storage.StatsStream;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -24,10 +37,14 @@ import java.util.List;
 @RequiredArgsConstructor
 public class StatsController {
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
 
 
     /**
-     * Создать запрос
+     * Создать запрос. Тело — JSON или, с {@code Content-Type: application/x-ewm-hits},
+     * кадр {@link ru.practicum.HitFrameCodec} из одного просмотра. Время просмотра из тела
+     * должно быть в пределах {@code stats.ingest.max-clock-skew} и {@code max-hit-age} от
+     * текущего, иначе запрос отклоняется с 400
      *
      * @param hitDto объект, содержащий данные о новом запросе
      * @return HitDto объект созданного запроса
@@ -39,6 +56,21 @@ public class StatsController {
         return new ResponseEntity<>(createdHit, HttpStatus.CREATED);
     }
 
+    /**
+     * Создать запросы пакетом. Тело — JSON или, с {@code Content-Type: application/x-ewm-hits},
+     * кадр {@link ru.practicum.HitFrameCodec}. Если время хотя бы одного просмотра вне пределов,
+     * как в {@link #createHit}, отклоняется весь пакет
+     *
+     * @param hitBatchDto объект, содержащий список новых запросов
+     * @return HitBatchResultDto количество принятых запросов
+     */
+    @PostMapping("/hits/batch")
+    public ResponseEntity<HitBatchResultDto> createHits(@RequestBody @Valid HitBatchDto hitBatchDto) {
+        log.info("Creating {} hits in the service", hitBatchDto.getHits().size());
+        int accepted = statsService.createAll(hitBatchDto.getHits());
+        return new ResponseEntity<>(new HitBatchResultDto(accepted), HttpStatus.CREATED);
+    }
+
     /**
      * Получить статистику посещений
      *
@@ -46,17 +78,165 @@ public class StatsController {
      * @param end    дата и время конца диапазона за который нужно выгрузить статистику
      * @param uris   список uri для которых нужно выгрузить статистику
      * @param unique учитывать только уникальные посещения (только с уникальным ip)
+     * @param approximate при {@code unique=true} оценить число уникальных посещений по
+     *                    HyperLogLog-скетчам вместо точного подсчета; стандартная ошибка
+     *                    оценки ~0.81%, с вероятностью ~99.7% — не более 2.5%. Без
+     *                    {@code unique} не влияет на результат: общее число посещений всегда точное.
+     *                    Если диапазон начинается раньше границы свертки просмотров
+     *                    ({@code stats.compaction}), уникальные посещения за него можно только
+     *                    оценить: без {@code approximate} такой запрос отклоняется с 400, а
+     *                    посещения за свернутое время считаются по целым часам, начавшимся
+     *                    в диапазоне
      * @return Collection<StatsDto> список с результатом выборки
      */
     @GetMapping("/stats")
     public ResponseEntity<List<ViewStatsDto>> getStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
                                                        @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
                                                        @RequestParam(required = false) List<String> uris,
-                                                       @RequestParam(defaultValue = "false") Boolean unique
+                                                       @RequestParam(defaultValue = "false") Boolean unique,
+                                                       @RequestParam(defaultValue = "false") Boolean approximate
+    ) {
+        log.info("Получен запрос на статистику: start={}, end={}, uris={}, unique={}, approximate={}",
+                start, end, uris, unique, approximate);
+
+        List<ViewStatsDto> stats = statsService.getStats(start, end, uris, unique, approximate);
+
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Получить статистику посещений по URI, у каждого из которых свое начало диапазона,
+     * например по событиям с момента публикации каждого. Конец диапазона общий, все URI
+     * считаются одним запросом к БД. Для URI, начало которых раньше границы свертки,
+     * действуют те же ограничения, что и в {@link #getStats}
+     *
+     * @param statsSinceDto конец диапазона, режим подсчета уникальных посещений и
+     *                      пары (uri, начало диапазона)
+     * @return Collection<StatsDto> список с результатом выборки
+     */
+    @PostMapping("/stats/since")
+    public ResponseEntity<List<ViewStatsDto>> getStatsSince(@RequestBody @Valid StatsSinceDto statsSinceDto) {
+        log.info("Получен запрос на статистику по {} URI с началом для каждого: end={}, unique={}",
+                statsSinceDto.getUris().size(), statsSinceDto.getEnd(), statsSinceDto.isUnique());
+
+        return ResponseEntity.ok(statsService.getStatsSince(statsSinceDto));
+    }
+
+    /**
+     * Получить статистику посещений потоком в формате NDJSON: по одному объекту
+     * ViewStatsDto в строке, в том же порядке, что и {@link #getStats}. Строки пишутся
+     * в ответ по мере чтения из БД, поэтому память сервера не зависит от числа URI.
+     * Выбирается заголовком {@code Accept: application/x-ndjson}, параметры те же.
+     * Параметры проверяются, а URI ищутся в словаре до начала ответа, поэтому ошибка
+     * запроса возвращается как обычно: 400 и ErrorResponse в JSON. Сбой БД во время
+     * выгрузки обрывает уже начатый ответ с кодом 200, и клиент получает неполный поток.
+     *
+     * @return тело ответа, которое выгружает статистику
+     */
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                             @RequestParam(required = false) List<String> uris,
+                                                             @RequestParam(defaultValue = "false") Boolean unique,
+                                                             @RequestParam(defaultValue = "false") Boolean approximate
+    ) {
+        log.info("Получен запрос на потоковую статистику: start={}, end={}, uris={}, unique={}, approximate={}",
+                start, end, uris, unique, approximate);
+
+        StatsStream stream = statsService.streamStats(start, end, uris, unique, approximate);
+        ObjectWriter writer = objectMapper.writerFor(ViewStatsDto.class);
+        StreamingResponseBody body = outputStream -> stream.forEach(stats -> {
+            try {
+                outputStream.write(writer.writeValueAsBytes(stats));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Получить самые просматриваемые URI за последнее окно времени. Ответ строится
+     * по счетчикам в памяти сервиса, без обращения к БД, и может завышать число
+     * просмотров каждого URI не более чем на errorBound из ответа
+     *
+     * @param k      сколько URI вернуть
+     * @param window длина окна, например 5m или 1h; одно из окон stats.top.windows
+     * @return TopStatsDto начало окна, число просмотров в нем, граница погрешности и список URI
+     */
+    @GetMapping("/stats/top")
+    public ResponseEntity<TopStatsDto> getTopStats(@RequestParam(defaultValue = "10") Integer k,
+                                                   @RequestParam(defaultValue = "1h") String window) {
+        log.info("Получен запрос на самые просматриваемые URI: k={}, window={}", k, window);
+
+        return ResponseEntity.ok(statsService.getTopStats(k, DurationStyle.detectAndParse(window)));
+    }
+
+    /**
+     * Получить число просмотров URI за последнее окно времени с точностью до секунды.
+     * Ответ строится по счетчикам в памяти сервиса, без обращения к БД; начало окна
+     * точно до 1/60 его длины
+     *
+     * @param uris   список uri для которых нужно выгрузить статистику
+     * @param window длина окна, например 5m или 1h; одно из окон stats.live.windows
+     * @return Collection<StatsDto> список с результатом выборки
+     */
+    @GetMapping("/stats/live")
+    public ResponseEntity<List<ViewStatsDto>> getLiveStats(@RequestParam(required = false) List<String> uris,
+                                                           @RequestParam(defaultValue = "5m") String window) {
+        log.info("Получен запрос на просмотры за последнее окно: uris={}, window={}", uris, window);
+
+        return ResponseEntity.ok(statsService.getLiveStats(uris, DurationStyle.detectAndParse(window)));
+    }
+
+    /**
+     * Получить число посещений по корзинам времени, например для графика. Корзины
+     * выровнены по началу минуты, часа или суток, крайние учитывают только посещения
+     * внутри диапазона, корзины без посещений в ответ не попадают
+     *
+     * @param start  дата и время начала диапазона за который нужно выгрузить статистику
+     * @param end    дата и время конца диапазона за который нужно выгрузить статистику
+     * @param uris   список uri для которых нужно выгрузить статистику
+     * @param bucket шаг корзин: minute, hour или day
+     * @return Collection<TimeSeriesDto> ряды по uri, по убыванию общего числа посещений
+     */
+    @GetMapping("/stats/timeseries")
+    public ResponseEntity<List<TimeSeriesDto>> getTimeSeries(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                             @RequestParam(required = false) List<String> uris,
+                                                             @RequestParam(defaultValue = "hour") String bucket
+    ) {
+        log.info("Получен запрос на временной ряд: start={}, end={}, uris={}, bucket={}", start, end, uris, bucket);
+
+        return ResponseEntity.ok(statsService.getTimeSeries(start, end, uris, bucket));
+    }
+
+    /**
+     * Получить статистику посещений из сети
+     *
+     * @param start  дата и время начала диапазона за который нужно выгрузить статистику
+     * @param end    дата и время конца диапазона за который нужно выгрузить статистику
+     * @param cidr   сеть в нотации CIDR, например 10.0.0.0/8 или 2001:db8::/32, посещения
+     *               с адресов которой нужно учитывать
+     * @param uris   список uri для которых нужно выгрузить статистику
+     * @param unique учитывать только уникальные посещения (только с уникальным ip)
+     * @return Collection<StatsDto> список с результатом выборки
+     */
+    @GetMapping("/stats/network")
+    public ResponseEntity<List<ViewStatsDto>> getNetworkStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                              @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                              @RequestParam String cidr,
+                                                              @RequestParam(required = false) List<String> uris,
+                                                              @RequestParam(defaultValue = "false") Boolean unique
     ) {
-        log.info("Получен запрос на статистику: start={}, end={}, uris={}, unique={}", start, end, uris, unique);
+        log.info("Получен запрос на статистику по сети: start={}, end={}, cidr={}, uris={}, unique={}",
+                start, end, cidr, uris, unique);
 
-        List<ViewStatsDto> stats = statsService.getStats(start, end, uris, unique);
+        List<ViewStatsDto> stats = statsService.getNetworkStats(start, end, cidr, uris, unique);
 
         return ResponseEntity.ok(stats);
     }
@@ -2,38 +2,58 @@ package ru.practicum.exception.handler;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.practicum.exception.ErrorResponse;
+import ru.practicum.exception.IngestOverloadException;
 import ru.practicum.exception.ValidationException;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
+/**
+ * Ошибки всегда отдаются в JSON, даже если клиент принимает только другой формат,
+ * например {@code Accept: application/x-ndjson}: тип содержимого задан явно, и Spring
+ * не подбирает его по заголовку Accept.
+ */
 @RestControllerAdvice
 @Slf4j
 public class ErrorHandler {
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler
-    public ErrorResponse handleException(final Exception e) {
+    public ResponseEntity<ErrorResponse> handleException(final Exception e) {
         logError(e);
         HttpStatus status = HttpStatus.BAD_REQUEST;
-        return ErrorResponse.builder(status.value(), status.getReasonPhrase())
+        return toResponse(status, ErrorResponse.builder(status.value(), status.getReasonPhrase())
                         .message(e.getMessage())
                         .stackTrace(getStackTrace(e))
-                        .build();
+                        .build());
     }
 
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler
-    public ErrorResponse validationHandler(final ValidationException e) {
+    public ResponseEntity<ErrorResponse> validationHandler(final ValidationException e) {
         logError(e);
         HttpStatus status = HttpStatus.BAD_REQUEST;
-        return ErrorResponse.builder(status.value(), status.getReasonPhrase())
+        return toResponse(status, ErrorResponse.builder(status.value(), status.getReasonPhrase())
                 .message(e.getMessage())
                 .stackTrace(getStackTrace(e))
-                .build();
+                .build());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> ingestOverloadHandler(final IngestOverloadException e) {
+        log.warn("Просмотр отклонен: {}", e.getMessage());
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        return toResponse(status, ErrorResponse.builder(status.value(), status.getReasonPhrase())
+                .message(e.getMessage())
+                .build());
+    }
+
+    private static ResponseEntity<ErrorResponse> toResponse(HttpStatus status, ErrorResponse body) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
     private void logError(Exception e) {
@@ -51,4 +71,4 @@ public class ErrorHandler {
         e.printStackTrace(new PrintWriter(sw));
         return sw.toString();
     }
-}
\ No newline at end of file
+}
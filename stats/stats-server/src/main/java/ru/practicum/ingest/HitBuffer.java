@@ -0,0 +1,189 @@
+package ru.practicum.ingest;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.exception.IngestOverloadException;
+import ru.practicum.model.Hit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограниченный буфер просмотров с фоновой записью в БД (write-behind).
+ *
+ * <p>Поток-флашер забирает просмотры пачками и записывает их командой COPY,
+ * как только набралось {@code flush-size} просмотров или прошло
+ * {@code flush-interval} с момента появления первого из них. Емкость
+ * {@code capacity} учитывает и просмотры в очереди, и пачку, которая сейчас
+ * записывается. Переполненный буфер не блокирует вызывающего, а отклоняет
+ * просмотр с {@link IngestOverloadException}. При остановке приложения буфер
+ * дописывается в БД.
+ */
+@Slf4j
+@Component
+public class HitBuffer {
+    /**
+     * Маркер, которым {@link #shutdown()} будит флашер, ожидающий новых просмотров.
+     */
+    private static final PendingHit WAKE_UP = new PendingHit(null, null);
+
+    private final HitWriter hitWriter;
+    private final BlockingQueue<PendingHit> queue;
+    private final Semaphore permits;
+    private final int flushSize;
+    private final Duration flushInterval;
+    private final Duration drainTimeout;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public HitBuffer(HitWriter hitWriter,
+                     @Value("${stats.ingest.buffer.capacity:100000}") int capacity,
+                     @Value("${stats.ingest.buffer.flush-size:5000}") int flushSize,
+                     @Value("${stats.ingest.buffer.flush-interval:200ms}") Duration flushInterval,
+                     @Value("${stats.ingest.buffer.drain-timeout:30s}") Duration drainTimeout) {
+        this.hitWriter = hitWriter;
+        this.queue = new LinkedBlockingQueue<>();
+        this.permits = new Semaphore(capacity);
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.drainTimeout = drainTimeout;
+        this.flusher = new Thread(this::runFlusher, "hit-buffer-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * Ставит просмотр в очередь на запись.
+     *
+     * @return future, завершающийся после записи пачки с этим просмотром в БД
+     * @throws IngestOverloadException если буфер заполнен или остановлен
+     */
+    public CompletableFuture<Void> submit(Hit hit) {
+        if (!running || !permits.tryAcquire()) {
+            throw new IngestOverloadException("Буфер просмотров заполнен, повторите запрос позже.");
+        }
+        PendingHit pending = new PendingHit(hit, new CompletableFuture<>());
+        queue.add(pending);
+        return pending.ack();
+    }
+
+    /**
+     * Ставит просмотры в очередь по порядку, пока в буфере есть место.
+     *
+     * @return future для каждого принятого просмотра; принятыми считаются
+     *         первые {@code size()} просмотров списка
+     * @throws IngestOverloadException если не принят ни один просмотр
+     */
+    public List<CompletableFuture<Void>> submitAll(List<Hit> hits) {
+        int accepted = 0;
+        while (running && accepted < hits.size() && permits.tryAcquire()) {
+            accepted++;
+        }
+
+        List<CompletableFuture<Void>> acks = new ArrayList<>(accepted);
+        for (Hit hit : hits.subList(0, accepted)) {
+            PendingHit pending = new PendingHit(hit, new CompletableFuture<>());
+            queue.add(pending);
+            acks.add(pending.ack());
+        }
+        if (acks.isEmpty()) {
+            throw new IngestOverloadException("Буфер просмотров заполнен, повторите запрос позже.");
+        }
+        return acks;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        queue.add(WAKE_UP);
+        flusher.join(drainTimeout.toMillis());
+
+        List<PendingHit> lost = new ArrayList<>();
+        queue.drainTo(lost);
+        lost.remove(WAKE_UP);
+        if (!lost.isEmpty()) {
+            log.error("Не удалось дописать буфер при остановке, потеряно просмотров: {}", lost.size());
+            IngestOverloadException e = new IngestOverloadException("Сервис статистики остановлен.");
+            lost.forEach(pending -> pending.ack().completeExceptionally(e));
+        }
+    }
+
+    private void runFlusher() {
+        List<PendingHit> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                fill(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void fill(List<PendingHit> batch) throws InterruptedException {
+        PendingHit first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+        if (first == null || first == WAKE_UP) {
+            return;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            if (batch.remove(WAKE_UP)) {
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || remaining <= 0 || !running) {
+                return;
+            }
+            PendingHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null || next == WAKE_UP) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingHit> batch) {
+        List<Hit> hits = batch.stream()
+                .map(PendingHit::hit)
+                .toList();
+        RuntimeException failure = null;
+        try {
+            hitWriter.copyAll(hits);
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать пачку просмотров: {} шт.", hits.size(), e);
+            failure = e;
+        }
+        // место освобождается до подтверждения, чтобы повтор сразу после него был принят
+        permits.release(batch.size());
+        for (PendingHit pending : batch) {
+            if (failure == null) {
+                pending.ack().complete(null);
+            } else {
+                pending.ack().completeExceptionally(failure);
+            }
+        }
+    }
+
+    private record PendingHit(Hit hit, CompletableFuture<Void> ack) {
+    }
+}
@@ -0,0 +1,169 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.sketch.BloomFilter;
+import ru.practicum.sketch.Hashing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Подавление повторных просмотров при приеме ({@code stats.ingest.dedup.enabled}):
+ * просмотр того же URI того же приложения с того же IP, пришедший в пределах окна
+ * {@code stats.ingest.dedup.window} после записанного, не записывается. Подавленный
+ * просмотр окно не продлевает: при частых обновлениях страницы записывается
+ * примерно один просмотр за окно.
+ *
+ * <p>Ключи (app, uri, ip) записанных просмотров хранятся в двух поколениях
+ * {@link BloomFilter}, рассчитанных на {@code expected-keys} ключей с вероятностью
+ * ложного срабатывания {@code fpp}. Новые ключи добавляются в текущее поколение,
+ * повтором считается ключ из любого поколения. Раз в окно, а также при переполнении
+ * текущего поколения, предыдущее отбрасывается и текущее становится предыдущим.
+ * Поэтому ключ помнится от одного до двух окон по времени приема, память постоянна,
+ * а с вероятностью не больше {@code fpp} подавляется и первый просмотр ключа. Окно
+ * у каждого экземпляра сервиса свое.
+ *
+ * <p>Проверка и отметка ключа атомарны ({@link #claim}): пока просмотр записывается,
+ * его ключ хранится среди ожидающих, и одновременный повтор подавляется. После записи
+ * ключ переходит в фильтр ({@link #confirm}), а если просмотр отклонен — снимается
+ * ({@link #release}), чтобы повторная отправка была записана.
+ *
+ * <p>Число подавленных просмотров — в метрике {@code stats.ingest.dedup.suppressed}.
+ */
+@Slf4j
+@Component
+public class HitDeduplicator {
+    private final boolean enabled;
+    private final long windowNanos;
+    private final long expectedKeys;
+    private final double fpp;
+    private final Counter suppressed;
+    /**
+     * Ключи просмотров, отмеченных {@link #claim}, но еще не записанных.
+     */
+    private final Set<Long> pending = new HashSet<>();
+    private BloomFilter current;
+    private BloomFilter previous;
+    private long rotateAt;
+
+    public HitDeduplicator(MeterRegistry meterRegistry,
+                           @Value("${stats.ingest.dedup.enabled:false}") boolean enabled,
+                           @Value("${stats.ingest.dedup.window:10s}") Duration window,
+                           @Value("${stats.ingest.dedup.expected-keys:1000000}") long expectedKeys,
+                           @Value("${stats.ingest.dedup.fpp:0.001}") double fpp) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Окно stats.ingest.dedup.window должно быть положительным: " + window);
+        }
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.expectedKeys = expectedKeys;
+        this.fpp = fpp;
+        this.suppressed = Counter.builder("stats.ingest.dedup.suppressed")
+                .description("Просмотры, не записанные как повторы в окне подавления")
+                .register(meterRegistry);
+        if (enabled) {
+            this.current = new BloomFilter(expectedKeys, fpp);
+            this.previous = new BloomFilter(expectedKeys, fpp);
+            this.rotateAt = System.nanoTime() + windowNanos;
+        }
+    }
+
+    /**
+     * Отбрасывает повторы записанных и записываемых просмотров и повторы внутри самого
+     * списка, а ключи оставшихся отмечает как ожидающие записи. Каждый оставшийся просмотр
+     * затем передается в {@link #confirm}, если он принят, или в {@link #release}, если
+     * отклонен.
+     *
+     * @return просмотры без повторов в окне, в исходном порядке; без подавления —
+     * исходный список
+     */
+    public List<Hit> claim(List<Hit> hits) {
+        if (!enabled) {
+            return hits;
+        }
+        long[] keys = keys(hits);
+        List<Hit> kept = new ArrayList<>(hits.size());
+        synchronized (this) {
+            rotate();
+            for (int i = 0; i < keys.length; i++) {
+                if (!previous.mightContain(keys[i]) && !current.mightContain(keys[i]) && pending.add(keys[i])) {
+                    kept.add(hits.get(i));
+                }
+            }
+        }
+        if (kept.size() < hits.size()) {
+            suppressed.increment(hits.size() - kept.size());
+        }
+        return kept;
+    }
+
+    /**
+     * Запоминает ключи принятых просмотров, отмеченных {@link #claim}: их повторы
+     * в окне будут подавлены.
+     */
+    public void confirm(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        long[] keys = keys(hits);
+        synchronized (this) {
+            rotate();
+            for (long key : keys) {
+                pending.remove(key);
+                current.put(key);
+                if (current.isSaturated()) {
+                    log.debug("Поколение окна подавления повторов заполнено раньше срока");
+                    rotate(System.nanoTime());
+                }
+            }
+        }
+    }
+
+    /**
+     * Снимает отметку с ключей отклоненных просмотров, отмеченных {@link #claim}:
+     * повторная отправка этих просмотров будет записана.
+     */
+    public void release(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        long[] keys = keys(hits);
+        synchronized (this) {
+            for (long key : keys) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    private void rotate() {
+        long now = System.nanoTime();
+        if (now - rotateAt >= 0) {
+            rotate(now);
+        }
+    }
+
+    private void rotate(long now) {
+        // если окно прошло дважды, предыдущее поколение тоже устарело
+        previous = now - rotateAt >= windowNanos ? new BloomFilter(expectedKeys, fpp) : current;
+        current = new BloomFilter(expectedKeys, fpp);
+        rotateAt = now + windowNanos;
+    }
+
+    private static long[] keys(List<Hit> hits) {
+        long[] keys = new long[hits.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Hit hit = hits.get(i);
+            keys[i] = Hashing.hash64(hit.getApp() + '\n' + hit.getUri() + '\n' + IpMapper.toText(hit.getIp()));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,65 @@
+package ru.practicum.ingest;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+import ru.practicum.HitBatchDto;
+import ru.practicum.HitDto;
+import ru.practicum.HitFrameCodec;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Читает тела {@code POST /hit} и {@code POST /hits/batch} в двоичном формате
+ * {@link HitFrameCodec}, если клиент прислал {@code Content-Type: application/x-ewm-hits}.
+ * Ответы по-прежнему пишутся в JSON: запись конвертер не поддерживает
+ * ({@link #canWrite} всегда {@code false}), поэтому Spring его для ответов не выбирает.
+ */
+@Component
+public class HitFrameHttpMessageConverter implements HttpMessageConverter<Object> {
+    private static final MediaType HIT_FRAME = MediaType.parseMediaType(HitFrameCodec.MEDIA_TYPE);
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return (clazz == HitDto.class || clazz == HitBatchDto.class)
+                && mediaType != null && HIT_FRAME.includes(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return List.of(HIT_FRAME);
+    }
+
+    @Override
+    public Object read(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        List<HitDto> hits;
+        try {
+            hits = HitFrameCodec.decode(inputMessage.getBody().readAllBytes());
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+
+        if (clazz == HitBatchDto.class) {
+            return new HitBatchDto(hits);
+        }
+        if (hits.size() != 1) {
+            throw new HttpMessageNotReadableException("Ожидался один просмотр, получено: " + hits.size(), inputMessage);
+        }
+        return hits.get(0);
+    }
+
+    @Override
+    public void write(Object o, MediaType contentType, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("Ответы в формате " + HitFrameCodec.MEDIA_TYPE + " не поддерживаются");
+    }
+}
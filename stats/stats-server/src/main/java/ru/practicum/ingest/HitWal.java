@@ -0,0 +1,702 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.HitDto;
+import ru.practicum.HitFrameCodec;
+import ru.practicum.exception.IngestOverloadException;
+import ru.practicum.mapper.HitMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.WalCheckpointRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Локальный журнал просмотров (write-ahead log) для режима {@code stats.ingest.mode=wal}:
+ * прием просмотров не зависит от доступности и скорости БД.
+ *
+ * <p>Поток записи забирает накопившиеся просмотры, дописывает их одной записью в файл
+ * журнала и подтверждает после {@code fsync}, поэтому один {@code fsync} приходится
+ * на все просмотры, пришедшие, пока шел предыдущий. Запись — длина, CRC32C и кадр
+ * {@link HitFrameCodec}. Файлы журнала называются по позиции своей первой записи
+ * (смещению от начала журнала) и сменяются по достижении {@code segment-size}. Все файлы
+ * лежат в каталоге {@code stats.ingest.wal.dir}, по умолчанию {@code wal} в {@code stats.data-dir}.
+ *
+ * <p>Поток воспроизведения записывает просмотры из журнала в БД пачками до
+ * {@code batch-size} просмотров через {@link HitWriter}, а в той же транзакции сохраняет
+ * позицию, до которой журнал воспроизведен ({@link WalCheckpointRepository}). Поэтому
+ * после перезапуска просмотры не теряются и не записываются дважды. Пока БД недоступна
+ * (временные ошибки, см. {@link #isTransient}), пачка повторяется раз в {@code retry-interval}
+ * без ограничения числа попыток, а журнал растет. Пачка, запись которой завершилась другой
+ * ошибкой {@code max-attempts} раз подряд, записывается по частям: часть, которая не
+ * записалась, делится пополам, пока не останутся отдельные записи журнала. Такие записи,
+ * как и нечитаемый остаток файла журнала, переносятся в каталог {@code dead-letter} журнала,
+ * а просмотры остальных записей пачки попадают в БД.
+ * Если невоспроизведенная часть превышает {@code max-backlog}, файлы журнала занимают больше
+ * {@code max-size} или в очереди записи {@code stats.ingest.buffer.capacity} просмотров, новые
+ * просмотры отклоняются с {@link IngestOverloadException}. Полностью воспроизведенные файлы
+ * удаляются.
+ *
+ * <p>Метрики: {@code stats.ingest.wal.backlog} — невоспроизведенная часть журнала в байтах,
+ * {@code stats.ingest.wal.backlog.records} — в записях, {@code stats.ingest.wal.size} — размер
+ * файлов журнала, {@code stats.ingest.wal.dead-letter} — байты, перенесенные в {@code dead-letter}.
+ *
+ * <p>Недописанная при сбое запись в конце журнала отбрасывается при запуске: ее
+ * просмотры не были подтверждены. Журнал опознается по идентификатору из файла
+ * {@code wal.id}, поэтому новый каталог журнала не спутать с уже воспроизведенным.
+ */
+@Slf4j
+@Component
+@Profile("!segment")
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "wal")
+public class HitWal {
+    private static final String ID_FILE = "wal.id";
+    private static final String FILE_SUFFIX = ".wal";
+    private static final String DEAD_LETTER_DIR = "dead-letter";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Маркер, которым {@link #shutdown()} будит поток записи, ожидающий новых просмотров.
+     */
+    private static final PendingHits WAKE_UP = new PendingHits(List.of(), null);
+
+    private final HitWriter hitWriter;
+    private final WalCheckpointRepository checkpointRepository;
+    private final Path dir;
+    private final long segmentSize;
+    private final long maxBacklog;
+    private final long maxSize;
+    private final int batchSize;
+    private final Duration retryInterval;
+    private final int maxAttempts;
+    private final Duration drainTimeout;
+    private final BlockingQueue<PendingHits> queue = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    /**
+     * Файлы журнала по позиции первой записи.
+     */
+    private final ConcurrentSkipListMap<Long, Path> files = new ConcurrentSkipListMap<>();
+    private final Object appended = new Object();
+    private final Thread appender;
+    private final Thread replayer;
+    private final Counter deadLettered;
+    /**
+     * Число записей в невоспроизведенной части журнала.
+     */
+    private final AtomicLong backlogRecords = new AtomicLong();
+    private volatile boolean running = true;
+    private UUID walId;
+    private FileChannel channel;
+    private long channelStart;
+    /**
+     * Конец записанной и синхронизированной с диском части журнала.
+     */
+    private volatile long durableEnd;
+    /**
+     * Позиция, до которой журнал воспроизведен в БД; до чтения из БД — начало журнала.
+     */
+    private volatile long replayed;
+    private volatile boolean checkpointLoaded;
+
+    public HitWal(HitWriter hitWriter,
+                  WalCheckpointRepository checkpointRepository,
+                  MeterRegistry meterRegistry,
+                  @Value("${stats.ingest.wal.dir}") Path dir,
+                  @Value("${stats.ingest.wal.segment-size:64MB}") DataSize segmentSize,
+                  @Value("${stats.ingest.wal.max-backlog:1GB}") DataSize maxBacklog,
+                  @Value("${stats.ingest.wal.max-size:2GB}") DataSize maxSize,
+                  @Value("${stats.ingest.wal.batch-size:5000}") int batchSize,
+                  @Value("${stats.ingest.wal.retry-interval:1s}") Duration retryInterval,
+                  @Value("${stats.ingest.wal.max-attempts:5}") int maxAttempts,
+                  @Value("${stats.ingest.buffer.capacity:100000}") int capacity,
+                  @Value("${stats.ingest.buffer.drain-timeout:30s}") Duration drainTimeout) {
+        this.hitWriter = hitWriter;
+        this.checkpointRepository = checkpointRepository;
+        this.dir = dir;
+        this.segmentSize = segmentSize.toBytes();
+        this.maxBacklog = maxBacklog.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.batchSize = batchSize;
+        this.retryInterval = retryInterval;
+        this.maxAttempts = maxAttempts;
+        this.drainTimeout = drainTimeout;
+        this.permits = new Semaphore(capacity);
+        this.appender = new Thread(this::runAppender, "hit-wal-appender");
+        this.appender.setDaemon(true);
+        this.replayer = new Thread(this::runReplayer, "hit-wal-replayer");
+        this.replayer.setDaemon(true);
+        Gauge.builder("stats.ingest.wal.backlog", this, HitWal::backlog)
+                .description("Размер части журнала просмотров, еще не записанной в БД")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.wal.backlog.records", backlogRecords, AtomicLong::get)
+                .description("Число записей журнала просмотров, еще не записанных в БД")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.wal.size", this, HitWal::size)
+                .description("Размер файлов журнала просмотров")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("stats.ingest.wal.dead-letter")
+                .description("Части журнала просмотров, перенесенные в dead-letter без записи в БД")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        walId = readOrCreateId();
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path file : list.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(FILE_SUFFIX)) {
+                    files.put(Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length())), file);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            files.put(0L, file(0));
+        }
+
+        channelStart = files.lastKey();
+        channel = FileChannel.open(files.lastEntry().getValue(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long valid = validLength(channel);
+        if (valid < channel.size()) {
+            log.warn("Отброшен недописанный конец журнала просмотров {}: {} байт", files.lastEntry().getValue(),
+                    channel.size() - valid);
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+        durableEnd = channelStart + valid;
+        replayed = files.firstKey();
+        backlogRecords.set(countRecords(replayed, durableEnd));
+        log.info("Открыт журнал просмотров {} ({}): файлов {}, конец {}", dir.toAbsolutePath(), walId,
+                files.size(), durableEnd);
+
+        appender.start();
+        replayer.start();
+    }
+
+    /**
+     * Ставит просмотры в очередь на запись в журнал.
+     *
+     * @return future, завершающийся после записи просмотров в журнал и {@code fsync}
+     * @throws IngestOverloadException если очередь заполнена, журнал не успевает
+     *                                 воспроизводиться в БД или остановлен
+     */
+    public CompletableFuture<Void> submit(List<Hit> hits) {
+        if (backlog() > maxBacklog) {
+            throw new IngestOverloadException("Журнал просмотров переполнен, БД не успевает их записывать, " +
+                    "повторите запрос позже.");
+        }
+        if (size() > maxSize) {
+            throw new IngestOverloadException("Журнал просмотров занимает больше " + maxSize + " байт, " +
+                    "повторите запрос позже.");
+        }
+        if (!running || !permits.tryAcquire(hits.size())) {
+            throw new IngestOverloadException("Буфер просмотров заполнен, повторите запрос позже.");
+        }
+        PendingHits pending = new PendingHits(hits, new CompletableFuture<>());
+        queue.add(pending);
+        return pending.ack();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        running = false;
+        queue.add(WAKE_UP);
+        synchronized (appended) {
+            appended.notifyAll();
+        }
+        appender.join(drainTimeout.toMillis());
+        replayer.join(drainTimeout.toMillis());
+
+        List<PendingHits> lost = new ArrayList<>();
+        queue.drainTo(lost);
+        lost.remove(WAKE_UP);
+        if (!lost.isEmpty()) {
+            IngestOverloadException e = new IngestOverloadException("Сервис статистики остановлен.");
+            lost.forEach(pending -> pending.ack().completeExceptionally(e));
+        }
+        if (!appender.isAlive()) {
+            channel.close();
+        }
+        log.info("Журнал просмотров закрыт: не воспроизведено в БД {} байт", backlog());
+    }
+
+    private long backlog() {
+        return durableEnd - replayed;
+    }
+
+    /**
+     * Размер файлов журнала: от начала самого старого файла до конца записанной части.
+     */
+    private long size() {
+        Map.Entry<Long, Path> first = files.firstEntry();
+        return first != null ? durableEnd - first.getKey() : 0;
+    }
+
+    private void runAppender() {
+        List<PendingHits> group = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingHits first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(group);
+            group.remove(WAKE_UP);
+            if (!group.isEmpty()) {
+                append(group);
+                group.clear();
+            }
+        }
+    }
+
+    private void append(List<PendingHits> group) {
+        List<HitDto> hits = new ArrayList<>();
+        for (PendingHits pending : group) {
+            pending.hits().forEach(hit -> hits.add(HitMapper.toHitDto(hit)));
+        }
+        try {
+            byte[] frame = HitFrameCodec.encode(hits);
+            CRC32C crc = new CRC32C();
+            crc.update(frame);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + frame.length)
+                    .putInt(frame.length)
+                    .putInt((int) crc.getValue())
+                    .put(frame)
+                    .flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(false);
+            durableEnd = channelStart + channel.position();
+            backlogRecords.incrementAndGet();
+            group.forEach(pending -> pending.ack().complete(null));
+            if (channel.position() >= segmentSize) {
+                rotate();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Не удалось записать в журнал просмотров: {} шт.", hits.size(), e);
+            group.forEach(pending -> pending.ack().completeExceptionally(e));
+            try {
+                // частично записанная запись не должна оказаться перед следующей
+                channel.truncate(durableEnd - channelStart);
+                channel.position(durableEnd - channelStart);
+            } catch (IOException truncateError) {
+                log.error("Не удалось отбросить частично записанную запись журнала просмотров", truncateError);
+            }
+        } finally {
+            permits.release(hits.size());
+        }
+        synchronized (appended) {
+            appended.notifyAll();
+        }
+    }
+
+    private void rotate() throws IOException {
+        long start = durableEnd;
+        Path next = file(start);
+        FileChannel nextChannel = FileChannel.open(next, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.close();
+        channel = nextChannel;
+        channelStart = start;
+        files.put(start, next);
+    }
+
+    private void runReplayer() {
+        int attempts = 0;
+        while (running) {
+            try {
+                if (!checkpointLoaded) {
+                    try {
+                        loadCheckpoint();
+                    } catch (RuntimeException e) {
+                        log.warn("Не удалось прочитать позицию воспроизведения журнала просмотров, повтор через {}: {}",
+                                retryInterval, e.getMessage());
+                        Thread.sleep(retryInterval.toMillis());
+                        continue;
+                    }
+                }
+                long from = replayed;
+                Batch batch;
+                try {
+                    batch = read(from);
+                } catch (IOException | RuntimeException e) {
+                    long to = unreadableEnd(from);
+                    log.error("Нечитаемая запись журнала просмотров на позиции {}, остаток файла до {} " +
+                            "переносится в {}", from, to, DEAD_LETTER_DIR, e);
+                    deadLetter(from, to, countRecords(from, to));
+                    continue;
+                }
+                if (batch.hits().isEmpty()) {
+                    synchronized (appended) {
+                        if (running && replayed == durableEnd) {
+                            appended.wait(1000);
+                        }
+                    }
+                    continue;
+                }
+
+                try {
+                    hitWriter.copyAll(batch.hits(), () -> checkpointRepository.save(walId, batch.end()));
+                    advance(batch.end(), batch.records().size());
+                    attempts = 0;
+                } catch (RuntimeException e) {
+                    if (isTransient(e)) {
+                        log.warn("БД недоступна, воспроизведение журнала просмотров с позиции {} повторится " +
+                                "через {}: {}", from, retryInterval, e.getMessage());
+                        Thread.sleep(retryInterval.toMillis());
+                    } else if (++attempts < maxAttempts) {
+                        log.warn("Не удалось воспроизвести журнал просмотров с позиции {} (попытка {} из {}), " +
+                                "повтор через {}: {}", from, attempts, maxAttempts, retryInterval, e.getMessage());
+                        Thread.sleep(retryInterval.toMillis());
+                    } else {
+                        log.error("Пачка журнала просмотров [{}, {}) не записана за {} попыток, " +
+                                "записывается по частям", from, batch.end(), attempts, e);
+                        replayInParts(from, batch.records());
+                        attempts = 0;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ошибка воспроизведения журнала просмотров с позиции {}, повтор через {}: {}",
+                        replayed, retryInterval, e.getMessage());
+                try {
+                    Thread.sleep(retryInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Записывает записи журнала, начинающиеся с позиции {@code from}, частями, каждую
+     * в своей транзакции с позицией воспроизведения. Часть, запись которой не удалась,
+     * делится пополам; отдельная запись журнала, которая не записывается, переносится
+     * в {@code dead-letter}. Временные ошибки БД повторяются, как и при обычном воспроизведении.
+     */
+    private void replayInParts(long from, List<Record> records) throws IOException, InterruptedException {
+        Deque<List<Record>> parts = new ArrayDeque<>();
+        parts.push(records);
+        long position = from;
+        while (running && !parts.isEmpty()) {
+            List<Record> part = parts.pop();
+            long end = part.get(part.size() - 1).end();
+            try {
+                hitWriter.copyAll(hits(part), () -> checkpointRepository.save(walId, end));
+                advance(end, part.size());
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    log.warn("БД недоступна, воспроизведение журнала просмотров с позиции {} повторится " +
+                            "через {}: {}", position, retryInterval, e.getMessage());
+                    parts.push(part);
+                    Thread.sleep(retryInterval.toMillis());
+                    continue;
+                }
+                if (part.size() > 1) {
+                    parts.push(part.subList(part.size() / 2, part.size()));
+                    parts.push(part.subList(0, part.size() / 2));
+                    continue;
+                }
+                log.error("Запись журнала просмотров [{}, {}) не записана: {} шт. переносится в {}", position, end,
+                        part.get(0).hits().size(), DEAD_LETTER_DIR, e);
+                deadLetter(position, end, 1);
+            }
+            position = end;
+        }
+    }
+
+    private static List<Hit> hits(List<Record> records) {
+        List<Hit> hits = new ArrayList<>();
+        records.forEach(record -> hits.addAll(record.hits()));
+        return hits;
+    }
+
+    /**
+     * Ошибки, после которых запись в БД имеет смысл повторять без ограничения: БД недоступна,
+     * соединение потеряно или операция прервана по таймауту либо из-за взаимоблокировки.
+     * Остальные ошибки (нарушение ограничений, неверные данные) повторяются
+     * {@code max-attempts} раз.
+     */
+    private static boolean isTransient(Throwable e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void advance(long position, long records) throws IOException {
+        replayed = position;
+        if (backlogRecords.addAndGet(-records) < 0 || replayed == durableEnd) {
+            // число записей в поврежденной части журнала известно неточно
+            backlogRecords.set(Math.max(0, countRecords(replayed, durableEnd)));
+        }
+        deleteReplayed();
+    }
+
+    /**
+     * Копирует записи журнала [from, to) в файл каталога {@code dead-letter} в том же формате
+     * и продвигает позицию воспроизведения за них без записи просмотров в БД.
+     */
+    private void deadLetter(long from, long to, long records) throws IOException {
+        Path deadLetterDir = dir.resolve(DEAD_LETTER_DIR);
+        Files.createDirectories(deadLetterDir);
+        Path target = deadLetterDir.resolve(String.format("%020d%s", from, FILE_SUFFIX));
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            long position = from;
+            while (position < to) {
+                Map.Entry<Long, Path> file = files.floorEntry(position);
+                Long next = files.higherKey(file.getKey());
+                long fileTo = next != null ? Math.min(to, next) : to;
+                try (FileChannel reader = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                    long offset = position - file.getKey();
+                    long count = Math.min(fileTo - position, reader.size() - offset);
+                    while (count > 0) {
+                        long copied = reader.transferTo(offset, count, out);
+                        offset += copied;
+                        count -= copied;
+                    }
+                }
+                position = fileTo;
+            }
+            out.force(true);
+        }
+        checkpointRepository.save(walId, to);
+        deadLettered.increment(to - from);
+        advance(to, records);
+    }
+
+    /**
+     * Конец части журнала, которую нужно пропустить, если запись на позиции {@code from}
+     * не читается: конец файла с этой позицией, а для последнего файла — конец журнала.
+     */
+    private long unreadableEnd(long from) {
+        Long next = files.higherKey(files.floorKey(from));
+        return next != null ? next : durableEnd;
+    }
+
+    /**
+     * Число записей журнала в [from, to) по их заголовкам; счет останавливается на первом
+     * заголовке с неверной длиной.
+     */
+    private long countRecords(long from, long to) throws IOException {
+        long records = 0;
+        long position = from;
+        while (position < to) {
+            Map.Entry<Long, Path> file = files.floorEntry(position);
+            Long next = files.higherKey(file.getKey());
+            long fileTo = next != null ? Math.min(to, next) : to;
+            try (FileChannel reader = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                long offset = position - file.getKey();
+                long end = Math.min(fileTo - file.getKey(), reader.size());
+                ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+                while (end - offset >= RECORD_HEADER_SIZE) {
+                    header.clear();
+                    reader.read(header, offset);
+                    int length = header.getInt(0);
+                    if (length < 0 || length > end - offset - RECORD_HEADER_SIZE) {
+                        break;
+                    }
+                    offset += RECORD_HEADER_SIZE + length;
+                    records++;
+                }
+            }
+            position = fileTo;
+        }
+        return records;
+    }
+
+    private void loadCheckpoint() {
+        OptionalLong saved = checkpointRepository.find(walId);
+        if (saved.isPresent()) {
+            if (saved.getAsLong() > durableEnd) {
+                throw new IllegalStateException("Позиция воспроизведения " + saved.getAsLong() +
+                        " дальше конца журнала просмотров " + durableEnd);
+            }
+            if (saved.getAsLong() > replayed) {
+                try {
+                    backlogRecords.addAndGet(-countRecords(replayed, saved.getAsLong()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                replayed = saved.getAsLong();
+            }
+        }
+        checkpointLoaded = true;
+        log.info("Журнал просмотров {} воспроизведен в БД до позиции {}, конец журнала {}", walId, replayed,
+                durableEnd);
+    }
+
+    /**
+     * Читает записи, начиная с позиции {@code from}, пока не наберется {@code batch-size}
+     * просмотров или не кончится подтвержденная часть журнала.
+     */
+    private Batch read(long from) throws IOException {
+        List<Hit> hits = new ArrayList<>();
+        List<Record> records = new ArrayList<>();
+        long position = from;
+        long end = durableEnd;
+        while (position < end && hits.size() < batchSize) {
+            Map.Entry<Long, Path> file = files.floorEntry(position);
+            try (FileChannel reader = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                long fileEnd = Math.min(reader.size(), end - file.getKey());
+                long offset = position - file.getKey();
+                if (offset >= fileEnd) {
+                    Long next = files.higherKey(file.getKey());
+                    if (next == null) {
+                        break;
+                    }
+                    position = next;
+                    continue;
+                }
+                while (offset < fileEnd && hits.size() < batchSize) {
+                    byte[] frame = readRecord(reader, offset, fileEnd, file.getValue());
+                    List<Hit> recordHits = HitMapper.toHits(HitFrameCodec.decode(frame));
+                    hits.addAll(recordHits);
+                    offset += RECORD_HEADER_SIZE + frame.length;
+                    records.add(new Record(recordHits, file.getKey() + offset));
+                }
+                position = file.getKey() + offset;
+            }
+        }
+        return new Batch(hits, records, position);
+    }
+
+    /**
+     * Удаляет файлы, все записи которых воспроизведены; текущий файл записи остается.
+     */
+    private void deleteReplayed() throws IOException {
+        for (Map.Entry<Long, Path> file : files.headMap(files.floorKey(replayed)).entrySet()) {
+            Files.deleteIfExists(file.getValue());
+            files.remove(file.getKey());
+        }
+    }
+
+    /**
+     * Длина начала файла, состоящего из целых записей с верной контрольной суммой.
+     */
+    private static long validLength(FileChannel channel) throws IOException {
+        long offset = 0;
+        long size = channel.size();
+        while (offset < size) {
+            try {
+                offset += RECORD_HEADER_SIZE + readRecord(channel, offset, size, null).length;
+            } catch (IOException e) {
+                break;
+            }
+        }
+        return offset;
+    }
+
+    private static byte[] readRecord(FileChannel channel, long offset, long end, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (end - offset < RECORD_HEADER_SIZE || channel.read(header, offset) < RECORD_HEADER_SIZE) {
+            throw new IOException("Неполная запись журнала просмотров " + file + " на смещении " + offset);
+        }
+        int length = header.getInt(0);
+        if (length < 0 || length > end - offset - RECORD_HEADER_SIZE) {
+            throw new IOException("Неполная запись журнала просмотров " + file + " на смещении " + offset);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        while (frame.hasRemaining()) {
+            if (channel.read(frame, offset + RECORD_HEADER_SIZE + frame.position()) < 0) {
+                throw new IOException("Неполная запись журнала просмотров " + file + " на смещении " + offset);
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(frame.array());
+        if ((int) crc.getValue() != header.getInt(Integer.BYTES)) {
+            throw new IOException("Неверная контрольная сумма записи журнала просмотров " + file
+                    + " на смещении " + offset);
+        }
+        return frame.array();
+    }
+
+    private UUID readOrCreateId() throws IOException {
+        Path idFile = dir.resolve(ID_FILE);
+        if (Files.exists(idFile)) {
+            return UUID.fromString(Files.readString(idFile, StandardCharsets.UTF_8).trim());
+        }
+        UUID id = UUID.randomUUID();
+        Path temp = dir.resolve(ID_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(id.toString().getBytes(StandardCharsets.UTF_8)));
+            out.force(true);
+        }
+        Files.move(temp, idFile, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    private Path file(long start) {
+        return dir.resolve(String.format("%020d%s", start, FILE_SUFFIX));
+    }
+
+    private record PendingHits(List<Hit> hits, CompletableFuture<Void> ack) {
+    }
+
+    /**
+     * Просмотры прочитанных записей журнала и позиция сразу после последней из них.
+     */
+    private record Batch(List<Hit> hits, List<Record> records, long end) {
+    }
+
+    /**
+     * Просмотры одной записи журнала и позиция сразу после нее.
+     */
+    private record Record(List<Hit> hits, long end) {
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.ingest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.cache.StatsCache;
+import ru.practicum.live.LiveCounters;
+import ru.practicum.model.Hit;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.top.TopHits;
+
+import java.util.List;
+
+/**
+ * Единая точка записи просмотров: записывает их в {@link HitStorage} и после
+ * успешной записи учитывает в окнах {@link TopHits}, счетчиках {@link LiveCounters}
+ * и в кеше {@link StatsCache}.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitWriter {
+    private final HitStorage hitStorage;
+    private final TopHits topHits;
+    private final LiveCounters liveCounters;
+    private final StatsCache statsCache;
+
+    public Hit save(Hit hit) {
+        Hit saved = hitStorage.save(hit);
+        topHits.add(List.of(hit));
+        liveCounters.add(List.of(hit));
+        statsCache.invalidate(List.of(hit));
+        return saved;
+    }
+
+    public int saveAll(List<Hit> hits) {
+        int saved = hitStorage.saveAll(hits);
+        topHits.add(hits);
+        liveCounters.add(hits);
+        statsCache.invalidate(hits);
+        return saved;
+    }
+
+    public void copyAll(List<Hit> hits) {
+        copyAll(hits, () -> { });
+    }
+
+    /**
+     * Записывает пачку и выполняет {@code inTransaction} в транзакции записи,
+     * см. {@link HitStorage#copyAll(List, Runnable)}. Просмотры учитываются в окнах,
+     * счетчиках и кеше только после успешной записи.
+     */
+    public void copyAll(List<Hit> hits, Runnable inTransaction) {
+        hitStorage.copyAll(hits, inTransaction);
+        topHits.add(hits);
+        liveCounters.add(hits);
+        statsCache.invalidate(hits);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.ingest;
+
+/**
+ * Режим записи просмотров, задается свойством {@code stats.ingest.mode}.
+ */
+public enum IngestMode {
+    /**
+     * Каждый просмотр записывается в БД в собственной транзакции до ответа клиенту.
+     */
+    SYNC,
+
+    /**
+     * Просмотр попадает в буфер, ответ отправляется после того, как пачка
+     * с этим просмотром записана в БД.
+     */
+    FLUSH_ON_ACK,
+
+    /**
+     * Просмотр попадает в буфер, ответ отправляется сразу. При падении сервиса
+     * незаписанные просмотры теряются.
+     */
+    ASYNC,
+
+    /**
+     * Просмотр записывается в локальный журнал на диске ({@link HitWal}), ответ
+     * отправляется после {@code fsync} журнала, а в БД просмотры записываются фоновым
+     * потоком. Прием не зависит от доступности БД. Не поддерживается с профилем {@code segment}.
+     */
+    WAL
+}
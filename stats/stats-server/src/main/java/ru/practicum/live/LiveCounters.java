@@ -0,0 +1,293 @@
+package ru.practicum.live;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.model.BucketViews;
+import ru.practicum.model.Hit;
+import ru.practicum.model.TimeBucket;
+import ru.practicum.storage.HitStorage;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики просмотров каждого URI за последние окна времени ({@code stats.live.windows})
+ * с точностью до секунды, без обращения к БД.
+ *
+ * <p>Для каждого окна у URI есть кольцо из {@code stats.live.slots} ячеек длиной
+ * {@code окно / slots}. Ячейка хранит номер своего отрезка времени и {@link LongAdder},
+ * поэтому одновременные просмотры одного URI не спорят за один счетчик. Ячейка,
+ * отрезок которой ушел из окна, заменяется новой через CAS при первом просмотре
+ * в ее новом отрезке; чтение суммирует ячейки текущего окна без блокировок. Окно
+ * включает текущую ячейку и предыдущие целиком, поэтому его начало точно до длины ячейки.
+ *
+ * <p>Память ограничена {@code stats.live.max-uris} URI: при переполнении и раз в минуту
+ * удаляются URI без просмотров за самое длинное окно, а если этого мало — URI
+ * с самым давним последним просмотром. Их счетчики начинаются заново при следующем
+ * просмотре; просмотр, записанный в счетчик одновременно с его удалением, не теряется.
+ *
+ * <p>При запуске кольца заполняются поминутной статистикой из {@link HitStorage}
+ * одним запросом. Просмотры минуты относятся к ее первой секунде, поэтому сразу
+ * после запуска начало окна с ячейками короче минуты точно до минуты.
+ */
+@Slf4j
+@Component
+public class LiveCounters implements SmartInitializingSingleton {
+    private final HitStorage hitStorage;
+    private final List<Duration> windows;
+    private final long[] slotSeconds;
+    private final int slots;
+    private final int maxUris;
+    private final Map<UriName, Counter> counters = new ConcurrentHashMap<>();
+
+    public LiveCounters(HitStorage hitStorage,
+                        @Value("${stats.live.windows:5m,1h}") List<Duration> windows,
+                        @Value("${stats.live.slots:60}") int slots,
+                        @Value("${stats.live.max-uris:10000}") int maxUris) {
+        this.hitStorage = hitStorage;
+        this.windows = windows.stream().distinct().sorted().toList();
+        this.slots = slots;
+        this.maxUris = maxUris;
+        this.slotSeconds = new long[this.windows.size()];
+        for (int i = 0; i < this.windows.size(); i++) {
+            Duration window = this.windows.get(i);
+            if (window.getNano() != 0 || window.toSeconds() < slots || window.toSeconds() % slots != 0) {
+                throw new IllegalArgumentException("Окно stats.live.windows должно делиться на "
+                        + slots + " ячеек из целых секунд: " + window);
+            }
+            slotSeconds[i] = window.toSeconds() / slots;
+        }
+    }
+
+    /**
+     * Заполняет кольца статистикой за последние окна до приема первых просмотров.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            long nowSecond = epochSecond(now);
+            long from = nowSecond;
+            for (long seconds : slotSeconds) {
+                from = Math.min(from, (nowSecond / seconds - slots + 1) * seconds);
+            }
+            for (BucketViews views : hitStorage.getTimeSeries(LocalDateTime.ofEpochSecond(from, 0, ZoneOffset.UTC),
+                    now, null, TimeBucket.MINUTE)) {
+                add(new UriName(views.app(), views.uri()), Math.max(epochSecond(views.bucket()), from), nowSecond,
+                        views.hits());
+            }
+            log.info("Счетчики просмотров за последние окна заполнены: {} URI", counters.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось заполнить счетчики просмотров за последние окна: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Учитывает записанные просмотры. Просмотры из будущего относятся к текущей секунде,
+     * вышедшие из всех окон не учитываются.
+     */
+    public void add(List<Hit> hits) {
+        long now = epochSecond(LocalDateTime.now());
+        for (Hit hit : hits) {
+            add(new UriName(hit.getApp(), hit.getUri()), Math.min(epochSecond(hit.getTimestamp()), now), now, 1);
+        }
+    }
+
+    /**
+     * Число просмотров за окно {@code window} по URI, по убыванию.
+     *
+     * @param uris URI, по которым нужны счетчики, или {@code null}, если по всем
+     * @throws ValidationException если окно не входит в {@code stats.live.windows}
+     */
+    public List<ViewStatsDto> get(List<String> uris, Duration window) {
+        int index = windows.indexOf(window);
+        if (index < 0) {
+            throw new ValidationException("Окно " + window + " не поддерживается, доступные окна: " + windows);
+        }
+
+        long current = epochSecond(LocalDateTime.now()) / slotSeconds[index];
+        Set<String> uriFilter = uris == null ? null : new HashSet<>(uris);
+        List<ViewStatsDto> stats = new ArrayList<>();
+        counters.forEach((key, counter) -> {
+            if (uriFilter == null || uriFilter.contains(key.uri())) {
+                long hits = counter.sum(index, current);
+                if (hits > 0) {
+                    stats.add(new ViewStatsDto(key.app(), key.uri(), hits));
+                }
+            }
+        });
+        stats.sort(Comparator.comparingLong(ViewStatsDto::getHits).reversed());
+        return stats;
+    }
+
+    /**
+     * Удаляет URI без просмотров за самое длинное окно.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        evict(maxUris);
+    }
+
+    /**
+     * Учитывает {@code hits} просмотров URI в секунду {@code second}, если она входит
+     * хотя бы в одно окно.
+     */
+    private void add(UriName key, long second, long now, long hits) {
+        if (!inWindow(second, now)) {
+            return;
+        }
+        Counter counter = counter(key, second);
+        add(counter, second, now, hits);
+        if (counters.get(key) != counter) {
+            // счетчик вытеснен во время записи: возвращаем его, а если по URI уже заведен
+            // новый, повторяем запись в нем — вытесненный счетчик больше не читается
+            Counter current = counters.putIfAbsent(key, counter);
+            if (current != null && current != counter) {
+                current.touch(second);
+                add(current, second, now, hits);
+            }
+        }
+    }
+
+    private void add(Counter counter, long second, long now, long hits) {
+        for (int i = 0; i < windows.size(); i++) {
+            long current = now / slotSeconds[i];
+            long slot = second / slotSeconds[i];
+            if (slot > current - slots) {
+                counter.add(i, slot, current, hits);
+            }
+        }
+    }
+
+    private boolean inWindow(long second, long now) {
+        for (long seconds : slotSeconds) {
+            if (second / seconds > now / seconds - slots) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Counter counter(UriName key, long second) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new Counter(windows.size(), slots, second));
+            if (counters.size() > maxUris) {
+                evict(maxUris - maxUris / 10);
+            }
+        }
+        counter.touch(second);
+        return counter;
+    }
+
+    /**
+     * Оставляет не больше {@code limit} URI: сначала удаляет URI без просмотров за
+     * самое длинное окно, затем — с самым давним последним просмотром. Простой URI
+     * проверяется заново в момент удаления, поэтому просмотр, пришедший после выборки,
+     * его сохраняет; счетчик, удаленный во время записи в него, запись возвращает сама.
+     */
+    private synchronized void evict(int limit) {
+        long idleBefore = epochSecond(LocalDateTime.now()) - windows.get(windows.size() - 1).toSeconds();
+        for (UriName key : counters.keySet()) {
+            counters.computeIfPresent(key, (uri, counter) -> counter.lastSecond < idleBefore ? null : counter);
+        }
+        if (counters.size() <= limit) {
+            return;
+        }
+
+        List<Map.Entry<UriName, Counter>> byLastHit = new ArrayList<>(counters.entrySet());
+        byLastHit.sort(Comparator.comparingLong(entry -> entry.getValue().lastSecond));
+        int excess = counters.size() - limit;
+        for (int i = 0; i < excess && i < byLastHit.size(); i++) {
+            counters.remove(byLastHit.get(i).getKey(), byLastHit.get(i).getValue());
+        }
+        log.warn("Превышен лимит stats.live.max-uris={}, удалены счетчики {} URI", maxUris, excess);
+    }
+
+    private static long epochSecond(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Кольца ячеек одного URI, по одному на окно.
+     */
+    private static final class Counter {
+        private final AtomicReferenceArray<Slot>[] rings;
+        private volatile long lastSecond;
+
+        @SuppressWarnings("unchecked")
+        private Counter(int windows, int slots, long second) {
+            lastSecond = second;
+            rings = new AtomicReferenceArray[windows];
+            for (int i = 0; i < windows; i++) {
+                rings[i] = new AtomicReferenceArray<>(slots);
+            }
+        }
+
+        private void touch(long second) {
+            if (second > lastSecond) {
+                lastSecond = second;
+            }
+        }
+
+        private void add(int window, long slot, long current, long hits) {
+            AtomicReferenceArray<Slot> ring = rings[window];
+            int index = (int) Math.floorMod(slot, (long) ring.length());
+            while (true) {
+                Slot cell = ring.get(index);
+                if (cell != null && cell.number == slot) {
+                    cell.hits.add(hits);
+                    return;
+                }
+                if (slot <= current - ring.length()) {
+                    return;
+                }
+                if (cell != null && cell.number > slot) {
+                    // ячейку уже занял более поздний отрезок, просмотр вышел из окна
+                    return;
+                }
+                Slot fresh = new Slot(slot);
+                fresh.hits.add(hits);
+                if (ring.compareAndSet(index, cell, fresh)) {
+                    return;
+                }
+            }
+        }
+
+        private long sum(int window, long current) {
+            AtomicReferenceArray<Slot> ring = rings[window];
+            long sum = 0;
+            for (int i = 0; i < ring.length(); i++) {
+                Slot cell = ring.get(i);
+                if (cell != null && cell.number > current - ring.length() && cell.number <= current) {
+                    sum += cell.hits.sum();
+                }
+            }
+            return sum;
+        }
+    }
+
+    private record Slot(long number, LongAdder hits) {
+        private Slot(long number) {
+            this(number, new LongAdder());
+        }
+    }
+
+    private record UriName(String app, String uri) {
+    }
+}
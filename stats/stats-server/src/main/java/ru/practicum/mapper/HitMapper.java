@@ -4,6 +4,7 @@ import ru.practicum.HitDto;
 import ru.practicum.model.Hit;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 public class HitMapper {
     /**
@@ -13,11 +14,26 @@ public class HitMapper {
 
     }
 
+    /**
+     * Время просмотра берется из {@code hitDto} как есть, без проверки: пределы для
+     * времени от клиента проверяет {@link ru.practicum.service.StatsServiceImpl}, а журнал
+     * {@link ru.practicum.ingest.HitWal} при восстановлении переносит старые просмотры.
+     *
+     * @throws ru.practicum.exception.ValidationException если IP-адрес некорректен
+     */
     public static Hit toHit(HitDto hitDto) {
-        return new Hit(hitDto.getId(), hitDto.getApp(), hitDto.getUri(), hitDto.getIp(), LocalDateTime.now());
+        LocalDateTime timestamp = hitDto.getTimeStamp() != null ? hitDto.getTimeStamp() : LocalDateTime.now();
+        return new Hit(hitDto.getId(), hitDto.getApp(), hitDto.getUri(), null,
+                IpMapper.toInetAddress(hitDto.getIp()), timestamp);
+    }
+
+    public static List<Hit> toHits(List<HitDto> hitDtos) {
+        return hitDtos.stream()
+                .map(HitMapper::toHit)
+                .toList();
     }
 
     public static HitDto toHitDto(Hit hit) {
-        return new HitDto(hit.getId(), hit.getApp(), hit.getUri(), hit.getIp(), hit.getTimestamp());
+        return new HitDto(hit.getId(), hit.getApp(), hit.getUri(), IpMapper.toText(hit.getIp()), hit.getTimestamp());
     }
 }
@@ -0,0 +1,164 @@
+package ru.practicum.mapper;
+
+import ru.practicum.exception.ValidationException;
+import ru.practicum.model.IpRange;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Разбор и форматирование IP-адресов без обращения к DNS.
+ *
+ * <p>Текстовая форма {@link #toText} совпадает с {@code host(ip)} в PostgreSQL:
+ * IPv4 — четыре десятичных октета, IPv6 — по RFC 5952 (нули сжимаются по самой
+ * длинной серии, первой при равенстве). Поэтому хеши адресов, посчитанные
+ * в Java и в SQL-миграциях, совпадают.
+ */
+public class IpMapper {
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private IpMapper() {
+
+    }
+
+    public static InetAddress toInetAddress(String ip) {
+        byte[] ipv4 = parseIpv4(ip);
+        if (ipv4 != null) {
+            return getByAddress(ipv4, ip);
+        }
+        if (ip.indexOf(':') >= 0 && ip.indexOf('[') < 0) {
+            try {
+                // в квадратных скобках строка разбирается только как литерал IPv6, без запроса к DNS
+                return InetAddress.getByName("[" + ip + "]");
+            } catch (UnknownHostException | SecurityException e) {
+                throw invalidAddress(ip);
+            }
+        }
+        throw invalidAddress(ip);
+    }
+
+    /**
+     * Разбирает сеть в нотации CIDR, например {@code 10.0.0.0/8} или {@code 2001:db8::/32}.
+     * Адрес без длины префикса задает сеть из одного адреса.
+     */
+    public static IpRange toRange(String cidr) {
+        int slash = cidr.indexOf('/');
+        InetAddress network = toInetAddress(slash < 0 ? cidr : cidr.substring(0, slash));
+        byte[] low = network.getAddress();
+        int bits = low.length * Byte.SIZE;
+        int prefix = bits;
+        if (slash >= 0) {
+            try {
+                prefix = Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                prefix = -1;
+            }
+            if (prefix < 0 || prefix > bits) {
+                throw new ValidationException("Некорректная длина префикса сети: " + cidr);
+            }
+        }
+
+        byte[] high = low.clone();
+        for (int i = 0; i < low.length; i++) {
+            int hostBits = Math.min(Byte.SIZE, Math.max(0, (i + 1) * Byte.SIZE - prefix));
+            int hostMask = (1 << hostBits) - 1;
+            low[i] = (byte) (low[i] & ~hostMask);
+            high[i] = (byte) (high[i] | hostMask);
+        }
+        return new IpRange(getByAddress(low, cidr), getByAddress(high, cidr));
+    }
+
+    public static String toText(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            return address.getHostAddress();
+        }
+        byte[] bytes = address.getAddress();
+        int[] words = new int[8];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ((bytes[2 * i] & 0xff) << 8) | (bytes[2 * i + 1] & 0xff);
+        }
+
+        int bestStart = -1;
+        int bestLength = 0;
+        for (int i = 0; i < words.length; i++) {
+            int length = 0;
+            while (i + length < words.length && words[i + length] == 0) {
+                length++;
+            }
+            if (length > bestLength && length >= 2) {
+                bestStart = i;
+                bestLength = length;
+            }
+            i += length;
+        }
+
+        StringBuilder text = new StringBuilder(39);
+        for (int i = 0; i < words.length; i++) {
+            if (i == bestStart) {
+                text.append(i == 0 ? "::" : ":");
+                i += bestLength - 1;
+                continue;
+            }
+            // адреса вида ::a.b.c.d и ::ffff:a.b.c.d PostgreSQL выводит с IPv4 в конце
+            if (i == 6 && bestStart == 0 && (bestLength == 6 || bestLength == 5 && words[5] == 0xffff)) {
+                text.append(bytes[12] & 0xff).append('.').append(bytes[13] & 0xff).append('.')
+                        .append(bytes[14] & 0xff).append('.').append(bytes[15] & 0xff);
+                break;
+            }
+            text.append(Integer.toHexString(words[i]));
+            if (i < words.length - 1) {
+                text.append(':');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Быстрый разбор IPv4 в десятичной записи с точками.
+     *
+     * @return 4 байта адреса или {@code null}, если строка не является адресом IPv4
+     */
+    private static byte[] parseIpv4(String ip) {
+        byte[] address = new byte[4];
+        int octet = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == 1 && value == 0) {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && digits > 0 && octet < 3) {
+                address[octet++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        if (digits == 0 || octet != 3) {
+            return null;
+        }
+        address[3] = (byte) value;
+        return address;
+    }
+
+    private static InetAddress getByAddress(byte[] address, String source) {
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            throw invalidAddress(source);
+        }
+    }
+
+    private static ValidationException invalidAddress(String ip) {
+        return new ValidationException("Некорректный IP-адрес: " + ip);
+    }
+}
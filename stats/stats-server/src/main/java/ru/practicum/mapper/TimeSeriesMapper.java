@@ -0,0 +1,40 @@
+package ru.practicum.mapper;
+
+import ru.practicum.TimeBucketDto;
+import ru.practicum.TimeSeriesDto;
+import ru.practicum.model.BucketViews;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TimeSeriesMapper {
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private TimeSeriesMapper() {
+
+    }
+
+    /**
+     * Собирает корзины в ряды по URI: корзины ряда — по возрастанию времени, ряды —
+     * по убыванию просмотров за весь диапазон. Корзины без просмотров не передаются.
+     */
+    public static List<TimeSeriesDto> toTimeSeries(List<BucketViews> views) {
+        Map<List<String>, TimeSeriesDto> series = new LinkedHashMap<>();
+        views.stream()
+                .sorted(Comparator.comparing(BucketViews::bucket))
+                .forEach(bucket -> {
+                    TimeSeriesDto uriSeries = series.computeIfAbsent(List.of(bucket.app(), bucket.uri()),
+                            key -> new TimeSeriesDto(bucket.app(), bucket.uri(), 0L, new ArrayList<>()));
+                    uriSeries.setHits(uriSeries.getHits() + bucket.hits());
+                    uriSeries.getBuckets().add(new TimeBucketDto(bucket.bucket(), bucket.hits()));
+                });
+
+        List<TimeSeriesDto> result = new ArrayList<>(series.values());
+        result.sort(Comparator.comparingLong(TimeSeriesDto::getHits).reversed());
+        return result;
+    }
+}
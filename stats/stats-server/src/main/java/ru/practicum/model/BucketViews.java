@@ -0,0 +1,9 @@
+package ru.practicum.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Число просмотров URI в корзине временного ряда, начинающейся в {@code bucket}.
+ */
+public record BucketViews(String app, String uri, LocalDateTime bucket, long hits) {
+}
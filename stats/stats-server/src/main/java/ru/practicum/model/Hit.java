@@ -3,8 +3,11 @@ package ru.practicum.model;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import org.springframework.format.annotation.DateTimeFormat;
 
+import java.net.InetAddress;
 import java.time.LocalDateTime;
 
 @Entity
@@ -22,11 +25,18 @@ public class Hit {
     @Column(nullable = false, length = 100)
     private String app;
 
-    @Column(nullable = false, length = 2000)
+    /**
+     * URI просмотра. В БД хранится только идентификатор из словаря {@code uris}.
+     */
+    @Transient
     private String uri;
 
+    @Column(name = "uri_id", nullable = false)
+    private Integer uriId;
+
     @Column(nullable = false)
-    private String ip;
+    @JdbcTypeCode(SqlTypes.INET)
+    private InetAddress ip;
 
     @Column(name = "created", nullable = false)
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
@@ -0,0 +1,9 @@
+package ru.practicum.model;
+
+import java.net.InetAddress;
+
+/**
+ * Диапазон IP-адресов [low, high] одной сети, например всех адресов из 10.0.0.0/8.
+ */
+public record IpRange(InetAddress low, InetAddress high) {
+}
@@ -0,0 +1,50 @@
+package ru.practicum.model;
+
+import ru.practicum.exception.ValidationException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Шаг временного ряда {@code /stats/timeseries}. Корзины выровнены по началу
+ * минуты, часа или суток.
+ */
+public enum TimeBucket {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    TimeBucket(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @throws ValidationException если шаг не minute, hour или day
+     */
+    public static TimeBucket parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Шаг временного ряда должен быть minute, hour или day: " + value);
+        }
+    }
+
+    public Duration duration() {
+        return unit.getDuration();
+    }
+
+    /**
+     * Поле для {@code date_trunc} в PostgreSQL.
+     */
+    public String field() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Число просмотров URI, заданного идентификатором из словаря {@code uris}, в корзине
+ * временного ряда, начинающейся в {@code bucket}.
+ */
+public record UriBucketStats(String app, int uriId, LocalDateTime bucket, long hits) {
+}
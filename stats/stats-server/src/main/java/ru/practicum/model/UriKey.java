@@ -0,0 +1,7 @@
+package ru.practicum.model;
+
+/**
+ * Ключ статистики: приложение и идентификатор URI из словаря {@code uris}.
+ */
+public record UriKey(String app, int uriId) {
+}
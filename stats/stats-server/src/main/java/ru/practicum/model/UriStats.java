@@ -0,0 +1,11 @@
+package ru.practicum.model;
+
+/**
+ * Число просмотров URI, заданного идентификатором из словаря {@code uris}.
+ */
+public record UriStats(String app, int uriId, long hits) {
+
+    public UriKey key() {
+        return new UriKey(app, uriId);
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Число посетителей URI, впервые пришедших не позже заданного момента, и время
+ * самого первого просмотра URI.
+ */
+public record UriVisitors(String app, int uriId, long visitors, LocalDateTime firstSeen) {
+
+    public UriKey key() {
+        return new UriKey(app, uriId);
+    }
+}
@@ -0,0 +1,13 @@
+package ru.practicum.model;
+
+import java.net.InetAddress;
+
+/**
+ * Посетитель URI: IP-адрес, с которого был хотя бы один просмотр.
+ */
+public record Visit(String app, int uriId, InetAddress ip) {
+
+    public UriKey key() {
+        return new UriKey(app, uriId);
+    }
+}
@@ -0,0 +1,266 @@
+package ru.practicum.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.cache.StatsCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Обслуживание помесячных секций таблицы {@code hits}.
+ *
+ * <p>При запуске сервиса и по расписанию {@code stats.partitions.maintenance-cron}
+ * создает секции на {@code months-ahead} месяцев вперед, а также секции для
+ * просмотров, попавших в {@code hits_default}. Если включено хранение
+ * ограниченного срока ({@code retention.enabled}), секции старше {@code keep-months}
+ * месяцев отсоединяются, выгружаются в {@code archive-dir} (по умолчанию {@code archive}
+ * в {@code stats.data-dir}) файлами {@code hits_yYYYYmMM.csv.gz} и удаляются. Вместе с ними
+ * удаляются агрегаты и скетчи тех же месяцев, а посетители, впервые пришедшие в эти
+ * месяцы, пересчитываются по оставшимся просмотрам, чтобы статистика не учитывала
+ * удаленные просмотры. Секция, отсоединенная, но не удаленная из-за сбоя,
+ * выгружается и удаляется при следующем запуске.
+ *
+ * <p>Одновременно обслуживание выполняет только один экземпляр сервиса:
+ * остальные пропускают запуск, не получив advisory-блокировку.
+ */
+@Slf4j
+@Component
+@Profile("!segment")
+public class HitPartitionMaintenance {
+    private static final Pattern PARTITION_NAME = Pattern.compile("hits_y(\\d{4})m(\\d{2})");
+    private static final long LOCK_ID = 0x68697473L;
+    private static final DateTimeFormatter PARTITION_BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String PARTITIONS_SQL = "SELECT c.relname, c.relispartition FROM pg_class c " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "WHERE n.nspname = current_schema() AND c.relkind = 'r' AND c.relname ~ '^hits_y[0-9]{4}m[0-9]{2}$'";
+
+    private static final String PURGE_VISITORS_SQL = "WITH expired AS (" +
+            "DELETE FROM hit_visitors WHERE first_seen < ? RETURNING app, uri_id, ip) " +
+            "INSERT INTO hit_visitors (app, uri_id, ip, first_seen) " +
+            "SELECT h.app, h.uri_id, h.ip, MIN(h.created) FROM hits h " +
+            "JOIN expired e ON e.app = h.app AND e.uri_id = h.uri_id AND e.ip = h.ip " +
+            "GROUP BY h.app, h.uri_id, h.ip";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StatsCache statsCache;
+    private final int monthsAhead;
+    private final boolean retentionEnabled;
+    private final int keepMonths;
+    private final Path archiveDir;
+
+    public HitPartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                   StatsCache statsCache,
+                                   @Value("${stats.partitions.months-ahead:2}") int monthsAhead,
+                                   @Value("${stats.partitions.retention.enabled:false}") boolean retentionEnabled,
+                                   @Value("${stats.partitions.retention.keep-months:12}") int keepMonths,
+                                   @Value("${stats.partitions.retention.archive-dir}") Path archiveDir) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.statsCache = statsCache;
+        this.monthsAhead = monthsAhead;
+        this.retentionEnabled = retentionEnabled;
+        this.keepMonths = keepMonths;
+        this.archiveDir = archiveDir;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${stats.partitions.maintenance-cron:0 0 3 * * *}")
+    public void maintain() {
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                JdbcTemplate session = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+                if (!Boolean.TRUE.equals(session.queryForObject("SELECT pg_try_advisory_lock(?)", Boolean.class, LOCK_ID))) {
+                    log.info("Обслуживание секций hits уже выполняется другим экземпляром сервиса");
+                    return null;
+                }
+                try {
+                    createPartitions(connection, session);
+                    if (retentionEnabled) {
+                        dropExpiredPartitions(connection, session);
+                    }
+                } finally {
+                    session.queryForObject("SELECT pg_advisory_unlock(?)", Boolean.class, LOCK_ID);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Ошибка обслуживания секций hits", e);
+        }
+    }
+
+    private void createPartitions(Connection connection, JdbcTemplate session) throws SQLException {
+        Set<YearMonth> attached = new TreeSet<>();
+        session.query(PARTITIONS_SQL, rs -> {
+            if (rs.getBoolean("relispartition")) {
+                attached.add(toMonth(rs.getString("relname")));
+            }
+        });
+
+        Set<YearMonth> months = new TreeSet<>();
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            months.add(current.plusMonths(i));
+        }
+        session.query("SELECT DISTINCT date_trunc('month', created)::timestamp AS month FROM hits_default",
+                rs -> {
+                    months.add(YearMonth.from(rs.getTimestamp("month").toLocalDateTime()));
+                });
+        months.removeAll(attached);
+
+        for (YearMonth month : months) {
+            createPartition(connection, session, month);
+        }
+    }
+
+    /**
+     * Создает секцию месяца, перенося в нее просмотры этого месяца из {@code hits_default}:
+     * присоединить секцию, пересекающуюся с данными секции по умолчанию, нельзя.
+     */
+    private void createPartition(Connection connection, JdbcTemplate session, YearMonth month) throws SQLException {
+        String name = partitionName(month);
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+
+        inTransaction(connection, () -> {
+            session.execute("CREATE TABLE " + name + " (LIKE hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            int moved = session.update("WITH moved AS (DELETE FROM hits_default WHERE created >= ? AND created < ? " +
+                    "RETURNING *) INSERT INTO " + name + " SELECT * FROM moved", Timestamp.valueOf(from), Timestamp.valueOf(to));
+            session.execute("ALTER TABLE hits ATTACH PARTITION " + name + " FOR VALUES FROM ('" +
+                    from.format(PARTITION_BOUND) + "') TO ('" + to.format(PARTITION_BOUND) + "')");
+            log.info("Создана секция {}, перенесено просмотров из hits_default: {}", name, moved);
+        });
+    }
+
+    private void dropExpiredPartitions(Connection connection, JdbcTemplate session) {
+        YearMonth oldestKept = YearMonth.now().minusMonths(keepMonths - 1L);
+        List<String> expired = new ArrayList<>();
+        List<String> detached = new ArrayList<>();
+        session.query(PARTITIONS_SQL, rs -> {
+            String name = rs.getString("relname");
+            if (!rs.getBoolean("relispartition")) {
+                log.warn("Найдена отсоединенная секция {}, выгрузка будет повторена", name);
+                detached.add(name);
+            } else if (toMonth(name).isBefore(oldestKept)) {
+                expired.add(name);
+            }
+        });
+
+        for (String name : expired) {
+            session.execute("ALTER TABLE hits DETACH PARTITION " + name);
+            detached.add(name);
+        }
+        for (String name : detached) {
+            try {
+                Path archive = archive(connection, name);
+                session.execute("DROP TABLE " + name);
+                statsCache.invalidateAll();
+                log.info("Секция {} выгружена в {} и удалена", name, archive);
+            } catch (IOException | SQLException | RuntimeException e) {
+                log.error("Не удалось выгрузить секцию {}, она будет удалена при следующем запуске", name, e);
+            }
+        }
+        purgeExpiredRollups(connection, session, oldestKept.atDay(1).atStartOfDay());
+    }
+
+    /**
+     * Удаляет агрегаты и скетчи корзин раньше {@code before}, а посетителей, впервые
+     * пришедших раньше {@code before}, пересчитывает по оставшимся просмотрам: посетитель,
+     * который возвращался позже, остается со временем первого из них, остальные удаляются.
+     * Все выполняется в одной транзакции и только если в {@code hits_hour} есть корзины
+     * раньше {@code before}, то есть один раз после удаления секций месяца; неудачная
+     * очистка повторяется при следующем запуске. Пересчет посетителей читает все
+     * оставшиеся просмотры.
+     */
+    private void purgeExpiredRollups(Connection connection, JdbcTemplate session, LocalDateTime before) {
+        Timestamp bound = Timestamp.valueOf(before);
+        if (!Boolean.TRUE.equals(session.queryForObject("SELECT EXISTS (SELECT 1 FROM hits_hour WHERE bucket < ?)",
+                Boolean.class, bound))) {
+            return;
+        }
+        try {
+            inTransaction(connection, () -> {
+                int minutes = session.update("DELETE FROM hits_minute WHERE bucket < ?", bound);
+                int hours = session.update("DELETE FROM hits_hour WHERE bucket < ?", bound);
+                int sketches = session.update("DELETE FROM hits_hll WHERE bucket < ?", bound);
+                int visitors = session.update(PURGE_VISITORS_SQL, bound);
+                log.info("Удалены агрегаты раньше {}: минут {}, часов {}, скетчей {}; посетителей пересчитано: {}",
+                        before, minutes, hours, sketches, visitors);
+            });
+            statsCache.invalidateAll();
+        } catch (SQLException | RuntimeException e) {
+            log.error("Не удалось удалить агрегаты раньше {}, удаление будет повторено при следующем запуске",
+                    before, e);
+        }
+    }
+
+    /**
+     * Выгружает таблицу командой COPY в сжатый CSV. Файл пишется во временный
+     * и переименовывается только после успешной выгрузки. Существующий архив
+     * не перезаписывается: просмотры, пришедшие за месяц уже после его удаления,
+     * выгружаются в {@code hits_yYYYYmMM.N.csv.gz}.
+     */
+    private Path archive(Connection connection, String name) throws IOException, SQLException {
+        Files.createDirectories(archiveDir);
+        Path target = archiveDir.resolve(name + ".csv.gz");
+        for (int i = 1; Files.exists(target); i++) {
+            target = archiveDir.resolve(name + "." + i + ".csv.gz");
+        }
+        Path temp = archiveDir.resolve(name + ".csv.gz.tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+            connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyOut("COPY " + name + " TO STDOUT WITH (FORMAT csv, HEADER)", out);
+        }
+        return Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void inTransaction(Connection connection, Runnable action) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            action.run();
+            connection.commit();
+        } catch (RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static String partitionName(YearMonth month) {
+        return String.format("hits_y%04dm%02d", month.getYear(), month.getMonthValue());
+    }
+
+    private static YearMonth toMonth(String partitionName) {
+        Matcher matcher = PARTITION_NAME.matcher(partitionName);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Неожиданное имя секции: " + partitionName);
+        }
+        return YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+}
@@ -0,0 +1,66 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Граница свертки просмотров (таблица {@code hit_compaction}) и удаление свернутых
+ * данных, см. {@link ru.practicum.compaction.HitCompaction}.
+ */
+@Repository
+@Profile("!segment")
+@RequiredArgsConstructor
+public class CompactionRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * @return время, раньше которого остались только почасовые агрегаты, или пустое
+     * значение, если свертка еще не выполнялась
+     */
+    public Optional<LocalDateTime> findBoundary() {
+        List<Timestamp> boundaries = jdbcTemplate.queryForList(
+                "SELECT compacted_before FROM hit_compaction", new MapSqlParameterSource(), Timestamp.class);
+        return boundaries.stream()
+                .findFirst()
+                .map(Timestamp::toLocalDateTime);
+    }
+
+    /**
+     * Сдвигает границу вперед; более ранняя граница, чем сохраненная, игнорируется.
+     */
+    public void advance(LocalDateTime boundary) {
+        jdbcTemplate.update("INSERT INTO hit_compaction (compacted_before) VALUES (:boundary) " +
+                        "ON CONFLICT (id) DO UPDATE " +
+                        "SET compacted_before = GREATEST(hit_compaction.compacted_before, EXCLUDED.compacted_before)",
+                new MapSqlParameterSource("boundary", Timestamp.valueOf(boundary)));
+    }
+
+    /**
+     * Удаляет до {@code limit} исходных просмотров раньше {@code before}.
+     *
+     * @return число удаленных просмотров
+     */
+    public int deleteHits(LocalDateTime before, int limit) {
+        return jdbcTemplate.update("DELETE FROM hits WHERE (id, created) IN " +
+                        "(SELECT id, created FROM hits WHERE created < :before LIMIT :limit)",
+                new MapSqlParameterSource("before", Timestamp.valueOf(before)).addValue("limit", limit));
+    }
+
+    /**
+     * Удаляет поминутные агрегаты корзин раньше {@code before}.
+     *
+     * @return число удаленных корзин
+     */
+    public int deleteMinutes(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM hits_minute WHERE bucket < :before",
+                new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Пакетная запись просмотров через JDBC. В отличие от {@link StatsRepository#save},
+ * не требует отдельного INSERT и round-trip на каждую строку: строки отправляются
+ * пачками по {@code stats.ingest.jdbc-batch-size}, а драйвер PostgreSQL с
+ * {@code reWriteBatchedInserts=true} склеивает их в многострочные INSERT.
+ */
+@Repository
+@Profile("!segment")
+@RequiredArgsConstructor
+public class HitBatchRepository {
+    private static final String INSERT_SQL = "INSERT INTO hits (app, uri_id, ip, created) VALUES (?, ?, ?, ?)";
+    private static final String COPY_SQL = "COPY hits (app, uri_id, ip, created) FROM STDIN WITH (FORMAT csv)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${stats.ingest.jdbc-batch-size:1000}")
+    private int batchSize;
+
+    public int saveAll(List<Hit> hits) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, hits, batchSize, (ps, hit) -> {
+            ps.setString(1, hit.getApp());
+            ps.setInt(2, hit.getUriId());
+            ps.setObject(3, IpMapper.toText(hit.getIp()), Types.OTHER);
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+        return hits.size();
+    }
+
+    /**
+     * Записывает просмотры командой COPY в текущей транзакции. Строки передаются
+     * потоком в формате CSV, без разбора SQL и планирования на каждую строку.
+     */
+    public long copyAll(List<Hit> hits) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                StringBuilder row = new StringBuilder(256);
+                for (Hit hit : hits) {
+                    row.setLength(0);
+                    appendCsv(row, hit.getApp()).append(',');
+                    row.append(hit.getUriId()).append(',');
+                    row.append(IpMapper.toText(hit.getIp())).append(',');
+                    row.append(hit.getTimestamp()).append('\n');
+                    byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(bytes, 0, bytes.length);
+                }
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    cancelQuietly(copyIn);
+                }
+            }
+        });
+    }
+
+    private static StringBuilder appendCsv(StringBuilder row, String value) {
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        return row.append('"');
+    }
+
+    private static void cancelQuietly(CopyIn copyIn) {
+        try {
+            copyIn.cancelCopy();
+        } catch (SQLException ignored) {
+            // исходная ошибка важнее ошибки отмены COPY
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.Hit;
+import ru.practicum.model.TimeBucket;
+import ru.practicum.model.TimeRange;
+import ru.practicum.model.UriBucketStats;
+import ru.practicum.model.UriStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Агрегаты просмотров по минутам и часам (таблицы {@code hits_minute} и {@code hits_hour}).
+ * Обновляются при каждой записи просмотров, поэтому запрос статистики за длинный
+ * период суммирует корзины, а не перебирает все просмотры из {@code hits}.
+ */
+@Repository
+@Profile("!segment")
+@RequiredArgsConstructor
+public class RollupRepository {
+    private static final Comparator<BucketKey> KEY_ORDER = Comparator.comparing(BucketKey::app)
+            .thenComparingInt(BucketKey::uriId)
+            .thenComparing(BucketKey::bucket);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${stats.ingest.jdbc-batch-size:1000}")
+    private int batchSize;
+
+    public enum Granularity {
+        MINUTE("hits_minute", ChronoUnit.MINUTES),
+        HOUR("hits_hour", ChronoUnit.HOURS);
+
+        private final String table;
+        private final ChronoUnit unit;
+
+        Granularity(String table, ChronoUnit unit) {
+            this.table = table;
+            this.unit = unit;
+        }
+
+        public LocalDateTime floor(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+
+        public LocalDateTime ceil(LocalDateTime time) {
+            LocalDateTime floor = floor(time);
+            return floor.equals(time) ? floor : floor.plus(1, unit);
+        }
+    }
+
+    /**
+     * Прибавляет просмотры к корзинам всех гранулярностей. Ключи обновляются
+     * в одном и том же порядке, чтобы параллельные транзакции не взаимоблокировались.
+     */
+    public void increment(List<Hit> hits) {
+        for (Granularity granularity : Granularity.values()) {
+            Map<BucketKey, Long> counts = new TreeMap<>(KEY_ORDER);
+            for (Hit hit : hits) {
+                BucketKey key = new BucketKey(hit.getApp(), hit.getUriId(), granularity.floor(hit.getTimestamp()));
+                counts.merge(key, 1L, Long::sum);
+            }
+
+            String sql = "INSERT INTO " + granularity.table + " (app, uri_id, bucket, hits) " +
+                    "VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (app, uri_id, bucket) DO UPDATE SET hits = " + granularity.table + ".hits + EXCLUDED.hits";
+            jdbcTemplate.getJdbcTemplate().batchUpdate(sql, counts.entrySet(), batchSize, (ps, entry) -> {
+                ps.setString(1, entry.getKey().app());
+                ps.setInt(2, entry.getKey().uriId());
+                ps.setTimestamp(3, Timestamp.valueOf(entry.getKey().bucket()));
+                ps.setLong(4, entry.getValue());
+            });
+        }
+    }
+
+    /**
+     * Суммирует корзины, целиком лежащие в переданных интервалах. Границы интервалов
+     * должны быть выровнены по гранулярности.
+     */
+    public List<UriStats> sum(Granularity granularity, List<TimeRange> ranges, List<Integer> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String condition = rangeCondition("bucket", ranges, "", params);
+        if (condition == null) {
+            return List.of();
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT app, uri_id, SUM(hits) AS hits FROM ")
+                .append(granularity.table)
+                .append(" WHERE ")
+                .append(condition);
+        if (uriIds != null) {
+            sql.append(" AND uri_id IN (:uriIds)");
+            params.addValue("uriIds", uriIds);
+        }
+        sql.append(" GROUP BY app, uri_id");
+
+        return jdbcTemplate.query(sql.toString(), params, (rs, rowNum) ->
+                new UriStats(rs.getString("app"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    /**
+     * Просмотры по корзинам шага {@code step} одним сгруппированным запросом: исходные
+     * просмотры из интервалов {@code raw}, минутные корзины из интервалов {@code minutes}
+     * и часовые из {@code hours} округляются вниз до шага и суммируются. Интервалы
+     * не должны пересекаться, границы {@code minutes} и {@code hours} должны быть
+     * выровнены по минутам и часам.
+     */
+    public List<UriBucketStats> series(TimeBucket step, List<TimeRange> raw, List<TimeRange> minutes,
+                                       List<TimeRange> hours, List<Integer> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriCondition = "";
+        if (uriIds != null) {
+            uriCondition = " AND uri_id IN (:uriIds)";
+            params.addValue("uriIds", uriIds);
+        }
+
+        List<String> parts = new ArrayList<>();
+        String rawCondition = rangeCondition("created", raw, "raw", params);
+        if (rawCondition != null) {
+            parts.add("SELECT app, uri_id, date_trunc('minute', created::timestamp) AS bucket, COUNT(*) AS hits " +
+                    "FROM hits WHERE " + rawCondition + uriCondition + " GROUP BY 1, 2, 3");
+        }
+        String minuteCondition = rangeCondition("bucket", minutes, "minute", params);
+        if (minuteCondition != null) {
+            parts.add("SELECT app, uri_id, bucket, hits FROM " + Granularity.MINUTE.table +
+                    " WHERE " + minuteCondition + uriCondition);
+        }
+        String hourCondition = rangeCondition("bucket", hours, "hour", params);
+        if (hourCondition != null) {
+            parts.add("SELECT app, uri_id, bucket, hits FROM " + Granularity.HOUR.table +
+                    " WHERE " + hourCondition + uriCondition);
+        }
+        if (parts.isEmpty()) {
+            return List.of();
+        }
+
+        String sql = "SELECT app, uri_id, date_trunc('" + step.field() + "', bucket) AS bucket, SUM(hits) AS hits " +
+                "FROM (" + String.join(" UNION ALL ", parts) + ") rollup " +
+                "GROUP BY 1, 2, 3";
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new UriBucketStats(rs.getString("app"),
+                rs.getInt("uri_id"), rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+
+    /**
+     * Условие попадания {@code column} в один из непустых интервалов или {@code null},
+     * если все интервалы пустые.
+     */
+    private static String rangeCondition(String column, List<TimeRange> ranges, String prefix,
+                                         MapSqlParameterSource params) {
+        List<String> conditions = new ArrayList<>();
+        for (TimeRange range : ranges) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            String from = prefix + "from" + conditions.size();
+            String to = prefix + "to" + conditions.size();
+            conditions.add("(" + column + " >= :" + from + " AND " + column + " < :" + to + ")");
+            params.addValue(from, Timestamp.valueOf(range.from()));
+            params.addValue(to, Timestamp.valueOf(range.to()));
+        }
+        return conditions.isEmpty() ? null : "(" + String.join(" OR ", conditions) + ")";
+    }
+
+    private record BucketKey(String app, int uriId, LocalDateTime bucket) {
+    }
+}
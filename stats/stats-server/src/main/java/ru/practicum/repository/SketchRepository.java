@@ -0,0 +1,268 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.model.TimeRange;
+import ru.practicum.model.UriKey;
+import ru.practicum.repository.RollupRepository.Granularity;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Почасовые HyperLogLog-скетчи IP-адресов по каждой паре (app, uri) (таблица
+ * {@code hits_hll}). Скетчи за любой набор часов объединяются в один, что дает
+ * приближенное число уникальных посетителей без перебора просмотров.
+ *
+ * <p>Скетчи закрытых часов строит по исходным просмотрам фоновая задача
+ * {@link ru.practicum.compaction.HitSketcher}, а ход построения хранится в таблице
+ * {@code hit_sketch_progress}. При записи в скетчи добавляются только просмотры
+ * уже закончившихся часов — опоздавшие просмотры. Запись не читает ход построения и
+ * не берет блокировок: с ней согласуется задача, см. {@link #awaitRunningTransactions}.
+ */
+@Repository
+@Profile("!segment")
+@RequiredArgsConstructor
+public class SketchRepository {
+    private static final Comparator<BucketKey> KEY_ORDER = Comparator.comparing(BucketKey::app)
+            .thenComparingInt(BucketKey::uriId)
+            .thenComparing(BucketKey::bucket);
+
+    private static final String LOCK_SQL = "SELECT app, uri_id, bucket, sketch FROM hits_hll " +
+            "WHERE (app, uri_id, bucket) IN (:keys) " +
+            "ORDER BY app, uri_id, bucket " +
+            "FOR UPDATE";
+    private static final String UPDATE_SQL = "UPDATE hits_hll SET sketch = ? WHERE app = ? AND uri_id = ? AND bucket = ?";
+    private static final String INSERT_SQL = "INSERT INTO hits_hll (app, uri_id, bucket, sketch) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app, uri_id, bucket) DO NOTHING";
+
+    /**
+     * Скетчи часа по исходным просмотрам в разреженном формате {@link HyperLogLog}:
+     * хеш IP — первые 64 бита md5 от {@code host(ip)}, как в {@link ru.practicum.sketch.Hashing};
+     * старшие 14 бит — номер регистра, значение — позиция первой единицы в оставшихся
+     * 50 битах (51, если единиц нет). Так же скетчи строились в миграции 004.
+     */
+    private static final String BUILD_SQL = "SELECT app, uri_id, " +
+            "decode('010e' || lpad(to_hex(COUNT(*)), 8, '0') || " +
+            "string_agg(lpad(to_hex(register), 4, '0') || lpad(to_hex(rank), 2, '0'), '' ORDER BY register), " +
+            "'hex') AS sketch " +
+            "FROM (SELECT app, uri_id, register, MAX(rank) AS rank " +
+            "FROM (SELECT app, uri_id, substr(bits, 1, 14)::bit(14)::int AS register, " +
+            "COALESCE(NULLIF(position('1' IN substr(bits, 15)), 0), 51) AS rank " +
+            "FROM (SELECT app, uri_id, ('x' || substr(md5(host(ip)), 1, 16))::bit(64)::text AS bits " +
+            "FROM hits WHERE created >= :from AND created < :to) hashed) ranked " +
+            "GROUP BY app, uri_id, register) registers " +
+            "GROUP BY app, uri_id";
+
+    private static final String RUNNING_SQL = "SELECT count(*) FROM pg_snapshot_xip(CAST(:snapshot AS pg_snapshot)) " +
+            "AS running(xid) WHERE pg_xact_status(running.xid) = 'in progress'";
+    private static final long RUNNING_POLL_MILLIS = 100;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${stats.ingest.jdbc-batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * Добавляет в скетчи IP-адреса просмотров часов, закончившихся по часам этого сервиса;
+     * просмотры открытого часа фоновая задача возьмет из {@code hits} сама, когда час
+     * закончится. Вызывается в транзакции записи просмотров после вставки самих
+     * просмотров: время читается, когда у транзакции уже есть номер, и задача, дождавшись
+     * ее завершения, видит все просмотры часов, которые запись сочла открытыми.
+     */
+    public void add(List<Hit> hits) {
+        LocalDateTime openHour = Granularity.HOUR.floor(LocalDateTime.now());
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>(KEY_ORDER);
+        for (Hit hit : hits) {
+            LocalDateTime bucket = Granularity.HOUR.floor(hit.getTimestamp());
+            if (bucket.isBefore(openHour)) {
+                BucketKey key = new BucketKey(hit.getApp(), hit.getUriId(), bucket);
+                sketches.computeIfAbsent(key, k -> new HyperLogLog()).add(IpMapper.toText(hit.getIp()));
+            }
+        }
+        mergeAll(sketches);
+    }
+
+    /**
+     * @return граница, раньше которой скетчи всех часов построены, или пустое значение,
+     * если хода построения еще нет: тогда скетчи построены при записи для всех часов,
+     * кроме текущего и предыдущего
+     */
+    public Optional<LocalDateTime> findSketchedBefore() {
+        return jdbcTemplate.queryForList("SELECT sketched_before FROM hit_sketch_progress",
+                        new MapSqlParameterSource(), Timestamp.class).stream()
+                .findFirst()
+                .map(Timestamp::toLocalDateTime);
+    }
+
+    /**
+     * Ждет завершения транзакций, которые выполнялись в момент вызова. Задача построения
+     * вызывает его перед {@link #reserve}: транзакция записи, решившая по своим часам, что
+     * час еще открыт, к этому времени завершилась, а более поздние добавляют просмотры
+     * этого часа в скетчи сами. Поэтому часы экземпляров сервиса могут расходиться не
+     * больше чем на {@code stats.sketches.delay}. Вызывается вне транзакции.
+     *
+     * @return {@code false}, если за {@code timeout} завершились не все транзакции
+     */
+    public boolean awaitRunningTransactions(Duration timeout) {
+        MapSqlParameterSource params = new MapSqlParameterSource("snapshot", jdbcTemplate.queryForObject(
+                "SELECT CAST(pg_current_snapshot() AS TEXT)", new MapSqlParameterSource(), String.class));
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (jdbcTemplate.queryForObject(RUNNING_SQL, params, Long.class) > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(RUNNING_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Берет в работу часы раньше {@code before}: сдвигает {@code pending_before} вперед.
+     * Если хода построения еще нет, создает его с обеими границами {@code initial}:
+     * скетчи более ранних часов построены при записи. Вызывается в транзакции.
+     *
+     * @return начало и конец часов, скетчи которых нужно построить
+     */
+    public TimeRange reserve(LocalDateTime before, LocalDateTime initial) {
+        MapSqlParameterSource params = new MapSqlParameterSource("before", Timestamp.valueOf(before))
+                .addValue("initial", Timestamp.valueOf(initial));
+        jdbcTemplate.update("INSERT INTO hit_sketch_progress (sketched_before, pending_before) " +
+                "VALUES (:initial, :initial) " +
+                "ON CONFLICT (id) DO UPDATE " +
+                "SET pending_before = GREATEST(hit_sketch_progress.pending_before, :before)", params);
+        return jdbcTemplate.queryForObject("SELECT sketched_before, pending_before FROM hit_sketch_progress",
+                new MapSqlParameterSource(), (rs, rowNum) -> new TimeRange(
+                        rs.getTimestamp("sketched_before").toLocalDateTime(),
+                        rs.getTimestamp("pending_before").toLocalDateTime()));
+    }
+
+    /**
+     * Строит скетчи часа, начинающегося в {@code hour}, по исходным просмотрам, объединяет
+     * их с уже записанными и сдвигает {@code sketched_before} на конец часа. Вызывается
+     * в транзакции. Повторное построение того же часа ничего не меняет: объединение
+     * скетчей идемпотентно.
+     *
+     * @return число скетчей часа
+     */
+    public int build(LocalDateTime hour) {
+        LocalDateTime end = hour.plusHours(1);
+        MapSqlParameterSource params = new MapSqlParameterSource("from", Timestamp.valueOf(hour))
+                .addValue("to", Timestamp.valueOf(end));
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>(KEY_ORDER);
+        jdbcTemplate.query(BUILD_SQL, params, rs -> {
+            sketches.put(new BucketKey(rs.getString("app"), rs.getInt("uri_id"), hour),
+                    HyperLogLog.fromBytes(rs.getBytes("sketch")));
+        });
+        mergeAll(sketches);
+        jdbcTemplate.update("UPDATE hit_sketch_progress SET sketched_before = GREATEST(sketched_before, :to)", params);
+        return sketches.size();
+    }
+
+    /**
+     * Объединяет скетчи часов, целиком лежащих в переданных интервалах, по каждой паре (app, uri).
+     * Границы интервалов должны быть выровнены по часам.
+     *
+     * @param uriIds идентификаторы URI или {@code null}, если отбирать по URI не нужно
+     */
+    public Map<UriKey, HyperLogLog> union(List<TimeRange> ranges, List<Integer> uriIds) {
+        Map<UriKey, HyperLogLog> union = new HashMap<>();
+        List<TimeRange> nonEmpty = ranges.stream()
+                .filter(range -> !range.isEmpty())
+                .toList();
+        if (nonEmpty.isEmpty()) {
+            return union;
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<String> conditions = new ArrayList<>();
+        for (int i = 0; i < nonEmpty.size(); i++) {
+            conditions.add("(bucket >= :from" + i + " AND bucket < :to" + i + ")");
+            params.addValue("from" + i, Timestamp.valueOf(nonEmpty.get(i).from()));
+            params.addValue("to" + i, Timestamp.valueOf(nonEmpty.get(i).to()));
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT app, uri_id, sketch FROM hits_hll WHERE (")
+                .append(String.join(" OR ", conditions))
+                .append(')');
+        if (uriIds != null) {
+            sql.append(" AND uri_id IN (:uriIds)");
+            params.addValue("uriIds", uriIds);
+        }
+
+        jdbcTemplate.query(sql.toString(), params, rs -> {
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+            union.merge(new UriKey(rs.getString("app"), rs.getInt("uri_id")), sketch, (left, right) -> {
+                left.merge(right);
+                return left;
+            });
+        });
+        return union;
+    }
+
+    /**
+     * Объединяет скетчи с записанными. Недостающие скетчи сначала создаются пустыми,
+     * затем все скетчи пачки блокируются в порядке ключей, объединяются с новыми
+     * значениями и перезаписываются. Так параллельные транзакции не теряют обновлений
+     * друг друга и не взаимоблокируются.
+     */
+    private void mergeAll(Map<BucketKey, HyperLogLog> sketches) {
+        List<Map.Entry<BucketKey, HyperLogLog>> entries = new ArrayList<>(sketches.entrySet());
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            merge(entries.subList(from, Math.min(from + batchSize, entries.size())));
+        }
+    }
+
+    private void merge(List<Map.Entry<BucketKey, HyperLogLog>> entries) {
+        byte[] empty = new HyperLogLog().toBytes();
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_SQL, entries, batchSize, (ps, entry) -> {
+            ps.setString(1, entry.getKey().app());
+            ps.setInt(2, entry.getKey().uriId());
+            ps.setTimestamp(3, Timestamp.valueOf(entry.getKey().bucket()));
+            ps.setBytes(4, empty);
+        });
+
+        List<Object[]> keys = entries.stream()
+                .map(entry -> new Object[]{entry.getKey().app(), entry.getKey().uriId(),
+                        Timestamp.valueOf(entry.getKey().bucket())})
+                .toList();
+        Map<BucketKey, HyperLogLog> stored = new HashMap<>();
+        jdbcTemplate.query(LOCK_SQL, new MapSqlParameterSource("keys", keys), rs -> {
+            BucketKey key = new BucketKey(rs.getString("app"), rs.getInt("uri_id"),
+                    rs.getTimestamp("bucket").toLocalDateTime());
+            stored.put(key, HyperLogLog.fromBytes(rs.getBytes("sketch")));
+        });
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_SQL, entries, batchSize, (ps, entry) -> {
+            HyperLogLog sketch = stored.get(entry.getKey());
+            sketch.merge(entry.getValue());
+            ps.setBytes(1, sketch.toBytes());
+            ps.setString(2, entry.getKey().app());
+            ps.setInt(3, entry.getKey().uriId());
+            ps.setTimestamp(4, Timestamp.valueOf(entry.getKey().bucket()));
+        });
+    }
+
+    private record BucketKey(String app, int uriId, LocalDateTime bucket) {
+    }
+}
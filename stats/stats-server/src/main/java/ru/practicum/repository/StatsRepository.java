@@ -1,41 +1,214 @@
 package ru.practicum.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
-import ru.practicum.ViewStatsDto;
 import ru.practicum.model.Hit;
+import ru.practicum.model.UriStats;
+import ru.practicum.model.Visit;
 
+import java.net.InetAddress;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface StatsRepository extends JpaRepository<Hit, Long> {
+    /**
+     * Сколько строк потоковые запросы stream* забирают из БД за раз. Курсор
+     * работает только внутри транзакции: вне ее драйвер PostgreSQL читает весь результат.
+     */
+    String STREAM_FETCH_SIZE = "1000";
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(h.ip)) " +
+    /**
+     * Строка результата нативного запроса по агрегатам.
+     */
+    interface UriStatsRow {
+        String getApp();
+
+        Integer getUriId();
+
+        Long getHits();
+
+        default UriStats toUriStats() {
+            return new UriStats(getApp(), getUriId(), getHits());
+        }
+    }
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.app, h.uriId " +
+            "ORDER BY COUNT(h.ip) DESC")
+    List<UriStats> getStatsAll(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.uriId IN :uriIds " +
+            "GROUP BY h.app, h.uriId " +
+            "ORDER BY COUNT(h.ip) DESC")
+    List<UriStats> getStatsAllForUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, @Param("uriIds") List<Integer> uriIds);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(DISTINCT h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.app, h.uriId " +
+            "ORDER BY COUNT(DISTINCT h.ip) DESC")
+    List<UriStats> getStatsUniqueIp(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(DISTINCT h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.uriId IN :uriIds " +
+            "GROUP BY h.app, h.uriId " +
+            "ORDER BY COUNT(DISTINCT h.ip) DESC")
+    List<UriStats> getStatsUniqueIpForUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, @Param("uriIds") List<Integer> uriIds);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
+            "FROM Hit h " +
+            "WHERE (h.timestamp >= :from1 AND h.timestamp < :to1) OR (h.timestamp >= :from2 AND h.timestamp < :to2) " +
+            "GROUP BY h.app, h.uriId")
+    List<UriStats> getStatsAllForRanges(@Param("from1") LocalDateTime from1, @Param("to1") LocalDateTime to1,
+                                            @Param("from2") LocalDateTime from2, @Param("to2") LocalDateTime to2);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
+            "FROM Hit h " +
+            "WHERE ((h.timestamp >= :from1 AND h.timestamp < :to1) OR (h.timestamp >= :from2 AND h.timestamp < :to2)) " +
+            "AND h.uriId IN :uriIds " +
+            "GROUP BY h.app, h.uriId")
+    List<UriStats> getStatsAllForRangesAndUris(@Param("from1") LocalDateTime from1, @Param("to1") LocalDateTime to1,
+                                                   @Param("from2") LocalDateTime from2, @Param("to2") LocalDateTime to2,
+                                                   @Param("uriIds") List<Integer> uriIds);
+
+    @Query("SELECT DISTINCT new ru.practicum.model.Visit(h.app, h.uriId, h.ip) " +
+            "FROM Hit h " +
+            "WHERE (h.timestamp >= :from1 AND h.timestamp < :to1) OR (h.timestamp >= :from2 AND h.timestamp < :to2)")
+    List<Visit> getVisitsForRanges(@Param("from1") LocalDateTime from1, @Param("to1") LocalDateTime to1,
+                                   @Param("from2") LocalDateTime from2, @Param("to2") LocalDateTime to2);
+
+    @Query("SELECT DISTINCT new ru.practicum.model.Visit(h.app, h.uriId, h.ip) " +
+            "FROM Hit h " +
+            "WHERE ((h.timestamp >= :from1 AND h.timestamp < :to1) OR (h.timestamp >= :from2 AND h.timestamp < :to2)) " +
+            "AND h.uriId IN :uriIds")
+    List<Visit> getVisitsForRangesAndUris(@Param("from1") LocalDateTime from1, @Param("to1") LocalDateTime to1,
+                                          @Param("from2") LocalDateTime from2, @Param("to2") LocalDateTime to2,
+                                          @Param("uriIds") List<Integer> uriIds);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.ip BETWEEN :low AND :high " +
+            "GROUP BY h.app, h.uriId")
+    List<UriStats> getStatsAllForNetwork(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                         @Param("low") InetAddress low, @Param("high") InetAddress high);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.ip BETWEEN :low AND :high AND h.uriId IN :uriIds " +
+            "GROUP BY h.app, h.uriId")
+    List<UriStats> getStatsAllForNetworkAndUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                                @Param("low") InetAddress low, @Param("high") InetAddress high,
+                                                @Param("uriIds") List<Integer> uriIds);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(DISTINCT h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.ip BETWEEN :low AND :high " +
+            "GROUP BY h.app, h.uriId")
+    List<UriStats> getStatsUniqueIpForNetwork(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                              @Param("low") InetAddress low, @Param("high") InetAddress high);
+
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(DISTINCT h.ip)) " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.ip BETWEEN :low AND :high AND h.uriId IN :uriIds " +
+            "GROUP BY h.app, h.uriId")
+    List<UriStats> getStatsUniqueIpForNetworkAndUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                                     @Param("low") InetAddress low, @Param("high") InetAddress high,
+                                                     @Param("uriIds") List<Integer> uriIds);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
             "FROM Hit h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
+            "GROUP BY h.app, h.uriId " +
             "ORDER BY COUNT(h.ip) DESC")
-    List<ViewStatsDto> getStatsAll(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+    Stream<UriStats> streamStatsAll(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(h.ip)) " +
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(h.ip)) " +
             "FROM Hit h " +
-            "WHERE h.timestamp BETWEEN :start AND :end AND h.uri IN :uris " +
-            "GROUP BY h.app, h.uri " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.uriId IN :uriIds " +
+            "GROUP BY h.app, h.uriId " +
             "ORDER BY COUNT(h.ip) DESC")
-    List<ViewStatsDto> getStatsAllForUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, @Param("uris") List<String> uris);
+    Stream<UriStats> streamStatsAllForUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                           @Param("uriIds") List<Integer> uriIds);
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(DISTINCT h.ip)) " +
             "FROM Hit h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
+            "GROUP BY h.app, h.uriId " +
             "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<ViewStatsDto> getStatsUniqueIp(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+    Stream<UriStats> streamStatsUniqueIp(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new ru.practicum.model.UriStats(h.app, h.uriId, COUNT(DISTINCT h.ip)) " +
             "FROM Hit h " +
-            "WHERE h.timestamp BETWEEN :start AND :end AND h.uri IN :uris " +
-            "GROUP BY h.app, h.uri " +
+            "WHERE h.timestamp BETWEEN :start AND :end AND h.uriId IN :uriIds " +
+            "GROUP BY h.app, h.uriId " +
             "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<ViewStatsDto> getStatsUniqueIpForUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, @Param("uris") List<String> uris);
-}
\ No newline at end of file
+    Stream<UriStats> streamStatsUniqueIpForUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                                @Param("uriIds") List<Integer> uriIds);
+
+    /**
+     * Просмотры за два диапазона по исходным просмотрам, два диапазона по минутным
+     * и один по часовым агрегатам одним запросом, по убыванию числа просмотров.
+     * Пустой диапазон (from = to) ничего не добавляет.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(nativeQuery = true, value = "SELECT app, uri_id AS \"uriId\", SUM(hits) AS hits FROM (" +
+            "SELECT app, uri_id, COUNT(*) AS hits FROM hits " +
+            "WHERE (created >= :from1 AND created < :to1) OR (created >= :from2 AND created < :to2) " +
+            "GROUP BY app, uri_id " +
+            "UNION ALL " +
+            "SELECT app, uri_id, hits FROM hits_minute " +
+            "WHERE (bucket >= :minuteFrom1 AND bucket < :minuteTo1) OR (bucket >= :minuteFrom2 AND bucket < :minuteTo2) " +
+            "UNION ALL " +
+            "SELECT app, uri_id, hits FROM hits_hour WHERE bucket >= :hourFrom AND bucket < :hourTo" +
+            ") rollup " +
+            "GROUP BY app, uri_id " +
+            "ORDER BY SUM(hits) DESC")
+    Stream<UriStatsRow> streamRolledUpStats(@Param("from1") LocalDateTime from1, @Param("to1") LocalDateTime to1,
+                                            @Param("from2") LocalDateTime from2, @Param("to2") LocalDateTime to2,
+                                            @Param("minuteFrom1") LocalDateTime minuteFrom1,
+                                            @Param("minuteTo1") LocalDateTime minuteTo1,
+                                            @Param("minuteFrom2") LocalDateTime minuteFrom2,
+                                            @Param("minuteTo2") LocalDateTime minuteTo2,
+                                            @Param("hourFrom") LocalDateTime hourFrom,
+                                            @Param("hourTo") LocalDateTime hourTo);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(nativeQuery = true, value = "SELECT app, uri_id AS \"uriId\", SUM(hits) AS hits FROM (" +
+            "SELECT app, uri_id, COUNT(*) AS hits FROM hits " +
+            "WHERE ((created >= :from1 AND created < :to1) OR (created >= :from2 AND created < :to2)) " +
+            "AND uri_id IN (:uriIds) " +
+            "GROUP BY app, uri_id " +
+            "UNION ALL " +
+            "SELECT app, uri_id, hits FROM hits_minute " +
+            "WHERE ((bucket >= :minuteFrom1 AND bucket < :minuteTo1) OR (bucket >= :minuteFrom2 AND bucket < :minuteTo2)) " +
+            "AND uri_id IN (:uriIds) " +
+            "UNION ALL " +
+            "SELECT app, uri_id, hits FROM hits_hour " +
+            "WHERE bucket >= :hourFrom AND bucket < :hourTo AND uri_id IN (:uriIds)" +
+            ") rollup " +
+            "GROUP BY app, uri_id " +
+            "ORDER BY SUM(hits) DESC")
+    Stream<UriStatsRow> streamRolledUpStatsForUris(@Param("from1") LocalDateTime from1, @Param("to1") LocalDateTime to1,
+                                                   @Param("from2") LocalDateTime from2, @Param("to2") LocalDateTime to2,
+                                                   @Param("minuteFrom1") LocalDateTime minuteFrom1,
+                                                   @Param("minuteTo1") LocalDateTime minuteTo1,
+                                                   @Param("minuteFrom2") LocalDateTime minuteFrom2,
+                                                   @Param("minuteTo2") LocalDateTime minuteTo2,
+                                                   @Param("hourFrom") LocalDateTime hourFrom,
+                                                   @Param("hourTo") LocalDateTime hourTo,
+                                                   @Param("uriIds") List<Integer> uriIds);
+}
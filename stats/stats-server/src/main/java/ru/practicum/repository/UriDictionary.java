@@ -0,0 +1,124 @@
+package ru.practicum.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.Hit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Словарь URI (таблица {@code uris}): просмотры и агрегаты хранят вместо строки
+ * URI ее целочисленный идентификатор. Соответствия кешируются в памяти в обе
+ * стороны, в БД обращение идет только за отсутствующими в кеше URI.
+ *
+ * <p>Новые URI записываются в словарь отдельными короткими транзакциями, поэтому
+ * {@link #assignIds} нужно вызывать вне транзакции записи просмотров: откат записи
+ * не должен оставить в кеше идентификатор, которого нет в БД.
+ */
+@Repository
+@Profile("!segment")
+public class UriDictionary {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Cache<String, Integer> ids;
+    private final Cache<Integer, String> uris;
+
+    public UriDictionary(NamedParameterJdbcTemplate jdbcTemplate,
+                         @Value("${stats.uris.cache-size:100000}") long cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ids = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.uris = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * Проставляет просмотрам идентификаторы URI, добавляя в словарь новые URI.
+     */
+    public void assignIds(List<Hit> hits) {
+        List<String> values = hits.stream()
+                .map(Hit::getUri)
+                .toList();
+        Map<String, Integer> found = findIds(values);
+
+        // вставка в одном и том же порядке, чтобы параллельные вставки не взаимоблокировались
+        List<String> missing = new ArrayList<>(new TreeSet<>(values));
+        missing.removeAll(found.keySet());
+        if (!missing.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO uris (uri) SELECT unnest(CAST(:uris AS VARCHAR[])) " +
+                            "ON CONFLICT (uri) DO NOTHING",
+                    new MapSqlParameterSource("uris", missing.toArray(String[]::new)));
+            found.putAll(load(missing));
+        }
+
+        for (Hit hit : hits) {
+            hit.setUriId(found.get(hit.getUri()));
+        }
+    }
+
+    /**
+     * Ищет идентификаторы URI, не добавляя новые. URI, которых нет в словаре, в результат не входят.
+     */
+    public Map<String, Integer> findIds(Collection<String> values) {
+        Map<String, Integer> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String uri : values) {
+            Integer id = ids.getIfPresent(uri);
+            if (id != null) {
+                found.put(uri, id);
+            } else if (!found.containsKey(uri)) {
+                missing.add(uri);
+            }
+        }
+        if (!missing.isEmpty()) {
+            found.putAll(load(missing));
+        }
+        return found;
+    }
+
+    /**
+     * Возвращает URI по идентификаторам.
+     */
+    public Map<Integer, String> findUris(Collection<Integer> uriIds) {
+        Map<Integer, String> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : uriIds) {
+            String uri = uris.getIfPresent(id);
+            if (uri != null) {
+                found.put(id, uri);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            jdbcTemplate.query("SELECT id, uri FROM uris WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", missing), rs -> {
+                        cache(rs.getString("uri"), rs.getInt("id"));
+                        found.put(rs.getInt("id"), rs.getString("uri"));
+                    });
+        }
+        return found;
+    }
+
+    private Map<String, Integer> load(Collection<String> values) {
+        Map<String, Integer> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT id, uri FROM uris WHERE uri = ANY(CAST(:uris AS VARCHAR[]))",
+                new MapSqlParameterSource("uris", values.stream().distinct().toArray(String[]::new)), rs -> {
+                    cache(rs.getString("uri"), rs.getInt("id"));
+                    loaded.put(rs.getString("uri"), rs.getInt("id"));
+                });
+        return loaded;
+    }
+
+    private void cache(String uri, int id) {
+        ids.put(uri, id);
+        uris.put(id, uri);
+    }
+}
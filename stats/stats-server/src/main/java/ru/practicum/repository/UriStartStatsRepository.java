@@ -0,0 +1,89 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.UriStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика по URI, у каждого из которых свое начало диапазона, одним сгруппированным
+ * запросом: пары (uri_id, начало) передаются массивами и разворачиваются {@code unnest},
+ * а просмотры каждого URI выбираются по индексу {@code (uri_id, created)} от его начала.
+ */
+@Repository
+@Profile("!segment")
+@RequiredArgsConstructor
+public class UriStartStatsRepository {
+    private static final String STARTS = "unnest(CAST(:uriIds AS INTEGER[]), CAST(:starts AS TIMESTAMP[])) " +
+            "AS s(uri_id, start_at)";
+
+    private static final String COUNT_SQL = "WITH starts AS (" +
+            "SELECT uri_id, start_at, hour_from, hour_to, " +
+            "CASE WHEN hour_from < hour_to THEN hour_from ELSE :to END AS head_to, " +
+            "CASE WHEN hour_from < hour_to THEN hour_to ELSE :to END AS tail_from " +
+            "FROM (SELECT uri_id, start_at, " +
+            "date_trunc('hour', start_at) + CASE WHEN start_at > date_trunc('hour', start_at) " +
+            "THEN INTERVAL '1 hour' ELSE INTERVAL '0' END AS hour_from, " +
+            "date_trunc('hour', CAST(:to AS TIMESTAMP)) AS hour_to " +
+            "FROM " + STARTS + ") ranges" +
+            ") " +
+            "SELECT app, uri_id, SUM(hits) AS hits FROM (" +
+            "SELECT h.app, h.uri_id, COUNT(*) AS hits FROM starts s JOIN hits h ON h.uri_id = s.uri_id " +
+            "AND ((h.created >= s.start_at AND h.created < s.head_to) OR (h.created >= s.tail_from AND h.created < :to)) " +
+            "GROUP BY h.app, h.uri_id " +
+            "UNION ALL " +
+            "SELECT r.app, r.uri_id, r.hits FROM starts s JOIN hits_hour r ON r.uri_id = s.uri_id " +
+            "AND r.bucket >= s.hour_from AND r.bucket < s.hour_to" +
+            ") counted " +
+            "GROUP BY app, uri_id";
+
+    private static final String COUNT_UNIQUE_SQL = "SELECT h.app, h.uri_id, COUNT(DISTINCT h.ip) AS hits " +
+            "FROM " + STARTS + " JOIN hits h ON h.uri_id = s.uri_id AND h.created >= s.start_at AND h.created < :to " +
+            "GROUP BY h.app, h.uri_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Просмотры каждого URI за [начало, to): целые часы берутся из {@code hits_hour},
+     * неполные часы на краях диапазона считаются по исходным просмотрам.
+     *
+     * @param starts начало диапазона для каждого идентификатора URI
+     * @param to     исключающий конец диапазона, общий для всех URI
+     */
+    public List<UriStats> count(Map<Integer, LocalDateTime> starts, LocalDateTime to) {
+        return query(COUNT_SQL, starts, to);
+    }
+
+    /**
+     * Число уникальных IP каждого URI за [начало, to) по исходным просмотрам.
+     */
+    public List<UriStats> countUnique(Map<Integer, LocalDateTime> starts, LocalDateTime to) {
+        return query(COUNT_UNIQUE_SQL, starts, to);
+    }
+
+    private List<UriStats> query(String sql, Map<Integer, LocalDateTime> starts, LocalDateTime to) {
+        if (starts.isEmpty()) {
+            return List.of();
+        }
+        Integer[] uriIds = new Integer[starts.size()];
+        String[] startTimes = new String[starts.size()];
+        int i = 0;
+        for (Map.Entry<Integer, LocalDateTime> entry : starts.entrySet()) {
+            uriIds[i] = entry.getKey();
+            startTimes[i] = entry.getValue().toString();
+            i++;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds)
+                .addValue("starts", startTimes)
+                .addValue("to", Timestamp.valueOf(to));
+        return jdbcTemplate.query(sql, params, (rs, rowNum) ->
+                new UriStats(rs.getString("app"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+}
@@ -0,0 +1,91 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.model.UriVisitors;
+
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Уникальные посетители каждой пары (app, uri) со временем их первого просмотра
+ * (таблица {@code hit_visitors}). Позволяет точно считать уникальные IP без
+ * {@code COUNT(DISTINCT ip)} по всем просмотрам.
+ */
+@Repository
+@Profile("!segment")
+@RequiredArgsConstructor
+public class VisitorRepository {
+    private static final Comparator<VisitorKey> KEY_ORDER = Comparator.comparing(VisitorKey::app)
+            .thenComparingInt(VisitorKey::uriId)
+            .thenComparing(key -> key.ip().getAddress(), Arrays::compare);
+
+    private static final String UPSERT_SQL = "INSERT INTO hit_visitors (app, uri_id, ip, first_seen) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app, uri_id, ip) DO UPDATE SET first_seen = EXCLUDED.first_seen " +
+            "WHERE EXCLUDED.first_seen < hit_visitors.first_seen";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${stats.ingest.jdbc-batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * Добавляет новых посетителей. Просмотры могут приходить не по порядку времени,
+     * поэтому у известного посетителя время первого просмотра сдвигается назад,
+     * если пришел более ранний просмотр. Ключи обновляются в одном и том же порядке,
+     * чтобы параллельные транзакции не взаимоблокировались.
+     */
+    public void add(List<Hit> hits) {
+        Map<VisitorKey, LocalDateTime> firstSeen = new TreeMap<>(KEY_ORDER);
+        for (Hit hit : hits) {
+            VisitorKey key = new VisitorKey(hit.getApp(), hit.getUriId(), hit.getIp());
+            firstSeen.merge(key, hit.getTimestamp(), (left, right) -> left.isBefore(right) ? left : right);
+        }
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPSERT_SQL, firstSeen.entrySet(), batchSize, (ps, entry) -> {
+            ps.setString(1, entry.getKey().app());
+            ps.setInt(2, entry.getKey().uriId());
+            ps.setObject(3, IpMapper.toText(entry.getKey().ip()), Types.OTHER);
+            ps.setTimestamp(4, Timestamp.valueOf(entry.getValue()));
+        });
+    }
+
+    /**
+     * Считает посетителей, впервые пришедших не позже {@code end}, по каждой паре (app, uri).
+     *
+     * @param uriIds идентификаторы URI или {@code null}, если отбирать по URI не нужно
+     */
+    public List<UriVisitors> count(LocalDateTime end, List<Integer> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource("end", Timestamp.valueOf(end));
+        StringBuilder sql = new StringBuilder("SELECT app, uri_id, " +
+                "COUNT(*) FILTER (WHERE first_seen <= :end) AS visitors, MIN(first_seen) AS first_seen " +
+                "FROM hit_visitors");
+        if (uriIds != null) {
+            sql.append(" WHERE uri_id IN (:uriIds)");
+            params.addValue("uriIds", uriIds);
+        }
+        sql.append(" GROUP BY app, uri_id");
+
+        return jdbcTemplate.query(sql.toString(), params, (rs, rowNum) -> new UriVisitors(
+                rs.getString("app"),
+                rs.getInt("uri_id"),
+                rs.getLong("visitors"),
+                rs.getTimestamp("first_seen").toLocalDateTime()));
+    }
+
+    private record VisitorKey(String app, int uriId, InetAddress ip) {
+    }
+}
@@ -0,0 +1,38 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Позиции воспроизведения локальных журналов просмотров (таблица {@code hit_wal_checkpoints}),
+ * см. {@link ru.practicum.ingest.HitWal}.
+ */
+@Repository
+@Profile("!segment")
+@RequiredArgsConstructor
+public class WalCheckpointRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public OptionalLong find(UUID walId) {
+        List<Long> positions = jdbcTemplate.queryForList(
+                "SELECT position FROM hit_wal_checkpoints WHERE wal_id = :walId",
+                new MapSqlParameterSource("walId", walId), Long.class);
+        return positions.isEmpty() ? OptionalLong.empty() : OptionalLong.of(positions.get(0));
+    }
+
+    /**
+     * Сохраняет позицию. Вызывается в транзакции записи воспроизведенных просмотров.
+     */
+    public void save(UUID walId, long position) {
+        jdbcTemplate.update("INSERT INTO hit_wal_checkpoints (wal_id, position) VALUES (:walId, :position) " +
+                        "ON CONFLICT (wal_id) DO UPDATE SET position = EXCLUDED.position",
+                new MapSqlParameterSource("walId", walId).addValue("position", position));
+    }
+}
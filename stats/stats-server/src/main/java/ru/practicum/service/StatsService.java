@@ -1,13 +1,57 @@
 package ru.practicum.service;
 
 import ru.practicum.HitDto;
+import ru.practicum.StatsSinceDto;
+import ru.practicum.TimeSeriesDto;
+import ru.practicum.TopStatsDto;
 import ru.practicum.ViewStatsDto;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.storage.StatsStream;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 
 public interface StatsService {
     HitDto create(HitDto hitDto);
 
-    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+    int createAll(List<HitDto> hitDtos);
+
+    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                boolean approximate);
+
+    /**
+     * Проверяет параметры и готовит выгрузку той же статистики, что {@link #getStats},
+     * по одной строке, не собирая результат в памяти, см. {@link HitStorage#streamStats}.
+     *
+     * @throws ru.practicum.exception.ValidationException если параметры некорректны;
+     *                                                    бросается до чтения строк
+     */
+    StatsStream streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            boolean approximate);
+
+    /**
+     * Статистика по URI, у каждого из которых свое начало диапазона, с общим концом,
+     * одним проходом по хранилищу. URI без просмотров в результат не входят.
+     */
+    List<ViewStatsDto> getStatsSince(StatsSinceDto query);
+
+    /**
+     * Самые просматриваемые URI за последнее окно {@code window} по данным в памяти, см. {@link ru.practicum.top.TopHits}.
+     */
+    TopStatsDto getTopStats(int k, Duration window);
+
+    /**
+     * Число просмотров URI за последнее окно {@code window} по счетчикам в памяти, см. {@link ru.practicum.live.LiveCounters}.
+     */
+    List<ViewStatsDto> getLiveStats(List<String> uris, Duration window);
+
+    /**
+     * Просмотры URI по корзинам шага {@code bucket} (minute, hour или day) за [start, end]
+     * одним проходом по хранилищу.
+     */
+    List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String bucket);
+
+    List<ViewStatsDto> getNetworkStats(LocalDateTime start, LocalDateTime end, String cidr, List<String> uris,
+                                       boolean unique);
 }
\ No newline at end of file
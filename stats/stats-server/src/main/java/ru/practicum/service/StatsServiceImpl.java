@@ -2,53 +2,306 @@ package ru.practicum.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.HitDto;
+import ru.practicum.StatsSinceDto;
+import ru.practicum.TimeSeriesDto;
+import ru.practicum.TopStatsDto;
+import ru.practicum.UriStartDto;
 import ru.practicum.ViewStatsDto;
+import ru.practicum.cache.StatsCache;
+import ru.practicum.exception.IngestOverloadException;
 import ru.practicum.exception.ValidationException;
+import ru.practicum.ingest.HitBuffer;
+import ru.practicum.ingest.HitDeduplicator;
+import ru.practicum.ingest.HitWal;
+import ru.practicum.ingest.HitWriter;
+import ru.practicum.ingest.IngestMode;
+import ru.practicum.live.LiveCounters;
 import ru.practicum.mapper.HitMapper;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.mapper.TimeSeriesMapper;
 import ru.practicum.model.Hit;
-import ru.practicum.repository.StatsRepository;
+import ru.practicum.model.IpRange;
+import ru.practicum.model.TimeBucket;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.storage.StatsStream;
+import ru.practicum.top.TopHits;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 public class StatsServiceImpl implements StatsService {
+    private final HitStorage hitStorage;
+    private final HitWriter hitWriter;
+    private final HitBuffer hitBuffer;
+    private final HitDeduplicator hitDeduplicator;
+    private final ObjectProvider<HitWal> hitWal;
+    private final TopHits topHits;
+    private final LiveCounters liveCounters;
+    private final StatsCache statsCache;
 
-    private final StatsRepository statsRepository;
+    @Value("${stats.ingest.mode:sync}")
+    private IngestMode ingestMode;
+
+    @Value("${stats.ingest.ack-timeout:5s}")
+    private Duration ackTimeout;
+
+    @Value("${stats.ingest.max-clock-skew:1m}")
+    private Duration maxClockSkew;
+
+    @Value("${stats.ingest.max-hit-age:1h}")
+    private Duration maxHitAge;
+
+    @Value("${stats.timeseries.max-buckets:10000}")
+    private long maxTimeSeriesBuckets;
 
     @Override
-    @Transactional
     public HitDto create(HitDto hitDto) {
         log.info("Сохранение информации о просмотре: {}", hitDto);
+        validateTimestamp(hitDto.getTimeStamp(), LocalDateTime.now());
         Hit hit = HitMapper.toHit(hitDto);
-        Hit savedHit = statsRepository.save(hit);
-        return HitMapper.toHitDto(savedHit);
+        List<Hit> claimed = hitDeduplicator.claim(List.of(hit));
+        if (claimed.isEmpty()) {
+            log.debug("Повторный просмотр в окне подавления не записан: {}", hitDto);
+            return HitMapper.toHitDto(hit);
+        }
+        if (ingestMode == IngestMode.SYNC) {
+            Hit savedHit;
+            try {
+                savedHit = hitWriter.save(hit);
+            } catch (RuntimeException e) {
+                hitDeduplicator.release(claimed);
+                throw e;
+            }
+            hitDeduplicator.confirm(claimed);
+            return HitMapper.toHitDto(savedHit);
+        }
+        if (ingestMode == IngestMode.WAL) {
+            awaitAck(enqueue(claimed, () -> hitWal.getObject().submit(claimed)));
+            return HitMapper.toHitDto(hit);
+        }
+
+        CompletableFuture<Void> ack = enqueue(claimed, () -> hitBuffer.submit(hit));
+        if (ingestMode == IngestMode.FLUSH_ON_ACK) {
+            awaitAck(ack);
+        }
+        return HitMapper.toHitDto(hit);
+    }
+
+    /**
+     * Повторы, подавленные {@link HitDeduplicator}, считаются принятыми: повторять
+     * их отправку не нужно.
+     */
+    @Override
+    public int createAll(List<HitDto> hitDtos) {
+        log.info("Пакетное сохранение информации о просмотрах: {} шт.", hitDtos.size());
+        LocalDateTime now = LocalDateTime.now();
+        hitDtos.forEach(hitDto -> validateTimestamp(hitDto.getTimeStamp(), now));
+        List<Hit> hits = hitDeduplicator.claim(HitMapper.toHits(hitDtos));
+        int suppressed = hitDtos.size() - hits.size();
+        if (hits.isEmpty()) {
+            return suppressed;
+        }
+        if (ingestMode == IngestMode.SYNC) {
+            int saved;
+            try {
+                saved = hitWriter.saveAll(hits);
+            } catch (RuntimeException e) {
+                hitDeduplicator.release(hits);
+                throw e;
+            }
+            hitDeduplicator.confirm(hits);
+            return saved + suppressed;
+        }
+        if (ingestMode == IngestMode.WAL) {
+            awaitAck(enqueue(hits, () -> hitWal.getObject().submit(hits)));
+            return hitDtos.size();
+        }
+
+        List<CompletableFuture<Void>> acks;
+        try {
+            acks = hitBuffer.submitAll(hits);
+        } catch (RuntimeException e) {
+            hitDeduplicator.release(hits);
+            throw e;
+        }
+        hitDeduplicator.release(hits.subList(acks.size(), hits.size()));
+        CompletableFuture<Void> ack = enqueue(hits.subList(0, acks.size()),
+                () -> CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)));
+        if (ingestMode == IngestMode.FLUSH_ON_ACK) {
+            awaitAck(ack);
+        }
+        return acks.size() + suppressed;
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                       boolean approximate) {
+        validateRange(start, end);
+
+        boolean isUriFilterActive = uris != null && !uris.isEmpty();
+        log.info("Запрос статистики: unique={}, approximate={}, uris active={}, uris={}",
+                unique, approximate, isUriFilterActive, uris);
+
+        List<String> uriFilter = isUriFilterActive ? uris : null;
+        return statsCache.get(start, end, uriFilter, unique, approximate,
+                (from, to) -> hitStorage.getStats(from, to, uriFilter, unique, approximate));
+    }
+
+    @Override
+    public StatsStream streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                   boolean approximate) {
+        validateRange(start, end);
+
+        boolean isUriFilterActive = uris != null && !uris.isEmpty();
+        log.info("Потоковая выгрузка статистики: unique={}, approximate={}, uris active={}, uris={}",
+                unique, approximate, isUriFilterActive, uris);
+
+        return hitStorage.streamStats(start, end, isUriFilterActive ? uris : null, unique, approximate);
+    }
+
+    @Override
+    public List<ViewStatsDto> getStatsSince(StatsSinceDto query) {
+        Map<String, LocalDateTime> starts = new HashMap<>();
+        for (UriStartDto uriStart : query.getUris()) {
+            validateRange(uriStart.getStart(), query.getEnd());
+            if (starts.put(uriStart.getUri(), uriStart.getStart()) != null) {
+                log.warn("Ошибка валидации: URI {} указан в запросе несколько раз", uriStart.getUri());
+                throw new ValidationException("Каждый URI должен быть указан в запросе один раз.");
+            }
+        }
+        log.info("Запрос статистики по началу для каждого URI: unique={}, end={}, uris={}",
+                query.isUnique(), query.getEnd(), starts.size());
+
+        return statsCache.getSince(starts, query.getEnd(), query.isUnique(),
+                (from, to) -> hitStorage.getStatsSince(from, to, query.isUnique(), query.isApproximate()));
     }
 
     @Override
-    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+    public TopStatsDto getTopStats(int k, Duration window) {
+        if (k < 1) {
+            throw new ValidationException("Число URI в ответе должно быть положительным.");
+        }
+        log.info("Запрос самых просматриваемых URI: k={}, window={}", k, window);
+
+        TopHits.Top top = topHits.top(k, window);
+        return new TopStatsDto(top.start(), top.total(), top.errorBound(), top.stats());
+    }
+
+    @Override
+    public List<ViewStatsDto> getLiveStats(List<String> uris, Duration window) {
+        boolean isUriFilterActive = uris != null && !uris.isEmpty();
+        log.info("Запрос просмотров за последнее окно: window={}, uris active={}, uris={}",
+                window, isUriFilterActive, uris);
+
+        return liveCounters.get(isUriFilterActive ? uris : null, window);
+    }
+
+    @Override
+    public List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             String bucket) {
+        validateRange(start, end);
+        TimeBucket step = TimeBucket.parse(bucket);
+        long buckets = Duration.between(step.floor(start), end).dividedBy(step.duration()) + 1;
+        if (buckets > maxTimeSeriesBuckets) {
+            log.warn("Ошибка валидации: {} корзин временного ряда больше лимита {}", buckets, maxTimeSeriesBuckets);
+            throw new ValidationException("Слишком много корзин временного ряда, увеличьте шаг или сократите диапазон.");
+        }
+
+        boolean isUriFilterActive = uris != null && !uris.isEmpty();
+        log.info("Запрос временного ряда: bucket={}, uris active={}, uris={}", step, isUriFilterActive, uris);
+
+        return TimeSeriesMapper.toTimeSeries(hitStorage.getTimeSeries(start, end, isUriFilterActive ? uris : null,
+                step));
+    }
+
+    @Override
+    public List<ViewStatsDto> getNetworkStats(LocalDateTime start, LocalDateTime end, String cidr, List<String> uris,
+                                              boolean unique) {
+        validateRange(start, end);
+        IpRange network = IpMapper.toRange(cidr);
+
+        boolean isUriFilterActive = uris != null && !uris.isEmpty();
+        log.info("Запрос статистики по сети: cidr={}, unique={}, uris active={}, uris={}",
+                cidr, unique, isUriFilterActive, uris);
+
+        return hitStorage.getNetworkStats(start, end, network, isUriFilterActive ? uris : null, unique);
+    }
+
+    private static void validateRange(LocalDateTime start, LocalDateTime end) {
         if (start.isAfter(end)) {
             log.warn("Ошибка валидации: дата начала {} позже даты окончания {}", start, end);
             throw new ValidationException("Дата начала диапазона не может быть позже даты окончания.");
         }
+    }
+
+    /**
+     * Время просмотра, переданное клиентом, принимается, если оно не позже текущего больше
+     * чем на {@code stats.ingest.max-clock-skew} и не раньше него больше чем на
+     * {@code stats.ingest.max-hit-age}: клиент с неверными часами иначе дописал бы просмотры
+     * в будущее или в уже закешированные и свернутые периоды. Без времени просмотр
+     * получает текущее время сервера.
+     */
+    private void validateTimestamp(LocalDateTime timestamp, LocalDateTime now) {
+        if (timestamp == null) {
+            return;
+        }
+        if (timestamp.isAfter(now.plus(maxClockSkew))) {
+            log.warn("Ошибка валидации: время просмотра {} в будущем, сейчас {}", timestamp, now);
+            throw new ValidationException("Время просмотра не может быть в будущем.");
+        }
+        if (timestamp.isBefore(now.minus(maxHitAge))) {
+            log.warn("Ошибка валидации: время просмотра {} раньше {} назад", timestamp, maxHitAge);
+            throw new ValidationException("Время просмотра старше " + maxHitAge + ", такие просмотры не принимаются.");
+        }
+    }
 
-        boolean isUriFilterActive = uris != null && !uris.isEmpty();
-        log.info("Запрос статистики: unique={}, uris active={}, uris={}", unique, isUriFilterActive, uris);
+    /**
+     * Ставит просмотры, отмеченные {@link HitDeduplicator#claim}, в буфер или журнал.
+     * Если они не приняты, отметка снимается сразу, иначе — подтверждается или снимается,
+     * когда станет известен результат записи. Поэтому истекшее ожидание подтверждения
+     * отметку не снимает: просмотры уже в очереди, и повторная отправка будет подавлена.
+     */
+    private CompletableFuture<Void> enqueue(List<Hit> claimed, Supplier<CompletableFuture<Void>> submit) {
+        CompletableFuture<Void> ack;
+        try {
+            ack = submit.get();
+        } catch (RuntimeException e) {
+            hitDeduplicator.release(claimed);
+            throw e;
+        }
+        ack.whenComplete((ignored, e) -> {
+            if (e == null) {
+                hitDeduplicator.confirm(claimed);
+            } else {
+                hitDeduplicator.release(claimed);
+            }
+        });
+        return ack;
+    }
 
-        if (unique) {
-            return isUriFilterActive ?
-                    statsRepository.getStatsUniqueIpForUris(start, end, uris) :
-                    statsRepository.getStatsUniqueIp(start, end);
-        } else {
-            return isUriFilterActive ?
-                    statsRepository.getStatsAllForUris(start, end, uris) :
-                    statsRepository.getStatsAll(start, end);
+    private void awaitAck(CompletableFuture<Void> ack) {
+        try {
+            ack.get(ackTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestOverloadException("Запись просмотра прервана.");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IngestOverloadException("Запись просмотра не подтверждена, повторите запрос позже.");
         }
     }
-}
\ No newline at end of file
+}
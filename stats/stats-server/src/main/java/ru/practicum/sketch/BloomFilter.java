@@ -0,0 +1,74 @@
+package ru.practicum.sketch;
+
+/**
+ * Фильтр Блума — вероятностное множество 64-битных хешей в фиксированной памяти.
+ *
+ * <p>Проверка не дает ложноотрицательных ответов; вероятность ложноположительного
+ * ответа не больше {@code fpp}, пока добавлено не больше {@code expectedInsertions}
+ * значений. Размер — {@code -n ln(fpp) / ln²2} бит, число хеш-функций —
+ * {@code m / n · ln 2}; позиции получаются двойным хешированием из половин хеша.
+ * Класс не потокобезопасен.
+ */
+public final class BloomFilter {
+    private final long[] bits;
+    private final long size;
+    private final int hashes;
+    private final long expectedInsertions;
+    private long insertions;
+
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Некорректные параметры фильтра Блума: n=" + expectedInsertions
+                    + ", fpp=" + fpp);
+        }
+        long size = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.max(1, (size + Long.SIZE - 1) / Long.SIZE)];
+        this.size = (long) bits.length * Long.SIZE;
+        this.hashes = Math.max(1, (int) Math.round((double) this.size / expectedInsertions * Math.log(2)));
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    /**
+     * Добавляет хеш.
+     *
+     * @return {@code true}, если хеш, возможно, уже был добавлен
+     */
+    public boolean put(long hash) {
+        int high = (int) (hash >>> 32);
+        int low = (int) hash;
+        boolean present = true;
+        for (int i = 0; i < hashes; i++) {
+            long index = Math.floorMod(low + (long) i * high, size);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            if ((bits[word] & mask) == 0) {
+                present = false;
+                bits[word] |= mask;
+            }
+        }
+        if (!present) {
+            insertions++;
+        }
+        return present;
+    }
+
+    public boolean mightContain(long hash) {
+        int high = (int) (hash >>> 32);
+        int low = (int) hash;
+        for (int i = 0; i < hashes; i++) {
+            long index = Math.floorMod(low + (long) i * high, size);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true}, если добавлено больше значений, чем рассчитан фильтр,
+     * и вероятность ложноположительного ответа уже выше заданной
+     */
+    public boolean isSaturated() {
+        return insertions >= expectedInsertions;
+    }
+}
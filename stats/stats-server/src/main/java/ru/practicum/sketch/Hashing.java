@@ -0,0 +1,47 @@
+package ru.practicum.sketch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 64-битное хеширование для вероятностных структур данных.
+ *
+ * <p>Хеш — первые 8 байт MD5 от UTF-8 представления значения (big-endian). Тот же
+ * хеш считается в PostgreSQL выражением
+ * {@code ('x' || substr(md5(value), 1, 16))::bit(64)::bigint}, поэтому скетчи
+ * можно строить по уже записанным данным прямо в миграциях.
+ */
+public final class Hashing {
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 недоступен", e);
+        }
+    });
+
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private Hashing() {
+
+    }
+
+    public static long hash64(String value) {
+        byte[] digest = MD5.get().digest(value.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(digest).getLong();
+    }
+
+    /**
+     * Перемешивание 64-битного значения (финализатор SplitMix64). Подходит для
+     * числовых ключей, когда совпадение с хешем {@link #hash64} в SQL не требуется.
+     */
+    public static long mix64(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,149 @@
+package ru.practicum.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving — поиск самых частых ключей потока в памяти на {@code capacity} счетчиков.
+ *
+ * <p>Пока различных ключей не больше {@code capacity}, счетчики точные. Дальше новый
+ * ключ вытесняет ключ с наименьшим счетчиком и наследует его значение, поэтому
+ * счетчик может завышать число появлений ключа, но не более чем на наименьший
+ * счетчик ({@link #errorBound()}), который сам не превышает {@code total / capacity}.
+ * Любой ключ, встретившийся больше {@link #errorBound()} раз, гарантированно отслеживается.
+ *
+ * <p>Обновление — {@code O(log capacity)}, выборка k самых частых — {@code O(k)}.
+ * Класс не потокобезопасен.
+ */
+public final class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Counter<K>> counters = new HashMap<>();
+    private final TreeSet<Counter<K>> byCount = new TreeSet<>(Comparator.<Counter<K>>comparingLong(counter -> counter.count)
+            .thenComparingLong(counter -> counter.sequence));
+    private long total;
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public void add(K key, long weight) {
+        add(key, weight, 0);
+    }
+
+    /**
+     * Объединяет с другим скетчем так, как будто все его ключи добавлены в этот
+     * (mergeable summaries). Ключу, которого нет среди счетчиков заполненного скетча,
+     * за этот скетч добавляется его наименьший счетчик — и к счетчику, и к погрешности:
+     * больше этого ключ там встретиться не мог. Из объединенных счетчиков остаются
+     * {@code capacity} наибольших, поэтому {@link Entry} по-прежнему ограничивает
+     * истинное число появлений с обеих сторон, а {@link #errorBound()} — число
+     * появлений ключей, которых среди счетчиков нет.
+     */
+    public void merge(SpaceSaving<K> other) {
+        long missing = errorBound();
+        long otherMissing = other.errorBound();
+        List<Counter<K>> merged = new ArrayList<>(counters.size() + other.counters.size());
+        for (Counter<K> counter : byCount) {
+            Counter<K> otherCounter = other.counters.get(counter.key);
+            merged.add(otherCounter != null ?
+                    new Counter<>(counter.key, counter.count + otherCounter.count, counter.error + otherCounter.error, 0) :
+                    new Counter<>(counter.key, counter.count + otherMissing, counter.error + otherMissing, 0));
+        }
+        for (Counter<K> otherCounter : other.byCount) {
+            if (!counters.containsKey(otherCounter.key)) {
+                merged.add(new Counter<>(otherCounter.key, otherCounter.count + missing, otherCounter.error + missing, 0));
+            }
+        }
+        merged.sort(Comparator.<Counter<K>>comparingLong(counter -> counter.count).reversed());
+
+        counters.clear();
+        byCount.clear();
+        for (Counter<K> counter : merged.subList(0, Math.min(capacity, merged.size()))) {
+            Counter<K> kept = new Counter<>(counter.key, counter.count, counter.error, sequence++);
+            counters.put(kept.key, kept);
+            byCount.add(kept);
+        }
+        total += other.total;
+    }
+
+    /**
+     * До {@code k} самых частых ключей по убыванию счетчика.
+     */
+    public List<Entry<K>> top(int k) {
+        List<Entry<K>> top = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter<K>> iterator = byCount.descendingIterator();
+        while (top.size() < k && iterator.hasNext()) {
+            Counter<K> counter = iterator.next();
+            top.add(new Entry<>(counter.key, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    /**
+     * Наибольшее возможное завышение счетчика скетча, построенного без {@link #merge},
+     * и наибольшее число появлений ключа, которого нет среди счетчиков; 0, пока счетчики
+     * точные. После объединения скетчей завышение каждого ключа ограничено его
+     * {@link Entry#error()}.
+     */
+    public long errorBound() {
+        return counters.size() < capacity ? 0 : byCount.first().count;
+    }
+
+    /**
+     * Суммарный вес всех добавленных ключей.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Ключ со счетчиком. Истинное число появлений ключа лежит в {@code [count - error, count]}.
+     */
+    public record Entry<K>(K key, long count, long error) {
+    }
+
+    private void add(K key, long weight, long error) {
+        total += weight;
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+            counter.error += error;
+            byCount.add(counter);
+            return;
+        }
+
+        long inherited = 0;
+        if (counters.size() == capacity) {
+            Counter<K> min = byCount.pollFirst();
+            counters.remove(min.key);
+            inherited = min.count;
+        }
+        counter = new Counter<>(key, inherited + weight, inherited + error, sequence++);
+        counters.put(key, counter);
+        byCount.add(counter);
+    }
+
+    private static final class Counter<K> {
+        private final K key;
+        private final long sequence;
+        private long count;
+        private long error;
+
+        private Counter(K key, long count, long error, long sequence) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.practicum.storage;
+
+import ru.practicum.ViewStatsDto;
+import ru.practicum.model.Hit;
+import ru.practicum.model.BucketViews;
+import ru.practicum.model.IpRange;
+import ru.practicum.model.TimeBucket;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище просмотров: запись и подсчет статистики. Реализация выбирается
+ * профилем Spring: по умолчанию {@link JpaHitStorage} (PostgreSQL), с профилем
+ * {@code segment} — {@link ru.practicum.storage.segment.SegmentHitStorage} (файлы сегментов).
+ *
+ * <p>Диапазоны [start, end] включают обе границы, параметры уже проверены
+ * вызывающим кодом. Результаты статистики отсортированы по убыванию просмотров.
+ */
+public interface HitStorage {
+    /**
+     * Записывает один просмотр.
+     *
+     * @return записанный просмотр с присвоенным идентификатором
+     */
+    Hit save(Hit hit);
+
+    /**
+     * Записывает пачку просмотров, пришедшую в запросе.
+     *
+     * @return число записанных просмотров
+     */
+    int saveAll(List<Hit> hits);
+
+    /**
+     * Записывает пачку просмотров из буфера {@link ru.practicum.ingest.HitBuffer}
+     * самым быстрым доступным способом.
+     */
+    void copyAll(List<Hit> hits);
+
+    /**
+     * Записывает пачку, как {@link #copyAll(List)}, и выполняет {@code inTransaction}
+     * в той же транзакции: если {@code inTransaction} бросит исключение, просмотры
+     * не будут записаны.
+     */
+    void copyAll(List<Hit> hits, Runnable inTransaction);
+
+    /**
+     * @param uris        URI, по которым нужна статистика, или {@code null}, если по всем
+     * @param approximate оценить число уникальных IP с погрешностью HyperLogLog
+     * @throws ru.practicum.exception.ValidationException если точное число уникальных IP
+     *                                                    за диапазон посчитать нельзя
+     */
+    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                boolean approximate);
+
+    /**
+     * Готовит выгрузку той же статистики, что {@link #getStats}, по одной строке. Все,
+     * что не требует чтения строк результата, выполняется сразу; строки читаются при
+     * вызове {@link StatsStream#forEach}.
+     */
+    StatsStream streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            boolean approximate);
+
+    /**
+     * Статистика по URI, у каждого из которых свое начало диапазона {@code starts}, с общим
+     * концом {@code end}. По умолчанию URI с одинаковым началом считаются одним вызовом
+     * {@link #getStats}.
+     *
+     * @param starts      начало диапазона для каждого URI, не позже {@code end}
+     * @param approximate оценивать уникальные IP по скетчам там, где исходных просмотров
+     *                    уже нет; хранилище без свертки этот флаг не использует
+     */
+    default List<ViewStatsDto> getStatsSince(Map<String, LocalDateTime> starts, LocalDateTime end, boolean unique,
+                                             boolean approximate) {
+        Map<LocalDateTime, List<String>> urisByStart = starts.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+        List<ViewStatsDto> stats = new ArrayList<>();
+        urisByStart.forEach((start, uris) -> stats.addAll(getStats(start, end, uris, unique, false)));
+        stats.sort(Comparator.comparingLong(ViewStatsDto::getHits).reversed());
+        return stats;
+    }
+
+    /**
+     * Статистика по просмотрам с адресов из диапазона {@code network}.
+     */
+    List<ViewStatsDto> getNetworkStats(LocalDateTime start, LocalDateTime end, IpRange network, List<String> uris,
+                                       boolean unique);
+
+    /**
+     * Просмотры по корзинам шага {@code bucket} за один проход. Крайние корзины
+     * учитывают только просмотры внутри [start, end], корзины без просмотров не возвращаются.
+     *
+     * @param uris URI, по которым нужна статистика, или {@code null}, если по всем
+     */
+    List<BucketViews> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, TimeBucket bucket);
+}
@@ -0,0 +1,575 @@
+package ru.practicum.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.BucketViews;
+import ru.practicum.model.Hit;
+import ru.practicum.model.IpRange;
+import ru.practicum.model.TimeBucket;
+import ru.practicum.model.TimeRange;
+import ru.practicum.model.UriBucketStats;
+import ru.practicum.model.UriKey;
+import ru.practicum.model.UriStats;
+import ru.practicum.model.UriVisitors;
+import ru.practicum.model.Visit;
+import ru.practicum.repository.CompactionRepository;
+import ru.practicum.repository.HitBatchRepository;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.repository.RollupRepository.Granularity;
+import ru.practicum.repository.SketchRepository;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.repository.UriDictionary;
+import ru.practicum.repository.UriStartStatsRepository;
+import ru.practicum.repository.VisitorRepository;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранение просмотров в PostgreSQL: таблица {@code hits} и построенные по ней
+ * агрегаты, см. {@link RollupRepository}, {@link SketchRepository},
+ * {@link VisitorRepository}. Каждый метод записи выполняется в собственной
+ * транзакции, поэтому вызывающий код не держит соединение из пула, пока
+ * ожидает заполнения буфера или подтверждения записи. В той же транзакции
+ * обновляются агрегаты. Идентификаторы URI назначаются до начала транзакции,
+ * см. {@link UriDictionary}.
+ *
+ * <p>Раньше границы свертки ({@link CompactionRepository}) исходных просмотров
+ * и поминутных агрегатов нет. Эта часть диапазона считается по часам из
+ * {@code hits_hour}, начавшимся в диапазоне, поэтому неполный первый час не
+ * учитывается; статистика по подсети и минутные корзины ряда ее не учитывают.
+ * Уникальные IP за нее можно только оценить по скетчам: без {@code approximate}
+ * такой запрос отклоняется.
+ */
+@Component
+@Profile("!segment")
+@RequiredArgsConstructor
+public class JpaHitStorage implements HitStorage {
+    /**
+     * Сколько URI с просмотрами до начала диапазона еще досчитывать точным запросом
+     * по списку URI; при большем числе точно пересчитывается весь диапазон.
+     */
+    private static final int MAX_RECOUNTED_URIS = 1000;
+
+    /**
+     * По сколько строк потоковой выгрузки за раз подставляются URI из словаря.
+     */
+    private static final int STREAM_CHUNK_SIZE = 1000;
+
+    private final TransactionTemplate transactionTemplate;
+    private final UriDictionary uriDictionary;
+    private final StatsRepository statsRepository;
+    private final HitBatchRepository hitBatchRepository;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final VisitorRepository visitorRepository;
+    private final CompactionRepository compactionRepository;
+    private final UriStartStatsRepository uriStartStatsRepository;
+
+    /**
+     * С какой длины диапазона уникальные IP без фильтра по URI считаются по таблице
+     * посетителей: она читается за всю историю, и на коротком диапазоне подсчет по
+     * исходным просмотрам быстрее.
+     */
+    @Value("${stats.visitors.unfiltered-min-range:7d}")
+    private Duration visitorsUnfilteredMinRange;
+
+    @Override
+    public Hit save(Hit hit) {
+        uriDictionary.assignIds(List.of(hit));
+        return transactionTemplate.execute(status -> {
+            Hit savedHit = statsRepository.save(hit);
+            updateAggregates(List.of(savedHit));
+            return savedHit;
+        });
+    }
+
+    @Override
+    public int saveAll(List<Hit> hits) {
+        uriDictionary.assignIds(hits);
+        Integer saved = transactionTemplate.execute(status -> {
+            int rows = hitBatchRepository.saveAll(hits);
+            updateAggregates(hits);
+            return rows;
+        });
+        return saved != null ? saved : 0;
+    }
+
+    @Override
+    public void copyAll(List<Hit> hits) {
+        copyAll(hits, () -> { });
+    }
+
+    @Override
+    public void copyAll(List<Hit> hits, Runnable inTransaction) {
+        uriDictionary.assignIds(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            hitBatchRepository.copyAll(hits);
+            updateAggregates(hits);
+            inTransaction.run();
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                       boolean approximate) {
+        List<Integer> uriIds = findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+
+        TimeRange compacted = compactedHours(start, end);
+        if (unique && !approximate && compacted != null) {
+            throw exactUniqueUnavailable();
+        }
+        return toViewStats(getStats(start, end, uriIds, unique, approximate, compacted));
+    }
+
+    /**
+     * URI фильтра и граница свертки читаются сразу. Строки читаются курсором в отдельной
+     * транзакции только для чтения при вызове {@link StatsStream#forEach}.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public StatsStream streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                   boolean approximate) {
+        List<Integer> uriIds = findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return consumer -> { };
+        }
+
+        TimeRange compacted = compactedHours(start, end);
+        if (unique && !approximate && compacted != null) {
+            throw exactUniqueUnavailable();
+        }
+        if (unique && approximate || compacted != null) {
+            // скетчи и свернутые часы объединяются в памяти, поэтому статистика собирается
+            // целиком сразу и только выдается по строке
+            return toViewStats(getStats(start, end, uriIds, unique, approximate, compacted))::forEach;
+        }
+        return consumer -> readOnlyTransaction().executeWithoutResult(status -> {
+            try (Stream<UriStats> stats = unique ?
+                    streamUniqueStats(start, end, uriIds) :
+                    streamRolledUpStats(start, end, uriIds)) {
+                Iterator<UriStats> iterator = stats.iterator();
+                List<UriStats> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() == STREAM_CHUNK_SIZE || !iterator.hasNext()) {
+                        withUris(chunk).forEach(consumer);
+                        chunk.clear();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Считает все URI одним запросом {@link UriStartStatsRepository}: просмотры — по
+     * {@code hits_hour} и исходным просмотрам на краях, уникальные IP — точно по исходным
+     * просмотрам. URI, диапазон которых начинается раньше границы свертки, считаются
+     * как в {@link #getStats}, по группам с одинаковым началом; уникальные IP для них
+     * только оцениваются, поэтому без {@code approximate} такой запрос отклоняется.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStatsDto> getStatsSince(Map<String, LocalDateTime> starts, LocalDateTime end, boolean unique,
+                                            boolean approximate) {
+        Map<String, Integer> uriIds = uriDictionary.findIds(starts.keySet());
+        LocalDateTime boundary = compactionRepository.findBoundary().orElse(null);
+        Map<Integer, LocalDateTime> uncompacted = new HashMap<>();
+        Map<LocalDateTime, List<Integer>> compacted = new HashMap<>();
+        uriIds.forEach((uri, uriId) -> {
+            LocalDateTime start = starts.get(uri);
+            if (boundary != null && start.isBefore(boundary)) {
+                compacted.computeIfAbsent(start, key -> new ArrayList<>()).add(uriId);
+            } else {
+                uncompacted.put(uriId, start);
+            }
+        });
+        if (unique && !approximate && !compacted.isEmpty()) {
+            throw exactUniqueUnavailable();
+        }
+
+        List<UriStats> stats = new ArrayList<>(unique ?
+                uriStartStatsRepository.countUnique(uncompacted, exclusiveEnd(end)) :
+                uriStartStatsRepository.count(uncompacted, exclusiveEnd(end)));
+        compacted.forEach((start, ids) ->
+                stats.addAll(getStats(start, end, ids, unique, false, compactedHours(start, end))));
+        return toViewStats(stats);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStatsDto> getNetworkStats(LocalDateTime start, LocalDateTime end, IpRange network,
+                                              List<String> uris, boolean unique) {
+        List<UriStats> stats;
+        List<Integer> uriIds = findUriIds(uris);
+        if (uriIds != null) {
+            if (uriIds.isEmpty()) {
+                return List.of();
+            }
+            stats = unique ?
+                    statsRepository.getStatsUniqueIpForNetworkAndUris(start, end, network.low(), network.high(), uriIds) :
+                    statsRepository.getStatsAllForNetworkAndUris(start, end, network.low(), network.high(), uriIds);
+        } else {
+            stats = unique ?
+                    statsRepository.getStatsUniqueIpForNetwork(start, end, network.low(), network.high()) :
+                    statsRepository.getStatsAllForNetwork(start, end, network.low(), network.high());
+        }
+        return toViewStats(stats);
+    }
+
+    /**
+     * Считает ряд одним запросом по агрегатам так же, как {@link #getRolledUpStats}:
+     * неполные минуты на краях диапазона — по исходным просмотрам, остальное — по
+     * {@code hits_minute} и, если шаг не меньше часа, по {@code hits_hour}. Свернутые
+     * часы берутся из {@code hits_hour} при любом шаге.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<BucketViews> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                           TimeBucket bucket) {
+        List<Integer> uriIds = findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+
+        List<TimeRange> raw = new ArrayList<>();
+        List<TimeRange> minutes = new ArrayList<>();
+        List<TimeRange> hours = new ArrayList<>();
+        LocalDateTime from = start;
+        TimeRange compacted = compactedHours(start, end);
+        if (compacted != null) {
+            hours.add(compacted);
+            from = compacted.to();
+        }
+        if (from.isBefore(exclusiveEnd(end))) {
+            RollupPlan plan = RollupPlan.of(from, end);
+            if (plan == null) {
+                raw.add(new TimeRange(from, exclusiveEnd(end)));
+            } else if (bucket == TimeBucket.MINUTE) {
+                raw.addAll(List.of(plan.head(), plan.tail()));
+                minutes.add(new TimeRange(plan.head().to(), plan.tail().from()));
+            } else {
+                raw.addAll(List.of(plan.head(), plan.tail()));
+                minutes.addAll(List.of(plan.minuteHead(), plan.minuteTail()));
+                hours.add(plan.hours());
+            }
+        }
+        List<UriBucketStats> stats = rollupRepository.series(bucket, raw, minutes, hours, uriIds);
+
+        Map<Integer, String> uriNames = uriDictionary.findUris(stats.stream()
+                .map(UriBucketStats::uriId)
+                .collect(Collectors.toSet()));
+        return stats.stream()
+                .map(entry -> new BucketViews(entry.app(), uriNames.get(entry.uriId()), entry.bucket(), entry.hits()))
+                .toList();
+    }
+
+    private static ValidationException exactUniqueUnavailable() {
+        return new ValidationException("Диапазон начинается раньше границы свертки просмотров: точное число " +
+                "уникальных IP недоступно. Укажите approximate=true или начало диапазона не раньше границы.");
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        return readOnly;
+    }
+
+    private void updateAggregates(List<Hit> hits) {
+        rollupRepository.increment(hits);
+        sketchRepository.add(hits);
+        visitorRepository.add(hits);
+    }
+
+    /**
+     * @param compacted свернутые часы диапазона, см. {@link #compactedHours}
+     */
+    private List<UriStats> getStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds, boolean unique,
+                                    boolean approximate, TimeRange compacted) {
+        if (unique && (approximate || compacted != null)) {
+            return getApproximateUniqueStats(start, end, uriIds, compacted);
+        } else if (unique && uriIds == null && Duration.between(start, end).compareTo(visitorsUnfilteredMinRange) < 0) {
+            return statsRepository.getStatsUniqueIp(start, end);
+        } else if (unique) {
+            return getVisitorStats(start, end, uriIds);
+        }
+        if (compacted == null) {
+            return getRolledUpStats(start, end, uriIds);
+        }
+        List<UriStats> hours = rollupRepository.sum(Granularity.HOUR, List.of(compacted), uriIds);
+        return compacted.to().isBefore(exclusiveEnd(end)) ?
+                mergeStats(hours, getRolledUpStats(compacted.to(), end, uriIds)) :
+                hours;
+    }
+
+    /**
+     * Корзины {@code hits_hour}, которые нужно взять за свернутую часть диапазона
+     * [start, end]: часы, начавшиеся в диапазоне раньше границы свертки. Конец
+     * интервала — граница свертки или исключающий конец диапазона, если он раньше;
+     * с него начинается несвернутая часть. Неполный час перед первой корзиной не
+     * учитывается: ни исходных просмотров, ни минутных корзин за него уже нет.
+     *
+     * @return интервал корзин или {@code null}, если диапазон начинается не раньше границы
+     */
+    private TimeRange compactedHours(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime boundary = compactionRepository.findBoundary().orElse(null);
+        if (boundary == null || !start.isBefore(boundary)) {
+            return null;
+        }
+        LocalDateTime to = exclusiveEnd(end);
+        return new TimeRange(Granularity.HOUR.ceil(start), to.isBefore(boundary) ? to : boundary);
+    }
+
+    /**
+     * Считает просмотры за [start, end] по агрегатам: целые часы берутся из
+     * {@code hits_hour}, целые минуты по краям часов из {@code hits_minute}, и только
+     * неполные минуты на краях диапазона считаются по исходным просмотрам.
+     */
+    private List<UriStats> getRolledUpStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        RollupPlan plan = RollupPlan.of(start, end);
+        if (plan == null) {
+            return uriIds != null ?
+                    statsRepository.getStatsAllForUris(start, end, uriIds) :
+                    statsRepository.getStatsAll(start, end);
+        }
+
+        List<UriStats> edges = uriIds != null ?
+                statsRepository.getStatsAllForRangesAndUris(plan.head().from(), plan.head().to(),
+                        plan.tail().from(), plan.tail().to(), uriIds) :
+                statsRepository.getStatsAllForRanges(plan.head().from(), plan.head().to(),
+                        plan.tail().from(), plan.tail().to());
+
+        return mergeStats(edges,
+                rollupRepository.sum(Granularity.MINUTE, List.of(plan.minuteHead(), plan.minuteTail()), uriIds),
+                rollupRepository.sum(Granularity.HOUR, List.of(plan.hours()), uriIds));
+    }
+
+    /**
+     * То же, что {@link #getRolledUpStats}, но одним запросом с сортировкой в БД,
+     * чтобы строки можно было читать курсором.
+     */
+    private Stream<UriStats> streamRolledUpStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        RollupPlan plan = RollupPlan.of(start, end);
+        if (plan == null) {
+            return uriIds != null ?
+                    statsRepository.streamStatsAllForUris(start, end, uriIds) :
+                    statsRepository.streamStatsAll(start, end);
+        }
+
+        Stream<StatsRepository.UriStatsRow> rows = uriIds != null ?
+                statsRepository.streamRolledUpStatsForUris(plan.head().from(), plan.head().to(),
+                        plan.tail().from(), plan.tail().to(),
+                        plan.minuteHead().from(), plan.minuteHead().to(),
+                        plan.minuteTail().from(), plan.minuteTail().to(),
+                        plan.hours().from(), plan.hours().to(), uriIds) :
+                statsRepository.streamRolledUpStats(plan.head().from(), plan.head().to(),
+                        plan.tail().from(), plan.tail().to(),
+                        plan.minuteHead().from(), plan.minuteHead().to(),
+                        plan.minuteTail().from(), plan.minuteTail().to(),
+                        plan.hours().from(), plan.hours().to());
+        return rows.map(StatsRepository.UriStatsRow::toUriStats);
+    }
+
+    /**
+     * Уникальные IP для потоковой выгрузки считаются точно по исходным просмотрам:
+     * подсчет по таблице посетителей досчитывает часть URI отдельно и не дает
+     * общего порядка строк, который можно было бы читать курсором.
+     */
+    private Stream<UriStats> streamUniqueStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        return uriIds != null ?
+                statsRepository.streamStatsUniqueIpForUris(start, end, uriIds) :
+                statsRepository.streamStatsUniqueIp(start, end);
+    }
+
+    /**
+     * Точно считает уникальные IP за [start, end] по таблице посетителей. Для URI,
+     * впервые просмотренных не раньше start, уникальные IP за диапазон — это
+     * посетители, впервые пришедшие не позже end. Остальные URI досчитываются
+     * по исходным просмотрам. Без фильтра по URI таблица читается целиком, поэтому
+     * так считаются только диапазоны не короче {@code stats.visitors.unfiltered-min-range}.
+     */
+    private List<UriStats> getVisitorStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        List<UriStats> counted = new ArrayList<>();
+        Set<UriKey> recounted = new HashSet<>();
+        for (UriVisitors visitors : visitorRepository.count(end, uriIds)) {
+            if (visitors.firstSeen().isBefore(start)) {
+                recounted.add(visitors.key());
+            } else if (visitors.visitors() > 0) {
+                counted.add(new UriStats(visitors.app(), visitors.uriId(), visitors.visitors()));
+            }
+        }
+        if (recounted.isEmpty()) {
+            return counted;
+        }
+
+        if (uriIds == null && recounted.size() > MAX_RECOUNTED_URIS) {
+            return statsRepository.getStatsUniqueIp(start, end);
+        }
+        List<Integer> recountedUriIds = recounted.stream()
+                .map(UriKey::uriId)
+                .distinct()
+                .toList();
+        List<UriStats> exact = statsRepository.getStatsUniqueIpForUris(start, end, recountedUriIds).stream()
+                .filter(stats -> recounted.contains(stats.key()))
+                .toList();
+        return mergeStats(counted, exact);
+    }
+
+    /**
+     * Оценивает число уникальных IP за [start, end]: для целых и свернутых часов
+     * объединяет скетчи из {@code hits_hll}, а IP-адреса неполных часов на краях
+     * несвернутой части и часов, скетчи которых еще не построены
+     * ({@link ru.practicum.compaction.HitSketcher}), добавляет в скетч из исходных
+     * просмотров. Диапазон без целых и свернутых часов считается точно.
+     */
+    private List<UriStats> getApproximateUniqueStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds,
+                                                     TimeRange compacted) {
+        LocalDateTime from = start;
+        LocalDateTime to = exclusiveEnd(end);
+        List<TimeRange> hours = new ArrayList<>();
+        if (compacted != null) {
+            hours.add(compacted);
+            from = compacted.to();
+        }
+        LocalDateTime hourFrom = Granularity.HOUR.ceil(from);
+        LocalDateTime hourTo = Granularity.HOUR.floor(to);
+        LocalDateTime sketchedBefore = sketchRepository.findSketchedBefore()
+                .orElse(Granularity.HOUR.floor(LocalDateTime.now()).minusHours(1));
+        if (sketchedBefore.isBefore(hourTo)) {
+            hourTo = sketchedBefore;
+        }
+        if (hourFrom.isBefore(hourTo)) {
+            hours.add(new TimeRange(hourFrom, hourTo));
+        } else if (hours.isEmpty()) {
+            return uriIds != null ?
+                    statsRepository.getStatsUniqueIpForUris(start, end, uriIds) :
+                    statsRepository.getStatsUniqueIp(start, end);
+        } else {
+            hourFrom = from;
+            hourTo = from;
+        }
+
+        Map<UriKey, HyperLogLog> sketches = sketchRepository.union(hours, uriIds);
+        if (from.isBefore(to)) {
+            List<Visit> edges = uriIds != null ?
+                    statsRepository.getVisitsForRangesAndUris(from, hourFrom, hourTo, to, uriIds) :
+                    statsRepository.getVisitsForRanges(from, hourFrom, hourTo, to);
+            for (Visit visit : edges) {
+                sketches.computeIfAbsent(visit.key(), key -> new HyperLogLog()).add(IpMapper.toText(visit.ip()));
+            }
+        }
+
+        return sketches.entrySet().stream()
+                .map(entry -> new UriStats(entry.getKey().app(), entry.getKey().uriId(), entry.getValue().estimate()))
+                .toList();
+    }
+
+    @SafeVarargs
+    private static List<UriStats> mergeStats(List<UriStats>... parts) {
+        Map<UriKey, UriStats> merged = new HashMap<>();
+        for (List<UriStats> part : parts) {
+            for (UriStats stats : part) {
+                merged.merge(stats.key(), stats, (left, right) ->
+                        new UriStats(left.app(), left.uriId(), left.hits() + right.hits()));
+            }
+        }
+        return List.copyOf(merged.values());
+    }
+
+    /**
+     * Заменяет идентификаторы URI строками из словаря и сортирует по убыванию просмотров.
+     */
+    private List<ViewStatsDto> toViewStats(List<UriStats> stats) {
+        return withUris(stats.stream()
+                .sorted(Comparator.comparingLong(UriStats::hits).reversed())
+                .toList());
+    }
+
+    /**
+     * Заменяет идентификаторы URI строками из словаря, сохраняя порядок строк.
+     */
+    private List<ViewStatsDto> withUris(List<UriStats> stats) {
+        Map<Integer, String> uris = uriDictionary.findUris(stats.stream()
+                .map(UriStats::uriId)
+                .collect(Collectors.toSet()));
+        return stats.stream()
+                .map(entry -> new ViewStatsDto(entry.app(), uris.get(entry.uriId()), entry.hits()))
+                .toList();
+    }
+
+    /**
+     * Идентификаторы URI из фильтра. {@code null}, если фильтра по URI нет; пустой
+     * список, если ни одного из URI нет в словаре, то есть и просмотров у них нет.
+     */
+    private List<Integer> findUriIds(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        return List.copyOf(new HashSet<>(uriDictionary.findIds(uris).values()));
+    }
+
+    /**
+     * Исключающая граница диапазона, заканчивающегося в {@code end} включительно.
+     * PostgreSQL хранит время с точностью до микросекунды, а драйвер округляет
+     * наносекунды, поэтому прибавляется микросекунда, а не наносекунда.
+     */
+    private static LocalDateTime exclusiveEnd(LocalDateTime end) {
+        return end.plus(1, ChronoUnit.MICROS);
+    }
+
+    /**
+     * Разбиение диапазона [start, end] для подсчета по агрегатам: неполные минуты
+     * по краям ({@code head}, {@code tail}) считаются по исходным просмотрам, целые
+     * минуты по краям часов — по {@code hits_minute}, целые часы — по {@code hits_hour}.
+     * Пустые интервалы имеют from = to.
+     */
+    private record RollupPlan(TimeRange head, TimeRange tail, TimeRange minuteHead, TimeRange minuteTail,
+                              TimeRange hours) {
+
+        /**
+         * @return разбиение или {@code null}, если в диапазоне нет ни одной целой минуты
+         */
+        static RollupPlan of(LocalDateTime start, LocalDateTime end) {
+            LocalDateTime to = exclusiveEnd(end);
+            LocalDateTime minuteFrom = Granularity.MINUTE.ceil(start);
+            LocalDateTime minuteTo = Granularity.MINUTE.floor(to);
+            if (!minuteFrom.isBefore(minuteTo)) {
+                return null;
+            }
+
+            TimeRange head = new TimeRange(start, minuteFrom);
+            TimeRange tail = new TimeRange(minuteTo, to);
+            LocalDateTime hourFrom = Granularity.HOUR.ceil(start);
+            LocalDateTime hourTo = Granularity.HOUR.floor(to);
+            if (!hourFrom.isBefore(hourTo)) {
+                return new RollupPlan(head, tail, new TimeRange(minuteFrom, minuteTo),
+                        new TimeRange(minuteTo, minuteTo), new TimeRange(minuteTo, minuteTo));
+            }
+            return new RollupPlan(head, tail, new TimeRange(minuteFrom, hourFrom), new TimeRange(hourTo, minuteTo),
+                    new TimeRange(hourFrom, hourTo));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.storage;
+
+import ru.practicum.ViewStatsDto;
+
+import java.util.function.Consumer;
+
+/**
+ * Подготовленная потоковая выгрузка статистики, см. {@link HitStorage#streamStats}.
+ * URI фильтра уже найдены в словаре, а статистика, которую все равно нужно собрать
+ * в памяти, уже посчитана, поэтому ошибки этих шагов обнаруживаются до начала ответа.
+ */
+@FunctionalInterface
+public interface StatsStream {
+    /**
+     * Передает строки статистики {@code consumer} по одной, по убыванию просмотров.
+     */
+    void forEach(Consumer<ViewStatsDto> consumer);
+}
@@ -0,0 +1,154 @@
+package ru.practicum.storage.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Открытый сегмент: последние просмотры в колонках в памяти и журнал строк на диске.
+ *
+ * <p>Журнал — записи фиксированной длины {@value #RECORD_SIZE} байт (время в микросекундах,
+ * приложение, URI, IP, признак IPv6), только дописывается. При открытии журнал читается
+ * заново, недописанная при сбое последняя запись отбрасывается. Когда строк становится
+ * достаточно, сегмент запечатывается в {@link Segment}, а журнал удаляется.
+ *
+ * <p>Запись — под внешней блокировкой. Колонки не переиспользуются после роста, поэтому
+ * {@link #snapshot()}, взятый под той же блокировкой, можно читать без нее.
+ */
+final class ActiveSegment implements Closeable {
+    static final int RECORD_SIZE = Long.BYTES + Short.BYTES + Integer.BYTES + Integer.BYTES + 1;
+
+    private final long generation;
+    private final Path file;
+    private final FileChannel channel;
+    private final boolean fsync;
+    private long[] timestamps = new long[1024];
+    private short[] apps = new short[1024];
+    private int[] uris = new int[1024];
+    private int[] ips = new int[1024];
+    private byte[] ipv6 = new byte[1024];
+    private int size;
+
+    private ActiveSegment(long generation, Path file, FileChannel channel, boolean fsync) {
+        this.generation = generation;
+        this.file = file;
+        this.channel = channel;
+        this.fsync = fsync;
+    }
+
+    static ActiveSegment open(Path file, long generation, boolean fsync) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ActiveSegment segment = new ActiveSegment(generation, file, channel, fsync);
+        segment.replay();
+        return segment;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Дописывает {@code count} строк в журнал, затем в колонки.
+     */
+    void append(long[] rowTimestamps, short[] rowApps, int[] rowUris, int[] rowIps, boolean[] rowIpv6,
+                int count) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(count * RECORD_SIZE);
+        for (int i = 0; i < count; i++) {
+            records.putLong(rowTimestamps[i])
+                    .putShort(rowApps[i])
+                    .putInt(rowUris[i])
+                    .putInt(rowIps[i])
+                    .put((byte) (rowIpv6[i] ? 1 : 0));
+        }
+        records.flip();
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+
+        for (int i = 0; i < count; i++) {
+            add(rowTimestamps[i], rowApps[i], rowUris[i], rowIps[i], rowIpv6[i]);
+        }
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(timestamps, apps, uris, ips, ipv6, size);
+    }
+
+    /**
+     * Закрывает и удаляет журнал после того, как строки сохранены в сегменте.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void replay() throws IOException {
+        long valid = channel.size() / RECORD_SIZE * RECORD_SIZE;
+        ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 4096);
+        long position = 0;
+        while (position < valid) {
+            records.clear().limit((int) Math.min(records.capacity(), valid - position));
+            while (records.hasRemaining()) {
+                if (channel.read(records, position + records.position()) < 0) {
+                    throw new IOException("Журнал сегмента укоротился при чтении: " + file);
+                }
+            }
+            records.flip();
+            while (records.hasRemaining()) {
+                add(records.getLong(), records.getShort(), records.getInt(), records.getInt(), records.get() != 0);
+            }
+            position += records.limit();
+        }
+        channel.truncate(valid);
+        channel.position(valid);
+    }
+
+    private void add(long timestamp, short app, int uri, int ip, boolean isIpv6) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            apps = Arrays.copyOf(apps, capacity);
+            uris = Arrays.copyOf(uris, capacity);
+            ips = Arrays.copyOf(ips, capacity);
+            ipv6 = Arrays.copyOf(ipv6, capacity);
+        }
+        timestamps[size] = timestamp;
+        apps[size] = app;
+        uris[size] = uri;
+        ips[size] = ip;
+        ipv6[size] = (byte) (isIpv6 ? 1 : 0);
+        size++;
+    }
+
+    /**
+     * Неизменяемый срез первых {@code size} строк, строки не упорядочены по времени.
+     */
+    record Snapshot(long[] timestamps, short[] apps, int[] uris, int[] ips, byte[] ipv6, int size) {
+        void scan(long from, long to, RowVisitor visitor) {
+            for (int row = 0; row < size; row++) {
+                long timestamp = timestamps[row];
+                if (timestamp >= from && timestamp <= to) {
+                    visitor.visit(timestamp, apps[row], uris[row], ips[row], ipv6[row] != 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.practicum.storage.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Словарь строк в файле: идентификатор строки — ее порядковый номер, начиная с 0.
+ *
+ * <p>Файл только дописывается записями {@code [длина int][UTF-8]}. Запись, недописанная
+ * из-за сбоя, при открытии отбрасывается: на нее еще не ссылается ни одна строка журнала,
+ * потому что новые строки словаря сохраняются раньше строк журнала.
+ *
+ * <p>Доступ защищен {@link ReentrantLock}, а не {@code synchronized}: новая строка
+ * дописывается в файл под блокировкой, и ожидающий виртуальный поток не должен
+ * занимать поток-носитель.
+ */
+final class Dictionary implements Closeable {
+    private final FileChannel channel;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Dictionary(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static Dictionary open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Dictionary dictionary = new Dictionary(channel);
+        dictionary.load();
+        return dictionary;
+    }
+
+    /**
+     * @return идентификатор строки или -1, если ее нет в словаре
+     */
+    int find(String value) {
+        lock.lock();
+        try {
+            return ids.getOrDefault(value, -1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Идентификатор строки; новая строка дописывается в файл. Для сохранности
+     * на диске после добавления нужен {@link #force()}.
+     */
+    int getOrAdd(String value) throws IOException {
+        lock.lock();
+        try {
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length)
+                    .putInt(bytes.length)
+                    .put(bytes)
+                    .flip();
+            while (entry.hasRemaining()) {
+                channel.write(entry);
+            }
+            return put(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String get(int id) {
+        lock.lock();
+        try {
+            return values.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return values.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        ByteBuffer data = ByteBuffer.allocate((int) size);
+        while (data.hasRemaining()) {
+            if (channel.read(data, data.position()) < 0) {
+                break;
+            }
+        }
+        data.flip();
+
+        int valid = 0;
+        while (data.remaining() >= Integer.BYTES) {
+            int length = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            data.get(bytes);
+            put(new String(bytes, StandardCharsets.UTF_8));
+            valid = data.position();
+        }
+        channel.truncate(valid);
+        channel.position(valid);
+    }
+
+    private int put(String value) {
+        int id = values.size();
+        values.add(value);
+        ids.put(value, id);
+        return id;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.practicum.storage.segment;
+
+import ru.practicum.sketch.Hashing;
+
+import java.util.Arrays;
+
+/**
+ * Счетчики по неотрицательным ключам {@code long} без упаковки в объекты: открытая
+ * адресация с линейным пробированием. Класс не потокобезопасен.
+ */
+final class LongLongMap {
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    LongLongMap() {
+        keys = new long[64];
+        values = new long[64];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    void add(long key, long delta) {
+        int mask = keys.length - 1;
+        int slot = (int) Hashing.mix64(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(Visitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                visitor.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                add(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Visitor {
+        void accept(long key, long value);
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.storage.segment;
+
+import ru.practicum.sketch.Hashing;
+
+import java.util.Arrays;
+
+/**
+ * Множество пар {@code (long, long)} с неотрицательным первым элементом без упаковки
+ * в объекты: открытая адресация с линейным пробированием. Класс не потокобезопасен.
+ */
+final class LongPairSet {
+    private static final long EMPTY = -1;
+
+    private long[] firsts;
+    private long[] seconds;
+    private int size;
+
+    LongPairSet() {
+        firsts = new long[64];
+        seconds = new long[64];
+        Arrays.fill(firsts, EMPTY);
+    }
+
+    /**
+     * @return {@code true}, если пары еще не было в множестве
+     */
+    boolean add(long first, long second) {
+        int mask = firsts.length - 1;
+        int slot = (int) Hashing.mix64(first ^ Hashing.mix64(second)) & mask;
+        while (firsts[slot] != EMPTY) {
+            if (firsts[slot] == first && seconds[slot] == second) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        firsts[slot] = first;
+        seconds[slot] = second;
+        if (++size * 2 > firsts.length) {
+            grow();
+        }
+        return true;
+    }
+
+    private void grow() {
+        long[] oldFirsts = firsts;
+        long[] oldSeconds = seconds;
+        firsts = new long[oldFirsts.length * 2];
+        seconds = new long[oldSeconds.length * 2];
+        Arrays.fill(firsts, EMPTY);
+        size = 0;
+        for (int slot = 0; slot < oldFirsts.length; slot++) {
+            if (oldFirsts[slot] != EMPTY) {
+                add(oldFirsts[slot], oldSeconds[slot]);
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ru.practicum.storage.segment;
+
+/**
+ * Получатель строк при сканировании сегмента: значения колонок одного просмотра.
+ */
+@FunctionalInterface
+interface RowVisitor {
+    /**
+     * @param timestamp время просмотра в микросекундах от начала эпохи
+     * @param app       идентификатор приложения в словаре
+     * @param uri       идентификатор URI в словаре
+     * @param ip        адрес IPv4 как 32-битное число или, при {@code ipv6}, идентификатор адреса в словаре IPv6
+     * @param ipv6      адрес просмотра — IPv6
+     */
+    void visit(long timestamp, int app, int uri, int ip, boolean ipv6);
+}
@@ -0,0 +1,249 @@
+package ru.practicum.storage.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Запечатанный сегмент: неизменяемый файл просмотров, упорядоченных по времени,
+ * разложенных по колонкам и отображенных в память только для чтения.
+ *
+ * <p>Формат файла (big-endian):
+ * <pre>
+ * заголовок   "HSEG", версия, число строк, min и max времени, число блоков
+ * индекс      на каждый блок из {@value #BLOCK_ROWS} строк: время первой строки и смещение в колонке времени
+ * время       длина колонки; разности соседних значений в микросекундах, varint;
+ *             время первой строки блока есть только в индексе
+ * приложение  short на строку, идентификатор из словаря
+ * URI         int на строку, идентификатор из словаря
+ * IP          int на строку: адрес IPv4 или идентификатор адреса в словаре IPv6
+ * IPv6        битовая карта строк с адресом IPv6, long на 64 строки
+ * </pre>
+ * По индексу сканирование начинается с блока, где может быть начало диапазона, и
+ * заканчивается на первой строке позже его конца.
+ */
+final class Segment {
+    static final int BLOCK_ROWS = 1024;
+
+    private static final int MAGIC = 0x48534547;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final ByteBuffer data;
+    private final int rows;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int blocks;
+    private final int timestampsOffset;
+    private final int appsOffset;
+    private final int urisOffset;
+    private final int ipsOffset;
+    private final int ipv6Offset;
+
+    private Segment(ByteBuffer data, Path file) throws IOException {
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Неизвестный формат сегмента: " + file);
+        }
+        this.data = data;
+        this.rows = data.getInt(8);
+        this.minTimestamp = data.getLong(12);
+        this.maxTimestamp = data.getLong(20);
+        this.blocks = data.getInt(28);
+        int timestampsLength = data.getInt(HEADER_SIZE + blocks * INDEX_ENTRY_SIZE);
+        this.timestampsOffset = HEADER_SIZE + blocks * INDEX_ENTRY_SIZE + Integer.BYTES;
+        this.appsOffset = timestampsOffset + timestampsLength;
+        this.urisOffset = appsOffset + rows * Short.BYTES;
+        this.ipsOffset = urisOffset + rows * Integer.BYTES;
+        this.ipv6Offset = ipsOffset + rows * Integer.BYTES;
+        if (ipv6Offset + ipv6Words(rows) * Long.BYTES != data.limit()) {
+            throw new IOException("Сегмент поврежден: " + file);
+        }
+    }
+
+    static Segment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        }
+    }
+
+    /**
+     * Сохраняет строки в файл сегмента: сначала во временный файл, затем атомарно
+     * переименовывает его, чтобы после сбоя не остался недописанный сегмент.
+     */
+    static Segment write(Path file, ActiveSegment.Snapshot snapshot) throws IOException {
+        int rows = snapshot.size();
+        int[] order = sortByTimestamp(snapshot.timestamps(), rows);
+        int blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+
+        ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY_SIZE);
+        byte[] timestamps = new byte[Math.max(16, rows * 2)];
+        int length = 0;
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            long timestamp = snapshot.timestamps()[order[i]];
+            if (i % BLOCK_ROWS == 0) {
+                index.putLong(timestamp).putInt(length);
+                previous = timestamp;
+                continue;
+            }
+            if (length + 10 > timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, timestamps.length * 2);
+            }
+            long delta = timestamp - previous;
+            while ((delta & ~0x7fL) != 0) {
+                timestamps[length++] = (byte) ((delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            timestamps[length++] = (byte) delta;
+            previous = timestamp;
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + index.capacity() + Integer.BYTES + length
+                + rows * (Short.BYTES + 2 * Integer.BYTES) + ipv6Words(rows) * Long.BYTES);
+        data.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(rows)
+                .putLong(rows == 0 ? 0 : snapshot.timestamps()[order[0]])
+                .putLong(rows == 0 ? 0 : snapshot.timestamps()[order[rows - 1]])
+                .putInt(blocks)
+                .put(index.flip())
+                .putInt(length)
+                .put(timestamps, 0, length);
+        for (int i = 0; i < rows; i++) {
+            data.putShort(snapshot.apps()[order[i]]);
+        }
+        for (int i = 0; i < rows; i++) {
+            data.putInt(snapshot.uris()[order[i]]);
+        }
+        for (int i = 0; i < rows; i++) {
+            data.putInt(snapshot.ips()[order[i]]);
+        }
+        long[] ipv6 = new long[ipv6Words(rows)];
+        for (int i = 0; i < rows; i++) {
+            if (snapshot.ipv6()[order[i]] != 0) {
+                ipv6[i >>> 6] |= 1L << i;
+            }
+        }
+        for (long word : ipv6) {
+            data.putLong(word);
+        }
+        data.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * Передает {@code visitor} строки со временем в {@code [from, to]} по возрастанию времени.
+     */
+    void scan(long from, long to, RowVisitor visitor) {
+        if (rows == 0 || to < minTimestamp || from > maxTimestamp) {
+            return;
+        }
+
+        int block = findBlock(from);
+        int position = timestampsOffset + data.getInt(HEADER_SIZE + block * INDEX_ENTRY_SIZE + Long.BYTES);
+        long timestamp = 0;
+        for (int row = block * BLOCK_ROWS; row < rows; row++) {
+            if (row % BLOCK_ROWS == 0) {
+                timestamp = data.getLong(HEADER_SIZE + row / BLOCK_ROWS * INDEX_ENTRY_SIZE);
+            } else {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data.get(position++);
+                    delta |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                timestamp += delta;
+            }
+
+            if (timestamp > to) {
+                return;
+            }
+            if (timestamp >= from) {
+                visitor.visit(timestamp, data.getShort(appsOffset + row * Short.BYTES),
+                        data.getInt(urisOffset + row * Integer.BYTES),
+                        data.getInt(ipsOffset + row * Integer.BYTES),
+                        (data.getLong(ipv6Offset + (row >>> 6) * Long.BYTES) & (1L << row)) != 0);
+            }
+        }
+    }
+
+    /**
+     * Последний блок, первая строка которого раньше {@code from}, или первый блок.
+     * Строки со временем {@code from} могут заканчивать предыдущий блок, поэтому
+     * сравнение строгое.
+     */
+    private int findBlock(long from) {
+        int low = 0;
+        int high = blocks - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (data.getLong(HEADER_SIZE + middle * INDEX_ENTRY_SIZE) < from) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int ipv6Words(int rows) {
+        return (rows + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Порядок строк по возрастанию времени: устойчивая сортировка слиянием индексов,
+     * на почти упорядоченных строках журнала — за линейное время.
+     */
+    private static int[] sortByTimestamp(long[] timestamps, int rows) {
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[rows];
+        for (int width = 1; width < rows; width *= 2) {
+            for (int left = 0; left < rows - width; left += 2 * width) {
+                int middle = left + width;
+                int right = Math.min(left + 2 * width, rows);
+                if (timestamps[order[middle - 1]] <= timestamps[order[middle]]) {
+                    continue;
+                }
+                int i = left;
+                int j = middle;
+                int k = left;
+                while (i < middle && j < right) {
+                    buffer[k++] = timestamps[order[j]] < timestamps[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < middle) {
+                    buffer[k++] = order[i++];
+                }
+                while (j < right) {
+                    buffer[k++] = order[j++];
+                }
+                System.arraycopy(buffer, left, order, left, right - left);
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,469 @@
+package ru.practicum.storage.segment;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.BucketViews;
+import ru.practicum.model.Hit;
+import ru.practicum.model.IpRange;
+import ru.practicum.model.TimeBucket;
+import ru.practicum.sketch.Hashing;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.storage.StatsStream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище просмотров в файлах сегментов, без БД. Включается профилем {@code segment}.
+ *
+ * <p>Просмотры только дописываются: сначала в журнал открытого сегмента
+ * ({@link ActiveSegment}), а по достижении {@code stats.segments.segment-size} строк
+ * сегмент запечатывается в упорядоченный по времени колоночный файл ({@link Segment}).
+ * Приложения, URI и адреса IPv6 хранятся идентификаторами из файловых словарей
+ * ({@link Dictionary}), адреса IPv4 — числом. Все файлы лежат в каталоге
+ * {@code stats.segments.dir}, по умолчанию {@code segments} в {@code stats.data-dir}.
+ *
+ * <p>Статистика считается сканированием колонок за один проход по сегментам,
+ * пересекающим диапазон, со счетчиками в примитивных хеш-таблицах. Уникальные IP
+ * считаются точно по парам (URI, адрес) или, с {@code approximate}, HyperLogLog-скетчем
+ * на URI. Запросы читают снимок сегментов и не ждут записи.
+ */
+@Slf4j
+@Component
+@Profile("segment")
+public class SegmentHitStorage implements HitStorage {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String LOG_PREFIX = "active-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Dictionary apps;
+    private final Dictionary uris;
+    private final Dictionary ipv6;
+    private byte[][] ipv6Addresses = new byte[16][];
+    private List<Segment> segments;
+    private ActiveSegment active;
+    private long rows;
+
+    public SegmentHitStorage(@Value("${stats.segments.dir}") Path dir,
+                             @Value("${stats.segments.segment-size:1000000}") int segmentSize,
+                             @Value("${stats.segments.fsync:true}") boolean fsync) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+
+        Files.createDirectories(dir);
+        apps = Dictionary.open(dir.resolve("apps.dict"));
+        uris = Dictionary.open(dir.resolve("uris.dict"));
+        ipv6 = Dictionary.open(dir.resolve("ipv6.dict"));
+        for (int id = 0; id < ipv6.size(); id++) {
+            addIpv6Address(id, IpMapper.toInetAddress(ipv6.get(id)).getAddress());
+        }
+        open();
+    }
+
+    @Override
+    public Hit save(Hit hit) {
+        append(List.of(hit));
+        return hit;
+    }
+
+    @Override
+    public int saveAll(List<Hit> hits) {
+        append(hits);
+        return hits.size();
+    }
+
+    @Override
+    public void copyAll(List<Hit> hits) {
+        append(hits);
+    }
+
+    /**
+     * Транзакций у сегментов нет: {@code inTransaction} выполняется после записи,
+     * и его ошибка не отменяет записанные просмотры.
+     */
+    @Override
+    public void copyAll(List<Hit> hits, Runnable inTransaction) {
+        append(hits);
+        inTransaction.run();
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                       boolean approximate) {
+        return aggregate(start, end, null, uris, unique, approximate);
+    }
+
+    /**
+     * Статистика считается сразу целиком и только выдается по строке.
+     */
+    @Override
+    public StatsStream streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                   boolean approximate) {
+        return aggregate(start, end, null, uris, unique, approximate)::forEach;
+    }
+
+    @Override
+    public List<ViewStatsDto> getNetworkStats(LocalDateTime start, LocalDateTime end, IpRange network,
+                                              List<String> uris, boolean unique) {
+        return aggregate(start, end, network, uris, unique, false);
+    }
+
+    @Override
+    public List<BucketViews> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uriFilter,
+                                           TimeBucket bucket) {
+        BitSet uriIds = findUriIds(uriFilter);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+
+        LocalDateTime first = bucket.floor(start);
+        TimeSeries series = new TimeSeries(uriIds, toMicros(first), bucket.duration().toNanos() / 1_000);
+        if (series.bucketIndex(toMicros(end)) > TimeSeries.MAX_BUCKET) {
+            throw new ValidationException("Слишком много корзин временного ряда, увеличьте шаг или сократите диапазон.");
+        }
+        view().scan(toMicros(start), toMicros(end), series);
+        return series.result(first, bucket);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            active.close();
+            apps.close();
+            uris.close();
+            ipv6.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(List<Hit> hits) {
+        int count = hits.size();
+        long[] timestamps = new long[count];
+        short[] hitApps = new short[count];
+        int[] hitUris = new int[count];
+        int[] ips = new int[count];
+        boolean[] isIpv6 = new boolean[count];
+
+        lock.writeLock().lock();
+        try {
+            int dictionaries = apps.size() + uris.size() + ipv6.size();
+            for (int i = 0; i < count; i++) {
+                Hit hit = hits.get(i);
+                timestamps[i] = toMicros(hit.getTimestamp());
+                int app = apps.getOrAdd(hit.getApp());
+                if (app > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Превышено число приложений в хранилище сегментов: " + app);
+                }
+                hitApps[i] = (short) app;
+                hitUris[i] = uris.getOrAdd(hit.getUri());
+                InetAddress ip = hit.getIp();
+                if (ip instanceof Inet4Address) {
+                    ips[i] = ByteBuffer.wrap(ip.getAddress()).getInt();
+                } else {
+                    int known = ipv6.size();
+                    ips[i] = ipv6.getOrAdd(IpMapper.toText(ip));
+                    if (ips[i] == known) {
+                        addIpv6Address(known, ip.getAddress());
+                    }
+                    isIpv6[i] = true;
+                }
+            }
+            // новые строки словарей должны оказаться на диске раньше строк журнала, которые на них ссылаются
+            if (fsync && apps.size() + uris.size() + ipv6.size() != dictionaries) {
+                apps.force();
+                uris.force();
+                ipv6.force();
+            }
+
+            active.append(timestamps, hitApps, hitUris, ips, isIpv6, count);
+            for (Hit hit : hits) {
+                hit.setId(++rows);
+            }
+            if (active.size() >= segmentSize) {
+                seal();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать просмотры в хранилище сегментов", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void seal() throws IOException {
+        long generation = active.generation();
+        Segment segment = Segment.write(segmentFile(generation), active.snapshot());
+        ActiveSegment next = ActiveSegment.open(logFile(generation + 1), generation + 1, fsync);
+        active.delete();
+
+        List<Segment> sealed = new ArrayList<>(segments);
+        sealed.add(segment);
+        segments = List.copyOf(sealed);
+        active = next;
+        log.info("Запечатан сегмент {}: {} просмотров", generation, segment.rows());
+    }
+
+    /**
+     * Открывает запечатанные сегменты и журнал открытого. Журналы, строки которых уже
+     * есть в сегментах (сбой между записью сегмента и удалением журнала), удаляются.
+     */
+    private void open() throws IOException {
+        TreeMap<Long, Path> segmentFiles = new TreeMap<>();
+        TreeMap<Long, Path> logFiles = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segmentFiles.put(generation(name, SEGMENT_PREFIX, SEGMENT_SUFFIX), file);
+                } else if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)) {
+                    logFiles.put(generation(name, LOG_PREFIX, LOG_SUFFIX), file);
+                }
+            }
+        }
+
+        List<Segment> opened = new ArrayList<>(segmentFiles.size());
+        for (Path file : segmentFiles.values()) {
+            Segment segment = Segment.open(file);
+            opened.add(segment);
+            rows += segment.rows();
+        }
+        segments = List.copyOf(opened);
+
+        long lastSealed = segmentFiles.isEmpty() ? 0 : segmentFiles.lastKey();
+        for (Path file : logFiles.headMap(lastSealed, true).values()) {
+            Files.delete(file);
+        }
+        long generation = logFiles.isEmpty() || logFiles.lastKey() <= lastSealed ? lastSealed + 1 : logFiles.lastKey();
+        active = ActiveSegment.open(logFile(generation), generation, fsync);
+        rows += active.size();
+        log.info("Открыто хранилище сегментов {}: сегментов {}, просмотров {}", dir.toAbsolutePath(),
+                segments.size(), rows);
+    }
+
+    private List<ViewStatsDto> aggregate(LocalDateTime start, LocalDateTime end, IpRange network,
+                                         List<String> uriFilter, boolean unique, boolean approximate) {
+        BitSet uriIds = findUriIds(uriFilter);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+
+        View view = view();
+        Aggregation aggregation = new Aggregation(uriIds, network, view.addresses(), unique, approximate);
+        view.scan(toMicros(start), toMicros(end), aggregation);
+        return aggregation.result();
+    }
+
+    /**
+     * Идентификаторы URI из фильтра: {@code null}, если фильтра нет, пустой набор,
+     * если ни одного из URI нет в словаре.
+     */
+    private BitSet findUriIds(List<String> uriFilter) {
+        if (uriFilter == null) {
+            return null;
+        }
+        BitSet uriIds = new BitSet();
+        for (String uri : uriFilter) {
+            int id = uris.find(uri);
+            if (id >= 0) {
+                uriIds.set(id);
+            }
+        }
+        return uriIds;
+    }
+
+    /**
+     * Снимок сегментов для чтения без блокировки.
+     */
+    private View view() {
+        lock.readLock().lock();
+        try {
+            return new View(segments, active.snapshot(), ipv6Addresses);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addIpv6Address(int id, byte[] address) {
+        if (id == ipv6Addresses.length) {
+            ipv6Addresses = Arrays.copyOf(ipv6Addresses, id * 2);
+        }
+        ipv6Addresses[id] = address;
+    }
+
+    private Path segmentFile(long generation) {
+        return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, generation, SEGMENT_SUFFIX));
+    }
+
+    private Path logFile(long generation) {
+        return dir.resolve(String.format("%s%08d%s", LOG_PREFIX, generation, LOG_SUFFIX));
+    }
+
+    private static long generation(String name, String prefix, String suffix) {
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1_000;
+    }
+
+    private record View(List<Segment> segments, ActiveSegment.Snapshot recent, byte[][] addresses) {
+        void scan(long from, long to, RowVisitor visitor) {
+            for (Segment segment : segments) {
+                segment.scan(from, to, visitor);
+            }
+            recent.scan(from, to, visitor);
+        }
+    }
+
+    /**
+     * Подсчет просмотров по ключу (приложение, URI, номер корзины) за один проход
+     * сканирования. Ключ упакован в {@code long}: номер корзины в старших 17 битах,
+     * идентификатор приложения (до {@link Short#MAX_VALUE}) и URI — в младших 46.
+     */
+    private final class TimeSeries implements RowVisitor {
+        private static final int MAX_BUCKET = (1 << 17) - 1;
+
+        private final BitSet uriIds;
+        private final long firstBucket;
+        private final long bucketMicros;
+        private final LongLongMap hits = new LongLongMap();
+
+        private TimeSeries(BitSet uriIds, long firstBucket, long bucketMicros) {
+            this.uriIds = uriIds;
+            this.firstBucket = firstBucket;
+            this.bucketMicros = bucketMicros;
+        }
+
+        private long bucketIndex(long timestamp) {
+            return (timestamp - firstBucket) / bucketMicros;
+        }
+
+        @Override
+        public void visit(long timestamp, int app, int uri, int ip, boolean isIpv6) {
+            if (uriIds == null || uriIds.get(uri)) {
+                hits.add(bucketIndex(timestamp) << 46 | (long) app << 31 | uri, 1);
+            }
+        }
+
+        private List<BucketViews> result(LocalDateTime first, TimeBucket bucket) {
+            List<BucketViews> views = new ArrayList<>(hits.size());
+            hits.forEach((key, count) -> views.add(new BucketViews(apps.get((int) (key >>> 31 & Short.MAX_VALUE)),
+                    uris.get((int) (key & Integer.MAX_VALUE)), first.plus(bucket.duration().multipliedBy(key >>> 46)),
+                    count)));
+            return views;
+        }
+    }
+
+    /**
+     * Подсчет просмотров по ключу (приложение, URI) за один проход сканирования.
+     */
+    private final class Aggregation implements RowVisitor {
+        private final BitSet uriIds;
+        private final boolean network;
+        private final boolean networkIpv6;
+        private final int low;
+        private final int high;
+        private final byte[] lowIpv6;
+        private final byte[] highIpv6;
+        private final byte[][] addresses;
+        private final boolean unique;
+        private final boolean approximate;
+        private final LongLongMap hits = new LongLongMap();
+        private final LongPairSet visitors = new LongPairSet();
+        private final Map<Long, HyperLogLog> sketches = new HashMap<>();
+
+        private Aggregation(BitSet uriIds, IpRange range, byte[][] addresses, boolean unique, boolean approximate) {
+            this.uriIds = uriIds;
+            this.network = range != null;
+            this.networkIpv6 = network && !(range.low() instanceof Inet4Address);
+            this.low = network && !networkIpv6 ? ByteBuffer.wrap(range.low().getAddress()).getInt() : 0;
+            this.high = network && !networkIpv6 ? ByteBuffer.wrap(range.high().getAddress()).getInt() : 0;
+            this.lowIpv6 = networkIpv6 ? range.low().getAddress() : null;
+            this.highIpv6 = networkIpv6 ? range.high().getAddress() : null;
+            this.addresses = addresses;
+            this.unique = unique;
+            this.approximate = approximate;
+        }
+
+        @Override
+        public void visit(long timestamp, int app, int uri, int ip, boolean isIpv6) {
+            if (uriIds != null && !uriIds.get(uri)) {
+                return;
+            }
+            if (network && !inNetwork(ip, isIpv6)) {
+                return;
+            }
+
+            long key = (long) app << Integer.SIZE | uri;
+            if (!unique) {
+                hits.add(key, 1);
+                return;
+            }
+            long visitor = isIpv6 ? 1L << Integer.SIZE | ip : ip & 0xffffffffL;
+            if (approximate) {
+                sketches.computeIfAbsent(key, k -> new HyperLogLog()).addHash(Hashing.mix64(visitor));
+            } else if (visitors.add(key, visitor)) {
+                hits.add(key, 1);
+            }
+        }
+
+        private boolean inNetwork(int ip, boolean isIpv6) {
+            if (isIpv6 != networkIpv6) {
+                return false;
+            }
+            if (!isIpv6) {
+                return Integer.compareUnsigned(ip, low) >= 0 && Integer.compareUnsigned(ip, high) <= 0;
+            }
+            byte[] address = addresses[ip];
+            return Arrays.compareUnsigned(address, lowIpv6) >= 0 && Arrays.compareUnsigned(address, highIpv6) <= 0;
+        }
+
+        private List<ViewStatsDto> result() {
+            List<ViewStatsDto> stats = new ArrayList<>(approximate && unique ? sketches.size() : hits.size());
+            if (approximate && unique) {
+                sketches.forEach((key, sketch) -> stats.add(toViewStats(key, sketch.estimate())));
+            } else {
+                hits.forEach((key, count) -> stats.add(toViewStats(key, count)));
+            }
+            stats.sort(Comparator.comparingLong(ViewStatsDto::getHits).reversed());
+            return stats;
+        }
+
+        private ViewStatsDto toViewStats(long key, long count) {
+            return new ViewStatsDto(apps.get((int) (key >>> Integer.SIZE)), uris.get((int) key), count);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ru.practicum.top;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.model.BucketViews;
+import ru.practicum.model.Hit;
+import ru.practicum.model.TimeBucket;
+import ru.practicum.sketch.SpaceSaving;
+import ru.practicum.storage.HitStorage;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Самые просматриваемые URI за последние окна времени ({@code stats.top.windows}),
+ * без обращения к БД.
+ *
+ * <p>Просмотры раскладываются по минутным отрезкам по времени просмотра, в каждом
+ * отрезке и в каждом окне ведется скетч {@link SpaceSaving} на {@code stats.top.capacity}
+ * счетчиков. Окно состоит из целых минут и включает текущую, незавершенную. Скетч
+ * окна обновляется каждым просмотром и раз в минуту, при смене текущей минуты,
+ * пересобирается из скетчей отрезков, так что из него уходят просмотры, покинувшие
+ * окно. Поэтому ответ — это первые k счетчиков готового скетча, {@code O(k)}.
+ *
+ * <p>Учитываются только просмотры, записанные этим экземпляром сервиса. При запуске
+ * отрезки заполняются поминутной статистикой из {@link HitStorage} одним запросом,
+ * чтобы перезапуск не обнулял окна.
+ */
+@Slf4j
+@Component
+public class TopHits implements SmartInitializingSingleton {
+    private final HitStorage hitStorage;
+    private final List<Duration> windows;
+    private final Duration maxWindow;
+    private final int capacity;
+    private final NavigableMap<LocalDateTime, SpaceSaving<UriName>> panes = new TreeMap<>();
+    private final Map<Duration, SpaceSaving<UriName>> summaries = new HashMap<>();
+    private LocalDateTime currentPane;
+
+    public TopHits(HitStorage hitStorage,
+                   @Value("${stats.top.windows:5m,15m,1h}") List<Duration> windows,
+                   @Value("${stats.top.capacity:1000}") int capacity) {
+        for (Duration window : windows) {
+            if (window.toMinutes() < 1 || !window.equals(Duration.ofMinutes(window.toMinutes()))) {
+                throw new IllegalArgumentException("Окно stats.top.windows должно состоять из целых минут: " + window);
+            }
+        }
+        this.hitStorage = hitStorage;
+        this.windows = windows.stream().distinct().sorted().toList();
+        this.maxWindow = this.windows.get(this.windows.size() - 1);
+        this.capacity = capacity;
+        this.currentPane = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        rebuildSummaries();
+    }
+
+    /**
+     * Заполняет окна поминутной статистикой до приема первых просмотров.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            LocalDateTime from = windowStart(maxWindow);
+            List<BucketViews> series = hitStorage.getTimeSeries(from,
+                    currentPane.plusMinutes(1).minus(1, ChronoUnit.MICROS), null, TimeBucket.MINUTE);
+            synchronized (this) {
+                for (BucketViews views : series) {
+                    add(new UriName(views.app(), views.uri()), views.bucket(), views.hits());
+                }
+            }
+            log.info("Окна самых просматриваемых URI заполнены с {}", from);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось заполнить окна самых просматриваемых URI: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Учитывает записанные в БД просмотры.
+     */
+    public synchronized void add(List<Hit> hits) {
+        rotate();
+        for (Hit hit : hits) {
+            add(new UriName(hit.getApp(), hit.getUri()), hit.getTimestamp().truncatedTo(ChronoUnit.MINUTES), 1);
+        }
+    }
+
+    /**
+     * Первые {@code k} URI окна {@code window} по убыванию числа просмотров.
+     *
+     * @throws ValidationException если окно не входит в {@code stats.top.windows}
+     */
+    public synchronized Top top(int k, Duration window) {
+        rotate();
+        SpaceSaving<UriName> summary = summaries.get(window);
+        if (summary == null) {
+            throw new ValidationException("Окно " + window + " не поддерживается, доступные окна: " + windows);
+        }
+
+        List<SpaceSaving.Entry<UriName>> top = summary.top(k);
+        long errorBound = top.stream()
+                .mapToLong(SpaceSaving.Entry::error)
+                .max()
+                .orElse(0);
+        return new Top(windowStart(window), summary.total(), errorBound, top.stream()
+                .map(entry -> new ViewStatsDto(entry.key().app(), entry.key().uri(), entry.count()))
+                .toList());
+    }
+
+    private void add(UriName key, LocalDateTime pane, long weight) {
+        if (pane.isAfter(currentPane)) {
+            pane = currentPane;
+        }
+        if (pane.isBefore(windowStart(maxWindow))) {
+            return;
+        }
+        panes.computeIfAbsent(pane, p -> new SpaceSaving<>(capacity)).add(key, weight);
+        for (Duration window : windows) {
+            if (!pane.isBefore(windowStart(window))) {
+                summaries.get(window).add(key, weight);
+            }
+        }
+    }
+
+    /**
+     * При смене текущей минуты отбрасывает отрезки, вышедшие из самого длинного окна,
+     * и пересобирает скетчи окон.
+     */
+    private void rotate() {
+        LocalDateTime pane = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        if (!pane.isAfter(currentPane)) {
+            return;
+        }
+        currentPane = pane;
+        panes.headMap(windowStart(maxWindow)).clear();
+        rebuildSummaries();
+    }
+
+    private void rebuildSummaries() {
+        for (Duration window : windows) {
+            SpaceSaving<UriName> summary = new SpaceSaving<>(capacity);
+            for (SpaceSaving<UriName> pane : panes.tailMap(windowStart(window), true).values()) {
+                summary.merge(pane);
+            }
+            summaries.put(window, summary);
+        }
+    }
+
+    private LocalDateTime windowStart(Duration window) {
+        return currentPane.minus(window).plusMinutes(1);
+    }
+
+    /**
+     * Самые просматриваемые URI окна, начавшегося в {@code start}. Каждое число
+     * просмотров может быть завышено, но не более чем на {@code errorBound}.
+     */
+    public record Top(LocalDateTime start, long total, long errorBound, List<ViewStatsDto> stats) {
+    }
+
+    private record UriName(String app, String uri) {
+    }
+}
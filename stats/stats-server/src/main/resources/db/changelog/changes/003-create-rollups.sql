@@ -0,0 +1,42 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:003-create-rollups
+-- Поминутные и почасовые агрегаты просмотров. Корзина bucket хранит начало
+-- интервала в локальном времени сервиса, как и параметры запросов /stats.
+CREATE TABLE IF NOT EXISTS hits_minute
+(
+    app    VARCHAR(100)  NOT NULL,
+    uri    VARCHAR(2000) NOT NULL,
+    bucket TIMESTAMP     NOT NULL,
+    hits   BIGINT        NOT NULL,
+    CONSTRAINT pk_hits_minute PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hits_hour
+(
+    app    VARCHAR(100)  NOT NULL,
+    uri    VARCHAR(2000) NOT NULL,
+    bucket TIMESTAMP     NOT NULL,
+    hits   BIGINT        NOT NULL,
+    CONSTRAINT pk_hits_hour PRIMARY KEY (app, uri, bucket)
+);
+
+-- Индексы:
+-- выборка корзин за диапазон
+CREATE INDEX IF NOT EXISTS idx_hits_minute_bucket ON hits_minute(bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_hour_bucket ON hits_hour(bucket);
+
+-- выборка корзин за диапазон по списку URI
+CREATE INDEX IF NOT EXISTS idx_hits_minute_uri_bucket ON hits_minute(uri, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_hour_uri_bucket ON hits_hour(uri, bucket);
+
+-- Заполнение агрегатов по уже накопленным просмотрам
+INSERT INTO hits_minute (app, uri, bucket, hits)
+SELECT app, uri, date_trunc('minute', created::timestamp), COUNT(*)
+FROM hits
+GROUP BY app, uri, date_trunc('minute', created::timestamp);
+
+INSERT INTO hits_hour (app, uri, bucket, hits)
+SELECT app, uri, date_trunc('hour', created::timestamp), COUNT(*)
+FROM hits
+GROUP BY app, uri, date_trunc('hour', created::timestamp);
@@ -0,0 +1,38 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:004-create-hll
+-- Почасовые HyperLogLog-скетчи IP-адресов для приближенного подсчета уникальных
+-- просмотров. Формат sketch описан в ru.practicum.sketch.HyperLogLog.
+CREATE TABLE IF NOT EXISTS hits_hll
+(
+    app    VARCHAR(100)  NOT NULL,
+    uri    VARCHAR(2000) NOT NULL,
+    bucket TIMESTAMP     NOT NULL,
+    sketch BYTEA         NOT NULL,
+    CONSTRAINT pk_hits_hll PRIMARY KEY (app, uri, bucket)
+);
+
+-- Индексы:
+-- выборка скетчей за диапазон
+CREATE INDEX IF NOT EXISTS idx_hits_hll_bucket ON hits_hll(bucket);
+
+-- выборка скетчей за диапазон по списку URI
+CREATE INDEX IF NOT EXISTS idx_hits_hll_uri_bucket ON hits_hll(uri, bucket);
+
+-- Заполнение скетчей по уже накопленным просмотрам. Хеш IP — первые 64 бита md5,
+-- как в ru.practicum.sketch.Hashing; старшие 14 бит — номер регистра, значение
+-- регистра — позиция первой единицы в оставшихся 50 битах (51, если единиц нет).
+-- Скетч записывается в разреженном формате: 01, точность 0e, число пар, пары.
+INSERT INTO hits_hll (app, uri, bucket, sketch)
+SELECT app, uri, bucket,
+       decode('010e' || lpad(to_hex(COUNT(*)), 8, '0') ||
+              string_agg(lpad(to_hex(register), 4, '0') || lpad(to_hex(rank), 2, '0'), '' ORDER BY register),
+              'hex')
+FROM (SELECT app, uri, bucket, register, MAX(rank) AS rank
+      FROM (SELECT app, uri, date_trunc('hour', created::timestamp) AS bucket,
+                   substr(bits, 1, 14)::bit(14)::int AS register,
+                   COALESCE(NULLIF(position('1' IN substr(bits, 15)), 0), 51) AS rank
+            FROM (SELECT app, uri, created, ('x' || substr(md5(ip), 1, 16))::bit(64)::text AS bits
+                  FROM hits) hashed) ranked
+      GROUP BY app, uri, bucket, register) registers
+GROUP BY app, uri, bucket;
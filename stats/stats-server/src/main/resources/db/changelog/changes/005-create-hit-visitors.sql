@@ -0,0 +1,24 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:005-create-hit-visitors
+-- Уникальные посетители: первый просмотр каждого URI с каждого IP. Если диапазон
+-- запроса начинается не позже первого просмотра URI, число уникальных IP за
+-- диапазон равно числу посетителей, впервые пришедших до его окончания.
+CREATE TABLE IF NOT EXISTS hit_visitors
+(
+    app        VARCHAR(100)  NOT NULL,
+    uri        VARCHAR(2000) NOT NULL,
+    ip         VARCHAR(21)   NOT NULL,
+    first_seen TIMESTAMPTZ   NOT NULL,
+    CONSTRAINT pk_hit_visitors PRIMARY KEY (app, uri, ip)
+);
+
+-- Индексы:
+-- подсчет посетителей и первого просмотра по списку URI без чтения таблицы
+CREATE INDEX IF NOT EXISTS idx_hit_visitors_uri_app_first_seen ON hit_visitors(uri, app, first_seen);
+
+-- Заполнение по уже накопленным просмотрам
+INSERT INTO hit_visitors (app, uri, ip, first_seen)
+SELECT app, uri, ip, MIN(created)
+FROM hits
+GROUP BY app, uri, ip;
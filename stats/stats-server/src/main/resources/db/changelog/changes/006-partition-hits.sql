@@ -0,0 +1,66 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:006-partition-hits splitStatements:false
+-- Секционирование hits по месяцам (created). Секции hits_yYYYYmMM создаются
+-- заранее задачей обслуживания (HitPartitionMaintenance), в hits_default
+-- попадают просмотры за месяцы без своей секции. Границы месяцев считаются
+-- в часовом поясе сессии, то есть сервиса.
+ALTER TABLE hits RENAME TO hits_unpartitioned;
+ALTER SEQUENCE hits_id_seq RENAME TO hits_unpartitioned_id_seq;
+DROP INDEX IF EXISTS idx_hits_app_created;
+DROP INDEX IF EXISTS idx_hits_ip;
+DROP INDEX IF EXISTS idx_hits_uri;
+
+CREATE TABLE hits
+(
+    id      BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    app     VARCHAR(100)                          NOT NULL,
+    uri     VARCHAR(2000)                         NOT NULL,
+    ip      VARCHAR(21)                           NOT NULL,
+    created TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT pk_hits PRIMARY KEY (id, created),
+    CONSTRAINT chk_app_not_empty CHECK (LENGTH(app) > 0),
+    CONSTRAINT chk_uri_not_empty CHECK (LENGTH(uri) > 0)
+) PARTITION BY RANGE (created);
+
+CREATE TABLE hits_default PARTITION OF hits DEFAULT;
+
+-- секции за месяцы с просмотрами и на два месяца вперед
+DO
+$$
+    DECLARE
+        month      TIMESTAMPTZ;
+        last_month TIMESTAMPTZ := date_trunc('month', now()) + INTERVAL '2 months';
+    BEGIN
+        SELECT COALESCE(date_trunc('month', MIN(created)), date_trunc('month', now()))
+        INTO month
+        FROM hits_unpartitioned;
+
+        WHILE month <= last_month
+            LOOP
+                EXECUTE format('CREATE TABLE %I PARTITION OF hits FOR VALUES FROM (%L) TO (%L)',
+                               'hits_y' || to_char(month, 'YYYY') || 'm' || to_char(month, 'MM'),
+                               month, month + INTERVAL '1 month');
+                month := month + INTERVAL '1 month';
+            END LOOP;
+    END
+$$;
+
+INSERT INTO hits (id, app, uri, ip, created)
+SELECT id, app, uri, ip, created
+FROM hits_unpartitioned;
+
+SELECT setval(pg_get_serial_sequence('hits', 'id'), COALESCE(MAX(id), 0) + 1, false)
+FROM hits;
+
+DROP TABLE hits_unpartitioned;
+
+-- Индексы (создаются на каждой секции):
+-- выборка просмотров за диапазон
+CREATE INDEX IF NOT EXISTS idx_hits_created ON hits(created);
+
+-- выборка просмотров за диапазон по списку URI
+CREATE INDEX IF NOT EXISTS idx_hits_uri_created ON hits(uri, created);
+
+-- поиск по IP адресам
+CREATE INDEX IF NOT EXISTS idx_hits_ip ON hits(ip);
@@ -0,0 +1,63 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:007-create-uri-dictionary
+-- Словарь URI: просмотры, агрегаты, скетчи и посетители хранят идентификатор
+-- URI (uri_id) вместо строки до 2000 символов.
+CREATE TABLE IF NOT EXISTS uris
+(
+    id  INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    uri VARCHAR(2000) NOT NULL,
+    CONSTRAINT uq_uris_uri UNIQUE (uri),
+    CONSTRAINT chk_uris_uri_not_empty CHECK (LENGTH(uri) > 0)
+);
+
+-- агрегаты хранят и URI просмотров, уже удаленных по сроку хранения
+INSERT INTO uris (uri)
+SELECT uri FROM hits
+UNION
+SELECT uri FROM hits_hour
+ORDER BY 1;
+
+-- hits
+ALTER TABLE hits ADD COLUMN uri_id INTEGER;
+UPDATE hits h SET uri_id = u.id FROM uris u WHERE u.uri = h.uri;
+ALTER TABLE hits ALTER COLUMN uri_id SET NOT NULL;
+DROP INDEX IF EXISTS idx_hits_uri_created;
+ALTER TABLE hits DROP COLUMN uri;
+CREATE INDEX IF NOT EXISTS idx_hits_uri_id_created ON hits(uri_id, created);
+
+-- hits_minute
+ALTER TABLE hits_minute ADD COLUMN uri_id INTEGER;
+UPDATE hits_minute m SET uri_id = u.id FROM uris u WHERE u.uri = m.uri;
+ALTER TABLE hits_minute ALTER COLUMN uri_id SET NOT NULL;
+ALTER TABLE hits_minute DROP CONSTRAINT pk_hits_minute;
+ALTER TABLE hits_minute DROP COLUMN uri;
+ALTER TABLE hits_minute ADD CONSTRAINT pk_hits_minute PRIMARY KEY (app, uri_id, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_minute_uri_id_bucket ON hits_minute(uri_id, bucket);
+
+-- hits_hour
+ALTER TABLE hits_hour ADD COLUMN uri_id INTEGER;
+UPDATE hits_hour m SET uri_id = u.id FROM uris u WHERE u.uri = m.uri;
+ALTER TABLE hits_hour ALTER COLUMN uri_id SET NOT NULL;
+ALTER TABLE hits_hour DROP CONSTRAINT pk_hits_hour;
+ALTER TABLE hits_hour DROP COLUMN uri;
+ALTER TABLE hits_hour ADD CONSTRAINT pk_hits_hour PRIMARY KEY (app, uri_id, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_hour_uri_id_bucket ON hits_hour(uri_id, bucket);
+
+-- hits_hll
+ALTER TABLE hits_hll ADD COLUMN uri_id INTEGER;
+UPDATE hits_hll m SET uri_id = u.id FROM uris u WHERE u.uri = m.uri;
+ALTER TABLE hits_hll ALTER COLUMN uri_id SET NOT NULL;
+ALTER TABLE hits_hll DROP CONSTRAINT pk_hits_hll;
+ALTER TABLE hits_hll DROP COLUMN uri;
+ALTER TABLE hits_hll ADD CONSTRAINT pk_hits_hll PRIMARY KEY (app, uri_id, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_hll_uri_id_bucket ON hits_hll(uri_id, bucket);
+
+-- hit_visitors
+ALTER TABLE hit_visitors ADD COLUMN uri_id INTEGER;
+UPDATE hit_visitors v SET uri_id = u.id FROM uris u WHERE u.uri = v.uri;
+ALTER TABLE hit_visitors ALTER COLUMN uri_id SET NOT NULL;
+ALTER TABLE hit_visitors DROP CONSTRAINT pk_hit_visitors;
+ALTER TABLE hit_visitors DROP COLUMN uri;
+ALTER TABLE hit_visitors ADD CONSTRAINT pk_hit_visitors PRIMARY KEY (app, uri_id, ip);
+CREATE INDEX IF NOT EXISTS idx_hit_visitors_uri_id_app_first_seen ON hit_visitors(uri_id, app, first_seen);
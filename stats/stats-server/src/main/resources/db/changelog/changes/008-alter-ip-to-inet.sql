@@ -0,0 +1,55 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:008-alter-ip-to-inet splitStatements:false
+-- IP-адреса снова хранятся в INET (IPv4 — 7 байт, IPv6 — 19 байт) вместо
+-- VARCHAR(21), в который не помещается IPv6. Новые адреса проверяются при
+-- записи, а уже записанные строки, не являющиеся адресом хоста, заменяются
+-- адресом из 100::/64 (RFC 6666, сеть для отбрасываемого трафика), построенным
+-- по md5 строки: разные некорректные строки не склеиваются при подсчете уникальных IP.
+CREATE OR REPLACE FUNCTION stats_to_inet(value TEXT) RETURNS INET
+    LANGUAGE plpgsql
+    IMMUTABLE AS
+$$
+DECLARE
+    address INET;
+BEGIN
+    IF value ~ '^((25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])\.){3}(25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])$' THEN
+        RETURN value::inet;
+    END IF;
+
+    BEGIN
+        address := value::inet;
+    EXCEPTION
+        WHEN invalid_text_representation THEN
+            address := NULL;
+    END;
+    IF address IS NULL OR masklen(address) <> (CASE family(address) WHEN 4 THEN 32 ELSE 128 END) THEN
+        address := ('100::' || substr(md5(value), 1, 4) || ':' || substr(md5(value), 5, 4) || ':' ||
+                    substr(md5(value), 9, 4) || ':' || substr(md5(value), 13, 4))::inet;
+    END IF;
+    RETURN address;
+END
+$$;
+
+ALTER TABLE hits ALTER COLUMN ip TYPE INET USING stats_to_inet(ip);
+
+-- разные записи одного адреса (например, '1.2.3.4' и '1.2.3.4/32') становятся одним посетителем
+CREATE TABLE hit_visitors_inet
+(
+    app        VARCHAR(100) NOT NULL,
+    uri_id     INTEGER      NOT NULL,
+    ip         INET         NOT NULL,
+    first_seen TIMESTAMPTZ  NOT NULL
+);
+
+INSERT INTO hit_visitors_inet (app, uri_id, ip, first_seen)
+SELECT app, uri_id, stats_to_inet(ip), MIN(first_seen)
+FROM hit_visitors
+GROUP BY app, uri_id, stats_to_inet(ip);
+
+DROP TABLE hit_visitors;
+ALTER TABLE hit_visitors_inet RENAME TO hit_visitors;
+ALTER TABLE hit_visitors ADD CONSTRAINT pk_hit_visitors PRIMARY KEY (app, uri_id, ip);
+CREATE INDEX IF NOT EXISTS idx_hit_visitors_uri_id_app_first_seen ON hit_visitors(uri_id, app, first_seen);
+
+DROP FUNCTION stats_to_inet(TEXT);
@@ -0,0 +1,12 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:009-create-hit-wal-checkpoints
+-- Позиция, до которой локальный журнал просмотров stats-server (stats.ingest.mode=wal)
+-- воспроизведен в БД. Обновляется в одной транзакции с записью просмотров, поэтому
+-- после перезапуска воспроизведение продолжается с нее без потерь и повторов.
+CREATE TABLE IF NOT EXISTS hit_wal_checkpoints
+(
+    wal_id   UUID   NOT NULL,
+    position BIGINT NOT NULL,
+    CONSTRAINT pk_hit_wal_checkpoints PRIMARY KEY (wal_id)
+);
@@ -0,0 +1,14 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:010-create-hit-compaction
+-- Граница свертки просмотров (HitCompaction): исходные просмотры раньше нее и их
+-- поминутные агрегаты удалены, за это время остаются только почасовые агрегаты
+-- hits_hour и скетчи hits_hll. Граница выровнена по часу и хранится в локальном
+-- времени сервиса, как корзины агрегатов. Таблица содержит не больше одной строки.
+CREATE TABLE IF NOT EXISTS hit_compaction
+(
+    id               BOOLEAN   DEFAULT TRUE NOT NULL,
+    compacted_before TIMESTAMP              NOT NULL,
+    CONSTRAINT pk_hit_compaction PRIMARY KEY (id),
+    CONSTRAINT chk_hit_compaction_single_row CHECK (id)
+);
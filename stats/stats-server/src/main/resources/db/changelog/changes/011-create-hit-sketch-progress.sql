@@ -0,0 +1,17 @@
+-- liquibase formatted sql
+
+-- changeset smirnovs:011-create-hit-sketch-progress
+-- Ход построения скетчей hits_hll фоновой задачей (HitSketcher). Скетчи всех часов
+-- раньше sketched_before построены. Часы раньше pending_before задача уже взяла
+-- в работу, поэтому просмотры за них при записи сами добавляются в скетчи; более
+-- поздние просмотры в скетчи при записи не попадают. Границы выровнены по часу и
+-- хранятся в локальном времени сервиса, как корзины агрегатов. Таблица содержит
+-- не больше одной строки; пока ее нет, скетчи обновляются при каждой записи.
+CREATE TABLE IF NOT EXISTS hit_sketch_progress
+(
+    id              BOOLEAN   DEFAULT TRUE NOT NULL,
+    sketched_before TIMESTAMP              NOT NULL,
+    pending_before  TIMESTAMP              NOT NULL,
+    CONSTRAINT pk_hit_sketch_progress PRIMARY KEY (id),
+    CONSTRAINT chk_hit_sketch_progress_single_row CHECK (id)
+);
@@ -0,0 +1,192 @@
+package ru.practicum.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.model.Hit;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsCacheTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 10, 0);
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 10, 12, 0, 30);
+    private static final LocalDateTime CLOSED = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private final MutableClock clock = new MutableClock(NOW);
+    private final StatsCache cache = new StatsCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1),
+            Duration.ZERO, clock);
+    private final List<Hit> hits = new ArrayList<>();
+    private final List<List<LocalDateTime>> loads = new ArrayList<>();
+
+    @Test
+    void openRangeReusesClosedPartWithinBucket() {
+        hit("/events/1", START.plusMinutes(5));
+        hit("/events/1", NOW);
+
+        assertThat(get(START, NOW, false)).containsExactly(stats("/events/1", 2));
+        assertThat(loads).containsExactly(range(START, closedEnd(CLOSED)), range(CLOSED, NOW));
+
+        loads.clear();
+        clock.set(NOW.plusSeconds(20));
+        assertThat(get(START, NOW.plusSeconds(20), false)).containsExactly(stats("/events/1", 2));
+        assertThat(loads).containsExactly(range(CLOSED, NOW.plusSeconds(20)));
+    }
+
+    @Test
+    void openRangeExtendsClosedPartAfterRollOver() {
+        hit("/events/1", START.plusMinutes(5));
+        hit("/events/1", NOW);
+        get(START, NOW, false);
+
+        loads.clear();
+        LocalDateTime later = NOW.plusMinutes(2);
+        LocalDateTime closed = CLOSED.plusMinutes(2);
+        hit("/events/1", later);
+        clock.set(later);
+
+        assertThat(get(START, later, false)).containsExactly(stats("/events/1", 3));
+        assertThat(loads).containsExactly(range(CLOSED, closedEnd(closed)), range(closed, later));
+
+        loads.clear();
+        assertThat(get(START, later, false)).containsExactly(stats("/events/1", 3));
+        assertThat(loads).containsExactly(range(closed, later));
+    }
+
+    @Test
+    void lateHitInvalidatesClosedPart() {
+        hit("/events/1", START.plusMinutes(5));
+        get(START, NOW, false);
+
+        loads.clear();
+        cache.invalidate(List.of(hit("/events/1", START.plusMinutes(10))));
+
+        assertThat(get(START, NOW, false)).containsExactly(stats("/events/1", 2));
+        assertThat(loads).containsExactly(range(START, closedEnd(CLOSED)), range(CLOSED, NOW));
+    }
+
+    @Test
+    void closedRangeIsLoadedOnce() {
+        hit("/events/1", START.plusMinutes(5));
+        LocalDateTime end = START.plusHours(1);
+
+        assertThat(get(START, end, true)).containsExactly(stats("/events/1", 1));
+        assertThat(get(START, end, true)).containsExactly(stats("/events/1", 1));
+        assertThat(loads).containsExactly(range(START, end));
+    }
+
+    @Test
+    void openUniqueRangeIsNotCached() {
+        hit("/events/1", START.plusMinutes(5));
+
+        get(START, NOW, true);
+        get(START, NOW, true);
+
+        assertThat(loads).containsExactly(range(START, NOW), range(START, NOW));
+    }
+
+    @Test
+    void sinceCachesClosedPartPerUri() {
+        LocalDateTime otherStart = START.plusHours(1);
+        hit("/events/1", START.plusMinutes(5));
+        hit("/events/2", otherStart.plusMinutes(5));
+        hit("/events/2", NOW);
+
+        assertThat(getSince(Map.of("/events/1", START, "/events/2", otherStart), NOW))
+                .containsExactly(stats("/events/2", 2), stats("/events/1", 1));
+
+        loads.clear();
+        LocalDateTime later = NOW.plusMinutes(1);
+        LocalDateTime closed = CLOSED.plusMinutes(1);
+        clock.set(later);
+
+        assertThat(getSince(Map.of("/events/1", START, "/events/2", otherStart, "/events/3", START), later))
+                .containsExactly(stats("/events/2", 2), stats("/events/1", 1));
+        assertThat(loads).containsExactly(
+                range(CLOSED, closedEnd(closed)), range(CLOSED, closedEnd(closed)), range(START, closedEnd(closed)),
+                range(closed, later), range(closed, later), range(closed, later));
+    }
+
+    private List<ViewStatsDto> get(LocalDateTime start, LocalDateTime end, boolean unique) {
+        return cache.get(start, end, null, unique, false, (from, to) -> {
+            loads.add(range(from, to));
+            return count(Map.of("/events/1", from, "/events/2", from, "/events/3", from), to);
+        });
+    }
+
+    private List<ViewStatsDto> getSince(Map<String, LocalDateTime> starts, LocalDateTime end) {
+        return cache.getSince(starts, end, false, (from, to) -> {
+            from.keySet().stream().sorted().forEach(uri -> loads.add(range(from.get(uri), to)));
+            return count(from, to);
+        });
+    }
+
+    private List<ViewStatsDto> count(Map<String, LocalDateTime> starts, LocalDateTime end) {
+        List<ViewStatsDto> stats = new ArrayList<>();
+        starts.keySet().stream().sorted().forEach(uri -> {
+            long count = hits.stream()
+                    .filter(hit -> hit.getUri().equals(uri))
+                    .filter(hit -> !hit.getTimestamp().isBefore(starts.get(uri)) && !hit.getTimestamp().isAfter(end))
+                    .count();
+            if (count > 0) {
+                stats.add(stats(uri, count));
+            }
+        });
+        return stats;
+    }
+
+    private Hit hit(String uri, LocalDateTime timestamp) {
+        Hit hit = new Hit(null, "ewm-main-service", uri, null, null, timestamp);
+        hits.add(hit);
+        return hit;
+    }
+
+    private static ViewStatsDto stats(String uri, long hits) {
+        return new ViewStatsDto("ewm-main-service", uri, hits);
+    }
+
+    private static List<LocalDateTime> range(LocalDateTime from, LocalDateTime to) {
+        return List.of(from, to);
+    }
+
+    private static LocalDateTime closedEnd(LocalDateTime closed) {
+        return closed.minus(1, ChronoUnit.MICROS);
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(LocalDateTime now) {
+            set(now);
+        }
+
+        void set(LocalDateTime now) {
+            instant = now.toInstant(ZoneOffset.UTC);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.practicum.exception.handler.ErrorHandler;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.service.StatsServiceImpl;
+import ru.practicum.storage.segment.SegmentHitStorage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Выгрузка {@code /stats} в NDJSON через {@link StatsController} и {@link ErrorHandler}
+ * с хранилищем {@link SegmentHitStorage} во временном каталоге.
+ */
+class StatsControllerTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 10, 10, 0);
+
+    @TempDir
+    Path dir;
+
+    private SegmentHitStorage storage;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new SegmentHitStorage(dir, 4, false);
+        StatsServiceImpl statsService = new StatsServiceImpl(storage, null, null, null, null, null, null, null);
+        mvc = MockMvcBuilders.standaloneSetup(new StatsController(statsService, new ObjectMapper()))
+                .setControllerAdvice(new ErrorHandler())
+                .build();
+    }
+
+    @AfterEach
+    void closeStorage() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    void streamStatsRejectsInvertedRangeBeforeResponseStarts() throws Exception {
+        mvc.perform(get("/stats")
+                        .param("start", "2024-03-10 12:00:00")
+                        .param("end", "2024-03-10 10:00:00")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(400))
+                .andExpect(jsonPath("$.error").value("Bad Request"));
+    }
+
+    @Test
+    void streamStatsWritesOneRowPerLine() throws Exception {
+        storage.saveAll(List.of(hit("/events/1", "10.0.0.1"), hit("/events/2", "10.0.0.1"),
+                hit("/events/1", "10.0.0.2")));
+
+        MvcResult result = mvc.perform(get("/stats")
+                        .param("start", "2024-03-10 09:00:00")
+                        .param("end", "2024-03-10 11:00:00")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("""
+                        {"app":"ewm-main-service","uri":"/events/1","hits":2}
+                        {"app":"ewm-main-service","uri":"/events/2","hits":1}
+                        """));
+    }
+
+    private static Hit hit(String uri, String ip) {
+        return new Hit(null, "ewm-main-service", uri, null, IpMapper.toInetAddress(ip), T0);
+    }
+}
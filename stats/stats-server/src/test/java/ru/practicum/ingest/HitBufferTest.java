@@ -0,0 +1,158 @@
+package ru.practicum.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import ru.practicum.exception.IngestOverloadException;
+import ru.practicum.model.Hit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitBufferTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 10, 10, 0);
+
+    private final FakeHitWriter writer = new FakeHitWriter();
+
+    @Test
+    void submitRejectsHitsOverCapacity() {
+        HitBuffer buffer = new HitBuffer(writer, 2, 10, Duration.ofMillis(10), Duration.ofSeconds(5));
+
+        buffer.submit(hit("/events/1"));
+        buffer.submit(hit("/events/2"));
+
+        assertThatThrownBy(() -> buffer.submit(hit("/events/3"))).isInstanceOf(IngestOverloadException.class);
+    }
+
+    @Test
+    void submitAllAcceptsPrefixThatFits() {
+        HitBuffer buffer = new HitBuffer(writer, 3, 10, Duration.ofMillis(10), Duration.ofSeconds(5));
+
+        List<CompletableFuture<Void>> acks = buffer.submitAll(List.of(hit("/events/1"), hit("/events/2"),
+                hit("/events/3"), hit("/events/4"), hit("/events/5")));
+
+        assertThat(acks).hasSize(3);
+        assertThatThrownBy(() -> buffer.submitAll(List.of(hit("/events/6")))).isInstanceOf(IngestOverloadException.class);
+    }
+
+    @Test
+    void flushWritesHitsInOrderAndReleasesCapacity() throws Exception {
+        HitBuffer buffer = new HitBuffer(writer, 3, 10, Duration.ofMillis(10), Duration.ofSeconds(5));
+        buffer.start();
+        try {
+            List<CompletableFuture<Void>> acks = buffer.submitAll(List.of(hit("/events/1"), hit("/events/2"),
+                    hit("/events/3")));
+            await(acks);
+
+            assertThat(writer.uris()).containsExactly("/events/1", "/events/2", "/events/3");
+            await(buffer.submitAll(List.of(hit("/events/4"), hit("/events/5"), hit("/events/6"))));
+        } finally {
+            buffer.shutdown();
+        }
+    }
+
+    @Test
+    void failedFlushCompletesAcksExceptionallyAndReleasesCapacity() throws Exception {
+        HitBuffer buffer = new HitBuffer(writer, 1, 10, Duration.ofMillis(10), Duration.ofSeconds(5));
+        buffer.start();
+        try {
+            writer.available = false;
+            CompletableFuture<Void> ack = buffer.submit(hit("/events/1"));
+
+            assertThatThrownBy(() -> ack.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(QueryTimeoutException.class);
+
+            writer.available = true;
+            buffer.submit(hit("/events/2")).get(5, TimeUnit.SECONDS);
+            assertThat(writer.uris()).containsExactly("/events/2");
+        } finally {
+            buffer.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownDrainsQueuedHits() throws Exception {
+        HitBuffer buffer = new HitBuffer(writer, 100, 1000, Duration.ofMinutes(1), Duration.ofSeconds(5));
+        buffer.start();
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            acks.add(buffer.submit(hit("/events/" + i)));
+        }
+
+        buffer.shutdown();
+
+        await(acks);
+        assertThat(writer.uris()).hasSize(10);
+        assertThatThrownBy(() -> buffer.submit(hit("/events/10"))).isInstanceOf(IngestOverloadException.class);
+    }
+
+    @Test
+    void shutdownFailsHitsNotWrittenWithinDrainTimeout() throws Exception {
+        HitBuffer buffer = new HitBuffer(writer, 100, 1, Duration.ofMillis(10), Duration.ofMillis(100));
+        writer.blocked = new CountDownLatch(1);
+        buffer.start();
+        try {
+            CompletableFuture<Void> written = buffer.submit(hit("/events/1"));
+            writer.entered.await(5, TimeUnit.SECONDS);
+            CompletableFuture<Void> queued = buffer.submit(hit("/events/2"));
+
+            buffer.shutdown();
+
+            assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IngestOverloadException.class);
+            assertThat(written.isDone()).isFalse();
+        } finally {
+            writer.blocked.countDown();
+        }
+    }
+
+    private static void await(List<CompletableFuture<Void>> acks) throws Exception {
+        CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+    }
+
+    private static Hit hit(String uri) {
+        return new Hit(null, "ewm-main-service", uri, null, null, T0);
+    }
+
+    private static class FakeHitWriter extends HitWriter {
+        private final List<Hit> written = new ArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        volatile boolean available = true;
+        volatile CountDownLatch blocked = new CountDownLatch(0);
+
+        FakeHitWriter() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public void copyAll(List<Hit> hits, Runnable inTransaction) {
+            entered.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!available) {
+                throw new QueryTimeoutException("БД недоступна");
+            }
+            inTransaction.run();
+            synchronized (this) {
+                written.addAll(hits);
+            }
+        }
+
+        synchronized List<String> uris() {
+            return written.stream().map(Hit::getUri).toList();
+        }
+    }
+}
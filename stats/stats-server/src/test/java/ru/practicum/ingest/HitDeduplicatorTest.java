@@ -0,0 +1,66 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HitDeduplicatorTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 10, 10, 0);
+
+    private final HitDeduplicator deduplicator = new HitDeduplicator(new SimpleMeterRegistry(), true,
+            Duration.ofMinutes(1), 1000, 0.001);
+
+    @Test
+    void claimSuppressesRepeatsWhileFirstHitIsBeingWritten() {
+        Hit first = hit("/events/1", "10.0.0.1");
+        Hit repeat = hit("/events/1", "10.0.0.1");
+
+        assertThat(deduplicator.claim(List.of(first))).containsExactly(first);
+        assertThat(deduplicator.claim(List.of(repeat))).isEmpty();
+
+        deduplicator.confirm(List.of(first));
+        assertThat(deduplicator.claim(List.of(repeat))).isEmpty();
+    }
+
+    @Test
+    void claimSuppressesRepeatsWithinList() {
+        Hit first = hit("/events/1", "10.0.0.1");
+        Hit other = hit("/events/2", "10.0.0.1");
+
+        assertThat(deduplicator.claim(List.of(first, hit("/events/1", "10.0.0.1"), other)))
+                .containsExactly(first, other);
+    }
+
+    @Test
+    void releaseLetsRejectedHitBeRetried() {
+        Hit first = hit("/events/1", "10.0.0.1");
+        Hit retry = hit("/events/1", "10.0.0.1");
+
+        assertThat(deduplicator.claim(List.of(first))).containsExactly(first);
+        deduplicator.release(List.of(first));
+
+        assertThat(deduplicator.claim(List.of(retry))).containsExactly(retry);
+    }
+
+    @Test
+    void disabledDeduplicatorKeepsAllHits() {
+        HitDeduplicator disabled = new HitDeduplicator(new SimpleMeterRegistry(), false, Duration.ofMinutes(1),
+                1000, 0.001);
+        List<Hit> hits = List.of(hit("/events/1", "10.0.0.1"), hit("/events/1", "10.0.0.1"));
+
+        assertThat(disabled.claim(hits)).isSameAs(hits);
+        disabled.confirm(hits);
+        assertThat(disabled.claim(hits)).isSameAs(hits);
+    }
+
+    private static Hit hit(String uri, String ip) {
+        return new Hit(null, "ewm-main-service", uri, null, IpMapper.toInetAddress(ip), NOW);
+    }
+}
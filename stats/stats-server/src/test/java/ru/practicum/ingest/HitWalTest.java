@@ -0,0 +1,233 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.HitFrameCodec;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.WalCheckpointRepository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Воспроизведение {@link HitWal} в БД с поддельными {@link HitWriter} и
+ * {@link WalCheckpointRepository}: журнал пишется во временный каталог.
+ */
+class HitWalTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 10, 10, 0);
+
+    @TempDir
+    Path dir;
+
+    private final FakeCheckpointRepository checkpoints = new FakeCheckpointRepository();
+    private final List<HitWal> opened = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() throws Exception {
+        for (HitWal wal : opened) {
+            wal.shutdown();
+        }
+    }
+
+    @Test
+    void replaysHitsAndSavesCheckpoint() throws Exception {
+        FakeHitWriter writer = new FakeHitWriter();
+        HitWal wal = open(writer, 5);
+
+        wal.submit(List.of(hit("/events/1"), hit("/events/2"))).get(5, TimeUnit.SECONDS);
+        wal.submit(List.of(hit("/events/3"))).get(5, TimeUnit.SECONDS);
+
+        awaitCheckpoint(walEnd());
+        assertThat(writer.uris()).containsExactly("/events/1", "/events/2", "/events/3");
+        assertThat(dir.resolve("dead-letter")).doesNotExist();
+    }
+
+    @Test
+    void restartReplaysOnlyHitsAfterCheckpoint() throws Exception {
+        FakeHitWriter first = new FakeHitWriter();
+        HitWal wal = open(first, 5);
+        wal.submit(List.of(hit("/events/1"))).get(5, TimeUnit.SECONDS);
+        awaitCheckpoint(walEnd());
+        wal.shutdown();
+        opened.remove(wal);
+
+        FakeHitWriter down = new FakeHitWriter();
+        down.available = false;
+        wal = open(down, 5);
+        wal.submit(List.of(hit("/events/2"))).get(5, TimeUnit.SECONDS);
+        wal.shutdown();
+        opened.remove(wal);
+
+        FakeHitWriter second = new FakeHitWriter();
+        open(second, 5);
+        awaitCheckpoint(walEnd());
+        assertThat(first.uris()).containsExactly("/events/1");
+        assertThat(down.uris()).isEmpty();
+        assertThat(second.uris()).containsExactly("/events/2");
+    }
+
+    @Test
+    void transientErrorsAreRetriedWithoutDeadLetter() throws Exception {
+        FakeHitWriter writer = new FakeHitWriter();
+        writer.available = false;
+        HitWal wal = open(writer, 1);
+
+        wal.submit(List.of(hit("/events/1"))).get(5, TimeUnit.SECONDS);
+        await(() -> writer.transientFailures > 3);
+        writer.available = true;
+
+        awaitCheckpoint(walEnd());
+        assertThat(writer.uris()).containsExactly("/events/1");
+        assertThat(dir.resolve("dead-letter")).doesNotExist();
+    }
+
+    @Test
+    void onlyFailingRecordsAreDeadLettered() throws Exception {
+        FakeHitWriter writer = new FakeHitWriter();
+        writer.available = false;
+        HitWal wal = open(writer, 2);
+
+        wal.submit(List.of(hit("/events/1"), hit("/events/2"))).get(5, TimeUnit.SECONDS);
+        wal.submit(List.of(hit("/bad"))).get(5, TimeUnit.SECONDS);
+        wal.submit(List.of(hit("/events/3"))).get(5, TimeUnit.SECONDS);
+        wal.submit(List.of(hit("/bad"), hit("/events/4"))).get(5, TimeUnit.SECONDS);
+        wal.submit(List.of(hit("/events/5"))).get(5, TimeUnit.SECONDS);
+        writer.available = true;
+
+        awaitCheckpoint(walEnd());
+        assertThat(writer.uris()).containsExactly("/events/1", "/events/2", "/events/3", "/events/5");
+        assertThat(deadLetterUris()).containsExactly("/bad", "/bad", "/events/4");
+    }
+
+    private HitWal open(FakeHitWriter writer, int maxAttempts) throws IOException {
+        HitWal wal = new HitWal(writer, checkpoints, new SimpleMeterRegistry(), dir, DataSize.ofMegabytes(1),
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(2), 100, Duration.ofMillis(10), maxAttempts, 1000,
+                Duration.ofSeconds(5));
+        wal.start();
+        opened.add(wal);
+        return wal;
+    }
+
+    private long walEnd() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".wal"))
+                    .mapToLong(file -> Long.parseLong(file.getFileName().toString().replace(".wal", "")) + size(file))
+                    .max()
+                    .orElse(0);
+        }
+    }
+
+    private void awaitCheckpoint(long position) throws InterruptedException {
+        await(() -> checkpoints.positions.values().stream().anyMatch(saved -> saved == position));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("условие не выполнено за 10 секунд").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * URI просмотров из файлов {@code dead-letter} по порядку файлов: файлы в формате журнала.
+     */
+    private List<String> deadLetterUris() throws IOException {
+        List<String> uris = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir.resolve("dead-letter"))) {
+            for (Path file : files.sorted().toList()) {
+                ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(file));
+                while (records.hasRemaining()) {
+                    byte[] frame = new byte[records.getInt()];
+                    records.getInt();
+                    records.get(frame);
+                    HitFrameCodec.decode(frame).forEach(hit -> uris.add(hit.getUri()));
+                }
+            }
+        }
+        return uris;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Hit hit(String uri) {
+        return new Hit(null, "ewm-main-service", uri, null, IpMapper.toInetAddress("10.0.0.1"), T0);
+    }
+
+    /**
+     * Записывает просмотры в список. Пока {@code available} ложно, отвечает временной ошибкой,
+     * а пачку с URI {@code /bad} отклоняет постоянной ошибкой.
+     */
+    private static class FakeHitWriter extends HitWriter {
+        private final List<Hit> written = new ArrayList<>();
+        volatile boolean available = true;
+        volatile int transientFailures;
+
+        FakeHitWriter() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public synchronized void copyAll(List<Hit> hits, Runnable inTransaction) {
+            if (!available) {
+                transientFailures++;
+                throw new QueryTimeoutException("БД недоступна");
+            }
+            if (hits.stream().anyMatch(hit -> hit.getUri().equals("/bad"))) {
+                throw new DataIntegrityViolationException("Просмотр не проходит ограничения");
+            }
+            inTransaction.run();
+            written.addAll(hits);
+        }
+
+        synchronized List<String> uris() {
+            return written.stream().map(Hit::getUri).toList();
+        }
+    }
+
+    private static class FakeCheckpointRepository extends WalCheckpointRepository {
+        private final Map<UUID, Long> positions = new ConcurrentHashMap<>();
+
+        FakeCheckpointRepository() {
+            super(null);
+        }
+
+        @Override
+        public OptionalLong find(UUID walId) {
+            Long position = positions.get(walId);
+            return position != null ? OptionalLong.of(position) : OptionalLong.empty();
+        }
+
+        @Override
+        public void save(UUID walId, long position) {
+            positions.put(walId, position);
+        }
+    }
+}
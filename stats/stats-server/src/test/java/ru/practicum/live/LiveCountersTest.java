@@ -0,0 +1,99 @@
+package ru.practicum.live;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.storage.segment.SegmentHitStorage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LiveCountersTest {
+    private static final Duration SHORT = Duration.ofMinutes(5);
+    private static final Duration LONG = Duration.ofHours(1);
+
+    @TempDir
+    Path dir;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    void countsHitsPerWindow() {
+        LiveCounters counters = new LiveCounters(null, List.of(LONG, SHORT), 60, 100);
+        counters.add(List.of(hit("/events/1", now), hit("/events/1", now.minusMinutes(1)),
+                hit("/events/2", now.minusMinutes(10)), hit("/events/3", now.minusHours(2))));
+
+        assertThat(counters.get(null, SHORT)).containsExactly(stats("/events/1", 2));
+        assertThat(counters.get(null, LONG)).containsExactly(stats("/events/1", 2), stats("/events/2", 1));
+        assertThat(counters.get(List.of("/events/2"), LONG)).containsExactly(stats("/events/2", 1));
+    }
+
+    @Test
+    void futureHitsCountAsCurrent() {
+        LiveCounters counters = new LiveCounters(null, List.of(SHORT), 60, 100);
+        counters.add(List.of(hit("/events/1", now.plusHours(1))));
+
+        assertThat(counters.get(null, SHORT)).containsExactly(stats("/events/1", 1));
+    }
+
+    @Test
+    void overflowEvictsLeastRecentlyViewedUris() {
+        LiveCounters counters = new LiveCounters(null, List.of(LONG), 60, 10);
+        for (int i = 0; i <= 10; i++) {
+            counters.add(List.of(hit("/events/" + i, now.minusMinutes(20 - i))));
+        }
+
+        List<String> uris = counters.get(null, LONG).stream().map(ViewStatsDto::getUri).toList();
+        assertThat(uris).hasSize(9).doesNotContain("/events/0", "/events/1");
+
+        counters.add(List.of(hit("/events/0", now)));
+        assertThat(counters.get(List.of("/events/0"), LONG)).containsExactly(stats("/events/0", 1));
+    }
+
+    @Test
+    void warmUpLoadsRecentHitsFromStorage() throws IOException {
+        SegmentHitStorage storage = new SegmentHitStorage(dir, 16, false);
+        try {
+            storage.saveAll(List.of(hit("/events/1", now.minusMinutes(2)), hit("/events/1", now.minusMinutes(30)),
+                    hit("/events/2", now.minusMinutes(30)), hit("/events/2", now.minusHours(2))));
+            LiveCounters counters = new LiveCounters(storage, List.of(SHORT, LONG), 60, 100);
+
+            counters.afterSingletonsInstantiated();
+
+            assertThat(counters.get(null, SHORT)).containsExactly(stats("/events/1", 1));
+            assertThat(counters.get(null, LONG)).containsExactly(stats("/events/1", 2), stats("/events/2", 1));
+        } finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    void rejectsUnknownWindow() {
+        LiveCounters counters = new LiveCounters(null, List.of(SHORT), 60, 100);
+
+        assertThatThrownBy(() -> counters.get(null, LONG)).isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void rejectsWindowNotDivisibleIntoSlots() {
+        assertThatThrownBy(() -> new LiveCounters(null, List.of(Duration.ofSeconds(90)), 60, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Hit hit(String uri, LocalDateTime timestamp) {
+        return new Hit(null, "ewm-main-service", uri, null, IpMapper.toInetAddress("10.0.0.1"), timestamp);
+    }
+
+    private static ViewStatsDto stats(String uri, long hits) {
+        return new ViewStatsDto("ewm-main-service", uri, hits);
+    }
+}
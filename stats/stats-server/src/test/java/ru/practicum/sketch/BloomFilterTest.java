@@ -0,0 +1,66 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+    @Test
+    void hasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.001);
+        for (long i = 0; i < 10_000; i++) {
+            filter.put(Hashing.mix64(i));
+        }
+
+        for (long i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain(Hashing.mix64(i))).as("хеш %d", i).isTrue();
+        }
+    }
+
+    @Test
+    void putReportsRepeatedHash() {
+        BloomFilter filter = new BloomFilter(1000, 0.001);
+
+        assertThat(filter.put(Hashing.hash64("/events/1"))).isFalse();
+        assertThat(filter.put(Hashing.hash64("/events/1"))).isTrue();
+        assertThat(filter.mightContain(Hashing.hash64("/events/2"))).isFalse();
+    }
+
+    @Test
+    void falsePositiveRateStaysNearFpp() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (long i = 0; i < 100_000; i++) {
+            filter.put(Hashing.mix64(i));
+        }
+
+        int falsePositives = 0;
+        for (long i = 100_000; i < 1_100_000; i++) {
+            if (filter.mightContain(Hashing.mix64(i))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 1_000_000.0).isLessThan(0.0125);
+    }
+
+    @Test
+    void isSaturatedAfterExpectedInsertions() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (long i = 0; i < 500; i++) {
+            filter.put(Hashing.mix64(i));
+        }
+        assertThat(filter.isSaturated()).isFalse();
+
+        for (long i = 500; i < 2000; i++) {
+            filter.put(Hashing.mix64(i));
+        }
+        assertThat(filter.isSaturated()).isTrue();
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        assertThatThrownBy(() -> new BloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(1000, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(1000, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
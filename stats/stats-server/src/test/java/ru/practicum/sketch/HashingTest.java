@@ -0,0 +1,27 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashingTest {
+    @Test
+    void hash64IsFirstEightBytesOfMd5() {
+        // md5("") = d41d8cd98f00b204e9800998ecf8427e, md5("abc") = 900150983cd24fb0d6963f7d28e17f72
+        assertThat(Hashing.hash64("")).isEqualTo(0xd41d8cd98f00b204L);
+        assertThat(Hashing.hash64("abc")).isEqualTo(0x900150983cd24fb0L);
+    }
+
+    @Test
+    void hash64EncodesValueAsUtf8() {
+        // md5 от байт UTF-8 = f43eede2d635af40f32a2b21c42daa45, как md5(text) в PostgreSQL с кодировкой UTF8
+        assertThat(Hashing.hash64("просмотр")).isEqualTo(0xf43eede2d635af40L);
+    }
+
+    @Test
+    void mix64MatchesSplitMix64() {
+        // первые значения генератора SplitMix64 с начальными состояниями 0 и 1
+        assertThat(Hashing.mix64(0)).isEqualTo(0xe220a8397b1dcdafL);
+        assertThat(Hashing.mix64(1)).isEqualTo(0x910a2dec89025cc1L);
+    }
+}
@@ -0,0 +1,175 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+    private static final int REGISTERS = 1 << HyperLogLog.PRECISION;
+
+    @Test
+    void sketchMatchesMigrationSql() throws NoSuchAlgorithmException {
+        HyperLogLog hll = new HyperLogLog();
+        Map<Integer, Integer> ranks = new TreeMap<>();
+        for (int i = 0; i < 1500; i++) {
+            String ip = ip(i);
+            hll.add(ip);
+            migrationRank(ip, ranks);
+        }
+
+        assertThat(hll.toBytes()).isEqualTo(migrationSketch(ranks));
+    }
+
+    @Test
+    void rankCountsBitsAfterRegisterIndex() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.addHash(0L);
+        hll.addHash(1L);
+        hll.addHash(0xfffe000000000000L);
+        hll.addHash(0x0001000000000000L);
+        hll.addHash(0x0000000000000001L | 0x0004000000000000L);
+
+        // регистр 0: максимум из 51 (все 50 бит нулевые), 50 и 2;
+        // регистр 1: единица только в последнем бите — 50; регистр 16383: первый же бит — 1
+        assertThat(hll.toBytes()).isEqualTo(HexFormat.of().parseHex("010e" + "00000003"
+                + "0000" + "33" + "0001" + "32" + "3fff" + "01"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 10, 100})
+    void estimateIsExactForSmallCardinalities(int cardinality) {
+        assertThat(sketch(0, cardinality).estimate()).isEqualTo(cardinality);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1000, 5000, 10_000, 40_000, 100_000, 1_000_000})
+    void estimateIsWithinErrorBound(int cardinality) {
+        // 2.5% — три стандартные ошибки при 16384 регистрах
+        assertThat(sketch(0, cardinality).estimate()).isCloseTo(cardinality, within((long) (cardinality * 0.025)));
+    }
+
+    @Test
+    void repeatedValuesDoNotChangeEstimate() {
+        HyperLogLog hll = sketch(0, 1000);
+        byte[] before = hll.toBytes();
+        for (int i = 0; i < 1000; i++) {
+            hll.add(ip(i));
+        }
+
+        assertThat(hll.toBytes()).isEqualTo(before);
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        // разреженный с разреженным, разреженный с плотным и наоборот, плотный с плотным
+        int[][] ranges = {{0, 500, 300, 900}, {0, 500, 200, 20_000}, {0, 20_000, 19_000, 19_500},
+                {0, 20_000, 10_000, 40_000}};
+        for (int[] range : ranges) {
+            HyperLogLog merged = sketch(range[0], range[1]);
+            merged.merge(sketch(range[2], range[3]));
+            HyperLogLog union = sketch(range[0], Math.max(range[1], range[3]));
+
+            assertThat(registers(merged)).isEqualTo(registers(union));
+            assertThat(merged.estimate()).isEqualTo(union.estimate());
+        }
+    }
+
+    @Test
+    void fromBytesRestoresSparseAndDenseSketches() {
+        for (int cardinality : new int[]{0, 100, 20_000}) {
+            HyperLogLog hll = sketch(0, cardinality);
+            HyperLogLog restored = HyperLogLog.fromBytes(hll.toBytes());
+
+            assertThat(restored.toBytes()).isEqualTo(hll.toBytes());
+            assertThat(restored.estimate()).isEqualTo(hll.estimate());
+            restored.add(ip(cardinality));
+            hll.add(ip(cardinality));
+            assertThat(restored.toBytes()).isEqualTo(hll.toBytes());
+        }
+    }
+
+    @Test
+    void fromBytesRejectsUnknownFormatAndPrecision() {
+        byte[] bytes = sketch(0, 10).toBytes();
+        byte[] format = bytes.clone();
+        format[0] = 7;
+        byte[] precision = bytes.clone();
+        precision[1] = 12;
+
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(format)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(precision)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HyperLogLog sketch(int from, int to) {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = from; i < to; i++) {
+            hll.add(ip(i));
+        }
+        return hll;
+    }
+
+    private static String ip(int i) {
+        return "10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+    }
+
+    /**
+     * Регистры скетча в любом формате сериализации.
+     */
+    private static byte[] registers(HyperLogLog hll) {
+        ByteBuffer buffer = ByteBuffer.wrap(hll.toBytes());
+        byte format = buffer.get();
+        buffer.get();
+        byte[] registers = new byte[REGISTERS];
+        if (format == 2) {
+            buffer.get(registers);
+        } else {
+            int size = buffer.getInt();
+            for (int i = 0; i < size; i++) {
+                registers[buffer.getShort() & 0xffff] = buffer.get();
+            }
+        }
+        return registers;
+    }
+
+    /**
+     * Регистр и значение для IP так же, как в миграции 004-create-hll.sql: по строке бит
+     * {@code ('x' || substr(md5(ip), 1, 16))::bit(64)::text}, без {@link Hashing}.
+     */
+    private static void migrationRank(String ip, Map<Integer, Integer> ranks) throws NoSuchAlgorithmException {
+        String md5 = HexFormat.of().formatHex(MessageDigest.getInstance("MD5")
+                .digest(ip.getBytes(StandardCharsets.UTF_8)));
+        StringBuilder bits = new StringBuilder();
+        for (char c : md5.substring(0, 16).toCharArray()) {
+            bits.append(lpad(Integer.toBinaryString(Character.digit(c, 16)), 4));
+        }
+        int register = Integer.parseInt(bits.substring(0, 14), 2);
+        int position = bits.substring(14).indexOf('1') + 1;
+        ranks.merge(register, position != 0 ? position : 51, Math::max);
+    }
+
+    /**
+     * Разреженный скетч, как его собирает миграция: {@code '010e' || число пар || пары}.
+     */
+    private static byte[] migrationSketch(Map<Integer, Integer> ranks) {
+        StringBuilder hex = new StringBuilder("010e").append(lpad(Integer.toHexString(ranks.size()), 8));
+        ranks.forEach((register, rank) -> hex.append(lpad(Integer.toHexString(register), 4))
+                .append(lpad(Integer.toHexString(rank), 2)));
+        return HexFormat.of().parseHex(hex);
+    }
+
+    private static String lpad(String value, int length) {
+        return "0".repeat(length - value.length()) + value;
+    }
+}
@@ -0,0 +1,166 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpaceSavingTest {
+    @Test
+    void countsAreExactWhileKeysFitCapacity() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(4);
+        sketch.add("/events/1", 5);
+        sketch.add("/events/2", 2);
+        sketch.add("/events/1", 1);
+        sketch.add("/events/3", 4);
+
+        assertThat(sketch.top(10)).containsExactly(
+                new SpaceSaving.Entry<>("/events/1", 6, 0),
+                new SpaceSaving.Entry<>("/events/3", 4, 0),
+                new SpaceSaving.Entry<>("/events/2", 2, 0));
+        assertThat(sketch.top(1)).extracting(SpaceSaving.Entry::key).containsExactly("/events/1");
+        assertThat(sketch.errorBound()).isZero();
+        assertThat(sketch.total()).isEqualTo(12);
+    }
+
+    @Test
+    void newKeyInheritsSmallestCounter() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(2);
+        sketch.add("/events/1", 5);
+        sketch.add("/events/2", 2);
+        sketch.add("/events/3", 1);
+
+        assertThat(sketch.top(10)).containsExactly(
+                new SpaceSaving.Entry<>("/events/1", 5, 0),
+                new SpaceSaving.Entry<>("/events/3", 3, 2));
+        assertThat(sketch.errorBound()).isEqualTo(3);
+    }
+
+    @Test
+    void frequentKeysAreTrackedWithinErrorBound() {
+        Map<String, Long> counts = new HashMap<>();
+        SpaceSaving<String> sketch = new SpaceSaving<>(50);
+        for (String key : zipfStream(1000, 20_000, 1)) {
+            sketch.add(key, 1);
+            counts.merge(key, 1L, Long::sum);
+        }
+
+        assertThat(sketch.errorBound()).isLessThanOrEqualTo(sketch.total() / 50);
+        assertTracked(sketch, counts, sketch.errorBound());
+    }
+
+    @Test
+    void mergeKeepsErrorWithinCombinedTotal() {
+        Map<String, Long> counts = new HashMap<>();
+        SpaceSaving<String> first = new SpaceSaving<>(50);
+        SpaceSaving<String> second = new SpaceSaving<>(50);
+        for (String key : zipfStream(1000, 20_000, 1)) {
+            first.add(key, 1);
+            counts.merge(key, 1L, Long::sum);
+        }
+        for (String key : zipfStream(1000, 20_000, 2)) {
+            second.add(key, 1);
+            counts.merge(key, 1L, Long::sum);
+        }
+
+        first.merge(second);
+
+        assertThat(first.total()).isEqualTo(40_000);
+        assertTracked(first, counts, first.total() / 50);
+    }
+
+    @Test
+    void mergeAccountsForKeysEvictedFromOtherSketch() {
+        // /events/1 вытеснен из второго скетча, хотя встретился в нем дважды
+        SpaceSaving<String> first = new SpaceSaving<>(2);
+        first.add("/events/1", 5);
+        first.add("/events/2", 1);
+        SpaceSaving<String> second = new SpaceSaving<>(2);
+        second.add("/events/1", 2);
+        second.add("/events/3", 3);
+        second.add("/events/4", 1);
+        Map<String, Long> counts = Map.of("/events/1", 7L, "/events/2", 1L, "/events/3", 3L, "/events/4", 1L);
+
+        first.merge(second);
+
+        assertThat(first.top(1)).containsExactly(new SpaceSaving.Entry<>("/events/1", 8, 3));
+        assertThat(first.errorBound()).isEqualTo(4);
+        assertThat(first.total()).isEqualTo(12);
+        assertTracked(first, counts, first.errorBound());
+    }
+
+    @Test
+    void mergeOfManySketchesKeepsBounds() {
+        Map<String, Long> counts = new HashMap<>();
+        SpaceSaving<String> merged = new SpaceSaving<>(20);
+        for (int pane = 0; pane < 60; pane++) {
+            SpaceSaving<String> sketch = new SpaceSaving<>(20);
+            for (String key : zipfStream(500, 2_000, pane)) {
+                // у каждой части свои самые частые ключи
+                String shifted = "/events/" + (Integer.parseInt(key.substring("/events/".length())) + pane * 7);
+                sketch.add(shifted, 1);
+                counts.merge(shifted, 1L, Long::sum);
+            }
+            merged.merge(sketch);
+        }
+
+        assertThat(merged.total()).isEqualTo(120_000);
+        assertTracked(merged, counts, merged.errorBound());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThatThrownBy(() -> new SpaceSaving<String>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Каждый ключ, встретившийся больше {@code bound} раз, есть в скетче, а его истинное
+     * число появлений лежит в {@code [count - error, count]}.
+     */
+    private static void assertTracked(SpaceSaving<String> sketch, Map<String, Long> counts, long bound) {
+        List<SpaceSaving.Entry<String>> top = sketch.top(Integer.MAX_VALUE);
+        Map<String, SpaceSaving.Entry<String>> entries = new HashMap<>();
+        top.forEach(entry -> entries.put(entry.key(), entry));
+        for (int i = 1; i < top.size(); i++) {
+            assertThat(top.get(i).count()).isLessThanOrEqualTo(top.get(i - 1).count());
+        }
+        counts.forEach((key, count) -> {
+            if (count > bound) {
+                assertThat(entries).containsKey(key);
+            }
+            SpaceSaving.Entry<String> entry = entries.get(key);
+            if (entry != null) {
+                assertThat(count).isBetween(entry.count() - entry.error(), entry.count());
+            }
+        });
+    }
+
+    /**
+     * Перемешанный поток {@code size} появлений {@code keys} ключей с частотами по закону Ципфа.
+     */
+    private static List<String> zipfStream(int keys, int size, long seed) {
+        double norm = 0;
+        for (int i = 1; i <= keys; i++) {
+            norm += 1.0 / i;
+        }
+        List<String> stream = new ArrayList<>(size);
+        for (int i = 1; i <= keys && stream.size() < size; i++) {
+            long count = Math.max(1, Math.round(size / norm / i));
+            for (long j = 0; j < count && stream.size() < size; j++) {
+                stream.add("/events/" + i);
+            }
+        }
+        while (stream.size() < size) {
+            stream.add("/events/" + (keys + stream.size()));
+        }
+        Collections.shuffle(stream, new Random(seed));
+        return stream;
+    }
+}
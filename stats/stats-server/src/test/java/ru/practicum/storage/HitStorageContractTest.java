@@ -0,0 +1,200 @@
+package ru.practicum.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.BucketViews;
+import ru.practicum.model.Hit;
+import ru.practicum.model.TimeBucket;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Общий контракт {@link HitStorage}: каждая реализация должна давать одинаковую
+ * статистику на одних и тех же просмотрах. Подклассы готовят пустое хранилище
+ * перед каждым тестом.
+ */
+public abstract class HitStorageContractTest {
+    protected static final String APP = "ewm-main-service";
+
+    /**
+     * Начало диапазонов тестов: целый час, чтобы диапазоны считались по агрегатам.
+     */
+    protected static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 10, 10, 0);
+
+    /**
+     * Пустое хранилище для текущего теста.
+     */
+    protected abstract HitStorage storage();
+
+    @Test
+    void getStatsIncludesHitsAtStartAndEnd() {
+        LocalDateTime end = T0.plusHours(2);
+        save(hit("/events/1", "10.0.0.1", T0.minusSeconds(1)),
+                hit("/events/1", "10.0.0.1", T0),
+                hit("/events/1", "10.0.0.1", T0.plusMinutes(30)),
+                hit("/events/1", "10.0.0.1", T0.plusMinutes(90).plusSeconds(15)),
+                hit("/events/1", "10.0.0.1", end),
+                hit("/events/1", "10.0.0.1", end.plusSeconds(1)));
+
+        assertThat(storage().getStats(T0, end, null, false, false))
+                .containsExactly(stats("/events/1", 4));
+    }
+
+    @Test
+    void getStatsIncludesEndOfRangeWithPartialMinutes() {
+        LocalDateTime start = T0.plusSeconds(30);
+        LocalDateTime end = T0.plusHours(2).minusSeconds(30);
+        save(hit("/events/1", "10.0.0.1", start.minusNanos(1000)),
+                hit("/events/1", "10.0.0.1", start),
+                hit("/events/1", "10.0.0.1", T0.plusHours(1)),
+                hit("/events/1", "10.0.0.1", end),
+                hit("/events/1", "10.0.0.1", end.plusNanos(1000)));
+
+        assertThat(storage().getStats(start, end, null, false, false))
+                .containsExactly(stats("/events/1", 3));
+        assertThat(storage().getStats(end, end, null, false, false))
+                .containsExactly(stats("/events/1", 1));
+    }
+
+    @Test
+    void getStatsCountsUniqueIps() {
+        LocalDateTime end = T0.plusHours(3);
+        save(hit("/events/1", "10.0.0.1", T0),
+                hit("/events/1", "10.0.0.1", T0.plusHours(1)),
+                hit("/events/1", "10.0.0.2", T0.plusHours(2)),
+                hit("/events/1", "10.0.0.2", end),
+                hit("/events/1", "10.0.0.3", end.plusSeconds(1)));
+
+        assertThat(storage().getStats(T0, end, null, false, false))
+                .containsExactly(stats("/events/1", 4));
+        assertThat(storage().getStats(T0, end, null, true, false))
+                .containsExactly(stats("/events/1", 2));
+        assertThat(storage().getStats(T0.plusMinutes(90), end, null, true, false))
+                .containsExactly(stats("/events/1", 1));
+    }
+
+    @Test
+    void getStatsCountsUniqueIpsOverLongRange() {
+        LocalDateTime end = T0.plusDays(10);
+        save(hit("/events/1", "10.0.0.1", T0.minusDays(1)),
+                hit("/events/1", "10.0.0.1", T0.plusDays(3)),
+                hit("/events/1", "10.0.0.2", T0),
+                hit("/events/1", "10.0.0.3", T0.minusDays(2)),
+                hit("/events/2", "10.0.0.1", T0.plusDays(1)),
+                hit("/events/2", "10.0.0.2", T0.plusDays(9)),
+                hit("/events/2", "10.0.0.2", end),
+                hit("/events/2", "10.0.0.3", end.plusSeconds(1)));
+
+        assertThat(storage().getStats(T0, end, null, true, false))
+                .containsExactlyInAnyOrder(stats("/events/1", 2), stats("/events/2", 2));
+        assertThat(storage().getStats(T0, end, List.of("/events/1"), true, false))
+                .containsExactly(stats("/events/1", 2));
+    }
+
+    @Test
+    void getStatsCountsIpv4AndIpv6Separately() {
+        LocalDateTime end = T0.plusHours(2);
+        save(hit("/events/1", "10.0.0.1", T0),
+                hit("/events/1", "2001:db8::1", T0.plusMinutes(10)),
+                hit("/events/1", "2001:db8:0:0:0:0:0:1", T0.plusMinutes(20)),
+                hit("/events/1", "2001:db8::2", T0.plusMinutes(30)),
+                hit("/events/1", "10.0.0.1", T0.plusMinutes(40)));
+
+        assertThat(storage().getStats(T0, end, null, false, false))
+                .containsExactly(stats("/events/1", 5));
+        assertThat(storage().getStats(T0, end, null, true, false))
+                .containsExactly(stats("/events/1", 3));
+    }
+
+    @Test
+    void getStatsIgnoresUnknownUrisInFilter() {
+        LocalDateTime end = T0.plusHours(1);
+        save(hit("/events/1", "10.0.0.1", T0),
+                hit("/events/2", "10.0.0.1", T0.plusMinutes(1)));
+
+        assertThat(storage().getStats(T0, end, List.of("/events/1", "/events/unknown"), false, false))
+                .containsExactly(stats("/events/1", 1));
+        assertThat(storage().getStats(T0, end, List.of("/events/1", "/events/unknown"), true, false))
+                .containsExactly(stats("/events/1", 1));
+        assertThat(storage().getStats(T0, end, List.of("/events/unknown"), false, false))
+                .isEmpty();
+        assertThat(storage().getStats(T0, end, List.of("/events/unknown"), true, false))
+                .isEmpty();
+    }
+
+    @Test
+    void getStatsOrdersByHitsDescending() {
+        LocalDateTime end = T0.plusHours(2);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            hits.add(hit("/events/1", "10.0.0." + (i + 1), T0.plusMinutes(i)));
+        }
+        for (int i = 0; i < 5; i++) {
+            hits.add(hit("/events/2", "10.0.0." + (i + 1), T0.plusMinutes(61 + i)));
+        }
+        hits.add(hit("/events/3", "10.0.0.1", end));
+        save(hits.toArray(Hit[]::new));
+
+        List<ViewStatsDto> expected = List.of(stats("/events/2", 5), stats("/events/1", 3), stats("/events/3", 1));
+        assertThat(storage().getStats(T0, end, null, false, false)).containsExactlyElementsOf(expected);
+        assertThat(storage().getStats(T0, end, null, true, false)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void getStatsSinceUsesStartOfEachUri() {
+        LocalDateTime end = T0.plusHours(3);
+        save(hit("/events/1", "10.0.0.1", T0),
+                hit("/events/1", "10.0.0.2", T0.plusHours(1)),
+                hit("/events/1", "10.0.0.2", T0.plusHours(2)),
+                hit("/events/2", "10.0.0.1", T0.plusMinutes(30)),
+                hit("/events/2", "10.0.0.1", T0.plusMinutes(90)),
+                hit("/events/2", "10.0.0.1", end));
+        Map<String, LocalDateTime> starts = Map.of(
+                "/events/1", T0,
+                "/events/2", T0.plusMinutes(90),
+                "/events/unknown", T0);
+
+        assertThat(storage().getStatsSince(starts, end, false, false))
+                .containsExactly(stats("/events/1", 3), stats("/events/2", 2));
+        assertThat(storage().getStatsSince(starts, end, true, false))
+                .containsExactly(stats("/events/1", 2), stats("/events/2", 1));
+    }
+
+    @Test
+    void getTimeSeriesCountsHitsPerBucket() {
+        LocalDateTime start = T0.plusMinutes(30);
+        LocalDateTime end = T0.plusHours(2);
+        save(hit("/events/1", "10.0.0.1", T0),
+                hit("/events/1", "10.0.0.1", start),
+                hit("/events/1", "10.0.0.1", T0.plusMinutes(59).plusSeconds(59)),
+                hit("/events/1", "10.0.0.1", T0.plusHours(1)),
+                hit("/events/1", "10.0.0.1", end),
+                hit("/events/2", "10.0.0.1", T0.plusMinutes(75)));
+
+        assertThat(storage().getTimeSeries(start, end, null, TimeBucket.HOUR)).containsExactlyInAnyOrder(
+                new BucketViews(APP, "/events/1", T0, 2),
+                new BucketViews(APP, "/events/1", T0.plusHours(1), 1),
+                new BucketViews(APP, "/events/1", T0.plusHours(2), 1),
+                new BucketViews(APP, "/events/2", T0.plusHours(1), 1));
+        assertThat(storage().getTimeSeries(start, end, List.of("/events/2", "/events/unknown"), TimeBucket.MINUTE))
+                .containsExactly(new BucketViews(APP, "/events/2", T0.plusMinutes(75), 1));
+    }
+
+    protected void save(Hit... hits) {
+        storage().saveAll(List.of(hits));
+    }
+
+    protected static Hit hit(String uri, String ip, LocalDateTime timestamp) {
+        return new Hit(null, APP, uri, null, IpMapper.toInetAddress(ip), timestamp);
+    }
+
+    protected static ViewStatsDto stats(String uri, long hits) {
+        return new ViewStatsDto(APP, uri, hits);
+    }
+}
@@ -0,0 +1,165 @@
+package ru.practicum.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.model.Hit;
+import ru.practicum.model.TimeRange;
+import ru.practicum.repository.SketchRepository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Контракт {@link HitStorage} для {@link JpaHitStorage} на PostgreSQL в Testcontainers.
+ * Без Docker тест использует уже запущенную БД из переменной окружения
+ * {@code STATS_TEST_DB_URL} (пользователь и пароль — {@code STATS_TEST_DB_USERNAME},
+ * {@code STATS_TEST_DB_PASSWORD}), а если нет и ее, пропускается. Таблицы просмотров
+ * и агрегатов очищаются перед каждым тестом. Скетчи IP-адресов тесты строят сами,
+ * поэтому фоновое построение запускается только при старте контекста.
+ */
+@EnabledIf("databaseAvailable")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "stats.ingest.mode=sync",
+        "stats.sketches.interval=1d",
+        "logging.level.org.hibernate=WARN",
+        "logging.level.org.springframework=WARN",
+        "logging.level.liquibase=WARN"
+})
+class JpaHitStorageContractTest extends HitStorageContractTest {
+    private static final String DB_URL = System.getenv("STATS_TEST_DB_URL");
+
+    private static PostgreSQLContainer<?> postgres;
+
+    @Autowired
+    private JpaHitStorage storage;
+
+    @Autowired
+    private SketchRepository sketchRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    static boolean databaseAvailable() {
+        return DB_URL != null || DockerClientFactory.instance().isDockerAvailable();
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        if (DB_URL != null) {
+            registry.add("spring.datasource.url", () -> DB_URL);
+            registry.add("spring.datasource.username", () -> System.getenv("STATS_TEST_DB_USERNAME"));
+            registry.add("spring.datasource.password", () -> System.getenv("STATS_TEST_DB_PASSWORD"));
+            return;
+        }
+        if (postgres == null) {
+            postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+            postgres.start();
+        }
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @BeforeEach
+    void truncate() {
+        jdbcTemplate.execute("TRUNCATE hits, hits_minute, hits_hour, hits_hll, hit_visitors, hit_compaction, " +
+                "hit_sketch_progress");
+    }
+
+    @Test
+    void sketchesBuiltInSqlMatchSketchesBuiltInJava() {
+        // без хода построения скетчи строятся при записи, в Java; скетч /events/1
+        // переходит в плотное представление, скетч /events/2 остается разреженным
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            hits.add(hit("/events/1", "10.0." + i / 256 + "." + i % 256, T0.plusSeconds(i % 3600)));
+            if (i % 10 == 0) {
+                hits.add(hit("/events/2", "2001:db8::" + Integer.toHexString(i), T0.plusSeconds(i % 3600)));
+            }
+        }
+        storage.saveAll(hits);
+        List<byte[]> java = sketches();
+        jdbcTemplate.update("DELETE FROM hits_hll");
+
+        transactionTemplate.execute(status -> sketchRepository.build(T0));
+
+        assertThat(sketches()).hasSize(2).containsExactlyElementsOf(java);
+    }
+
+    @Test
+    void approximateUniqueIpsCountHoursWithoutSketchesFromHits() {
+        LocalDateTime end = T0.plusHours(3);
+        jdbcTemplate.update("INSERT INTO hit_sketch_progress (sketched_before, pending_before) VALUES (?, ?)",
+                Timestamp.valueOf(T0), Timestamp.valueOf(T0));
+        save(hit("/events/1", "10.0.0.1", T0),
+                hit("/events/1", "10.0.0.1", T0.plusHours(1)),
+                hit("/events/1", "10.0.0.2", T0.plusHours(2)),
+                hit("/events/1", "10.0.0.3", end));
+        // как если бы просмотры были записаны, пока их часы еще не закончились
+        jdbcTemplate.update("DELETE FROM hits_hll");
+
+        assertThat(sketches()).isEmpty();
+        assertThat(storage.getStats(T0, end, null, true, true)).containsExactly(stats("/events/1", 3));
+
+        TimeRange pending = transactionTemplate.execute(status -> sketchRepository.reserve(end, T0));
+        assertThat(pending).isEqualTo(new TimeRange(T0, end));
+        for (LocalDateTime hour = T0; hour.isBefore(end); hour = hour.plusHours(1)) {
+            LocalDateTime bucket = hour;
+            transactionTemplate.execute(status -> sketchRepository.build(bucket));
+        }
+
+        assertThat(sketchRepository.findSketchedBefore()).contains(end);
+        assertThat(sketches()).hasSize(3);
+        assertThat(storage.getStats(T0, end, null, true, true)).containsExactly(stats("/events/1", 3));
+
+        // опоздавший просмотр часа, скетч которого уже построен, добавляется в скетч при записи
+        save(hit("/events/1", "10.0.0.4", T0.plusMinutes(30)));
+        assertThat(storage.getStats(T0, end, null, true, true)).containsExactly(stats("/events/1", 4));
+    }
+
+    @Test
+    void exactUniqueIpsBeforeCompactionBoundaryAreRejected() {
+        LocalDateTime boundary = T0.plusHours(1);
+        LocalDateTime end = T0.plusHours(3);
+        save(hit("/events/1", "10.0.0.1", T0.plusHours(2)));
+        jdbcTemplate.update("INSERT INTO hit_compaction (compacted_before) VALUES (?)", Timestamp.valueOf(boundary));
+
+        assertThatThrownBy(() -> storage.getStats(T0, end, null, true, false))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> storage.getStatsSince(Map.of("/events/1", T0), end, true, false))
+                .isInstanceOf(ValidationException.class);
+
+        assertThat(storage.getStats(boundary, end, null, true, false)).containsExactly(stats("/events/1", 1));
+        assertThat(storage.getStats(T0, end, null, true, true)).containsExactly(stats("/events/1", 1));
+        assertThat(storage.getStatsSince(Map.of("/events/1", T0), end, true, true))
+                .containsExactly(stats("/events/1", 1));
+    }
+
+    private List<byte[]> sketches() {
+        return jdbcTemplate.queryForList("SELECT sketch FROM hits_hll ORDER BY uri_id, bucket", byte[].class);
+    }
+
+    @Override
+    protected HitStorage storage() {
+        return storage;
+    }
+}
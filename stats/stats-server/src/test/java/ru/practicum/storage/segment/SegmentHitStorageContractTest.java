@@ -0,0 +1,37 @@
+package ru.practicum.storage.segment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.storage.HitStorageContractTest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Контракт {@link HitStorage} для {@link SegmentHitStorage}: каждый тест пишет
+ * в свой временный каталог. Размер сегмента мал, чтобы часть просмотров попала
+ * в запечатанные сегменты, а часть осталась в журнале открытого.
+ */
+class SegmentHitStorageContractTest extends HitStorageContractTest {
+    @TempDir
+    Path dir;
+
+    private SegmentHitStorage storage;
+
+    @BeforeEach
+    void openStorage() throws IOException {
+        storage = new SegmentHitStorage(dir, 4, false);
+    }
+
+    @AfterEach
+    void closeStorage() throws IOException {
+        storage.close();
+    }
+
+    @Override
+    protected HitStorage storage() {
+        return storage;
+    }
+}
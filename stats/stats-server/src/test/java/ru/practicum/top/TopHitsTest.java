@@ -0,0 +1,111 @@
+package ru.practicum.top;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.storage.segment.SegmentHitStorage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TopHitsTest {
+    private static final Duration SHORT = Duration.ofMinutes(5);
+    private static final Duration LONG = Duration.ofHours(1);
+
+    @TempDir
+    Path dir;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    void topReturnsMostViewedUrisOfWindow() {
+        TopHits topHits = new TopHits(null, List.of(LONG, SHORT), 10);
+        topHits.add(List.of(hit("/events/1", now), hit("/events/2", now), hit("/events/2", now.minusMinutes(1)),
+                hit("/events/1", now.minusMinutes(20)), hit("/events/1", now.minusMinutes(30)),
+                hit("/events/3", now.minusHours(2))));
+
+        TopHits.Top top = topHits.top(1, SHORT);
+        assertThat(top.stats()).containsExactly(stats("/events/2", 2));
+        assertThat(top.total()).isEqualTo(3);
+        assertThat(top.errorBound()).isZero();
+
+        assertThat(topHits.top(10, LONG).stats()).containsExactly(stats("/events/1", 3), stats("/events/2", 2));
+    }
+
+    @Test
+    void windowBoundsHoldWhenCapacityIsExceeded() {
+        TopHits topHits = new TopHits(null, List.of(LONG), 4);
+        Map<String, Long> counts = new HashMap<>();
+        List<Hit> hits = new ArrayList<>();
+        for (int minute = 0; minute < 30; minute++) {
+            // у каждой минуты свой самый частый URI и несколько редких
+            for (int i = 0; i < 10; i++) {
+                hits.add(hit("/events/heavy" + minute % 3, now.minusMinutes(minute)));
+            }
+            for (int i = 0; i < 3; i++) {
+                hits.add(hit("/events/rare" + (minute * 3 + i), now.minusMinutes(minute)));
+            }
+        }
+        hits.forEach(hit -> counts.merge(hit.getUri(), 1L, Long::sum));
+        topHits.add(hits);
+
+        TopHits.Top top = topHits.top(3, LONG);
+
+        assertThat(top.total()).isEqualTo(hits.size());
+        assertThat(top.stats()).extracting(ViewStatsDto::getUri)
+                .containsExactlyInAnyOrder("/events/heavy0", "/events/heavy1", "/events/heavy2");
+        for (ViewStatsDto stats : top.stats()) {
+            assertThat(counts.get(stats.getUri())).isBetween(stats.getHits() - top.errorBound(), stats.getHits());
+        }
+    }
+
+    @Test
+    void warmUpLoadsRecentMinutesFromStorage() throws IOException {
+        SegmentHitStorage storage = new SegmentHitStorage(dir, 16, false);
+        try {
+            storage.saveAll(List.of(hit("/events/1", now.minusMinutes(2)), hit("/events/1", now.minusMinutes(30)),
+                    hit("/events/2", now.minusMinutes(30)), hit("/events/2", now.minusHours(2))));
+            TopHits topHits = new TopHits(storage, List.of(SHORT, LONG), 10);
+
+            topHits.afterSingletonsInstantiated();
+
+            assertThat(topHits.top(10, SHORT).stats()).containsExactly(stats("/events/1", 1));
+            assertThat(topHits.top(10, LONG).stats()).containsExactly(stats("/events/1", 2), stats("/events/2", 1));
+        } finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    void rejectsUnknownWindow() {
+        TopHits topHits = new TopHits(null, List.of(SHORT), 10);
+
+        assertThatThrownBy(() -> topHits.top(1, LONG)).isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void rejectsWindowNotInWholeMinutes() {
+        assertThatThrownBy(() -> new TopHits(null, List.of(Duration.ofSeconds(90)), 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Hit hit(String uri, LocalDateTime timestamp) {
+        return new Hit(null, "ewm-main-service", uri, null, IpMapper.toInetAddress("10.0.0.1"), timestamp);
+    }
+
+    private static ViewStatsDto stats(String uri, long hits) {
+        return new ViewStatsDto("ewm-main-service", uri, hits);
+    }
+}